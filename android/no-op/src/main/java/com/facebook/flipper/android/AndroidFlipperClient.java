@@ -18,4 +18,18 @@ public final class AndroidFlipperClient {
   public static FlipperClient getInstanceIfInitialized() {
     return new NoOpAndroidFlipperClient();
   }
+
+  public static FlipperClient getInstanceAsync(Context context) {
+    return new NoOpAndroidFlipperClient();
+  }
+
+  public static FlipperClient getInstanceAsync(Context context, long delayMs) {
+    return new NoOpAndroidFlipperClient();
+  }
+
+  public static void setCompression(int level, int minMessageSize) {}
+
+  public static void disableCompression() {}
+
+  public static void setBatching(int windowMs, int maxBytes) {}
 }
@@ -8,7 +8,12 @@
 package com.facebook.flipper.android;
 
 import com.facebook.flipper.core.FlipperClient;
+import com.facebook.flipper.core.FlipperConnectionStats;
+import com.facebook.flipper.core.FlipperMethodStats;
 import com.facebook.flipper.core.FlipperPlugin;
+import com.facebook.flipper.core.FlipperPluginFactory;
+import java.util.Collections;
+import java.util.List;
 import javax.annotation.Nullable;
 
 public class NoOpAndroidFlipperClient implements FlipperClient {
@@ -18,6 +23,12 @@ public class NoOpAndroidFlipperClient implements FlipperClient {
     // no-op
   }
 
+  @Override
+  public <T extends FlipperPlugin> void addPluginFactory(
+      String id, Class<T> pluginClass, boolean runInBackground, FlipperPluginFactory<T> factory) {
+    // no-op
+  }
+
   @Nullable
   @Override
   public <T extends FlipperPlugin> T getPlugin(String id) {
@@ -49,4 +60,14 @@ public class NoOpAndroidFlipperClient implements FlipperClient {
   public void unsubscribe() {
     // no-op
   }
+
+  @Override
+  public List<FlipperMethodStats> getMethodStats() {
+    return Collections.emptyList();
+  }
+
+  @Override
+  public FlipperConnectionStats getConnectionStats() {
+    return FlipperConnectionStats.DISCONNECTED;
+  }
 }
@@ -7,11 +7,15 @@
 
 package com.facebook.flipper.core;
 
+import java.util.List;
 import javax.annotation.Nullable;
 
 public interface FlipperClient {
   void addPlugin(FlipperPlugin plugin);
 
+  <T extends FlipperPlugin> void addPluginFactory(
+      String id, Class<T> pluginClass, boolean runInBackground, FlipperPluginFactory<T> factory);
+
   @Nullable
   <T extends FlipperPlugin> T getPlugin(String id);
 
@@ -25,4 +29,8 @@ public interface FlipperClient {
   void stop();
 
   void unsubscribe();
+
+  List<FlipperMethodStats> getMethodStats();
+
+  FlipperConnectionStats getConnectionStats();
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+public final class FlipperConnectionStats {
+
+  public static final FlipperConnectionStats DISCONNECTED = new FlipperConnectionStats();
+
+  private FlipperConnectionStats() {}
+
+  public boolean isConnected() {
+    return false;
+  }
+
+  public long getRoundTripNanos() {
+    return 0;
+  }
+
+  public long getSmoothedRoundTripNanos() {
+    return 0;
+  }
+
+  public long getBytesSent() {
+    return 0;
+  }
+
+  public long getSendRate() {
+    return 0;
+  }
+
+  public long getThroughput() {
+    return 0;
+  }
+
+  public long getBufferedBytes() {
+    return 0;
+  }
+
+  public long getPeakBufferedBytes() {
+    return 0;
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+public final class FlipperMethodStats {
+
+  private final String mPluginId;
+  private final String mMethod;
+
+  public FlipperMethodStats(String pluginId, String method) {
+    mPluginId = pluginId;
+    mMethod = method;
+  }
+
+  public String getPluginId() {
+    return mPluginId;
+  }
+
+  public String getMethod() {
+    return mMethod;
+  }
+
+  public long getMessagesSent() {
+    return 0;
+  }
+
+  public long getBytesSent() {
+    return 0;
+  }
+
+  public long getMessagesReceived() {
+    return 0;
+  }
+
+  public long getBytesReceived() {
+    return 0;
+  }
+
+  public int getQueueDepth() {
+    return 0;
+  }
+
+  public int getPeakQueueDepth() {
+    return 0;
+  }
+
+  public long getCallsRejected() {
+    return 0;
+  }
+}
@@ -13,6 +13,7 @@ import com.facebook.flipper.core.FlipperObject;
 import com.facebook.flipper.core.FlipperPlugin;
 import com.facebook.flipper.core.FlipperReceiver;
 import com.facebook.flipper.core.FlipperResponder;
+import com.facebook.flipper.core.FlipperSendQueuePolicy;
 import java.util.ArrayList;
 import java.util.List;
 import org.json.JSONArray;
@@ -30,6 +31,7 @@ public class LeakCanaryFlipperPlugin implements FlipperPlugin {
   private FlipperConnection mConnection;
 
   private final List<String> leakList = new ArrayList<>();
+  private boolean mLeakListChanged = false;
 
   @Override
   public String getId() {
@@ -40,7 +42,21 @@ public class LeakCanaryFlipperPlugin implements FlipperPlugin {
   public void onConnect(FlipperConnection connection) {
     mConnection = connection;
     sendLeakList();
+    registerReceivers();
+  }
+
+  /** The desktop still has the last leak list sent, which is only sent again if it changed. */
+  @Override
+  public void onResume(FlipperConnection connection) {
+    mConnection = connection;
+    if (mLeakListChanged) {
+      sendLeakList();
+    }
+    registerReceivers();
+  }
 
+  private void registerReceivers() {
+    mConnection.setSendQueuePolicy(FlipperSendQueuePolicy.COALESCING);
     mConnection.receive(
         CLEAR_EVENT,
         new FlipperReceiver() {
@@ -66,7 +82,9 @@ public class LeakCanaryFlipperPlugin implements FlipperPlugin {
       JSONObject obj = new JSONObject();
       try {
         obj.put(LEAKS_KEY, new JSONArray(leakList));
-        mConnection.send(REPORT_LEAK_EVENT, new FlipperObject(obj));
+        // The whole list is sent each time, so a newer one replaces the one still queued.
+        mConnection.trySend(REPORT_LEAK_EVENT, new FlipperObject(obj));
+        mLeakListChanged = false;
       } catch (JSONException e) {
         Log.w(TAG, "Failure to serialize leak list: ", e);
       }
@@ -75,6 +93,7 @@ public class LeakCanaryFlipperPlugin implements FlipperPlugin {
 
   public void reportLeak(String leakInfo) {
     leakList.add(leakInfo);
+    mLeakListChanged = true;
     sendLeakList();
   }
 }
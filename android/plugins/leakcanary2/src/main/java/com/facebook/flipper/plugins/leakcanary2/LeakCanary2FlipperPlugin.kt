@@ -9,6 +9,7 @@ package com.facebook.flipper.plugins.leakcanary2
 
 import com.facebook.flipper.core.FlipperConnection
 import com.facebook.flipper.core.FlipperPlugin
+import com.facebook.flipper.core.FlipperSendQueuePolicy
 
 private const val REPORT_LEAK_EVENT = "reportLeak2"
 private const val CLEAR_EVENT = "clear"
@@ -17,15 +18,27 @@ class LeakCanary2FlipperPlugin : FlipperPlugin {
   private val leaks: MutableList<Leak> = mutableListOf()
   private val alreadySeenLeakSignatures: MutableSet<String> = mutableSetOf()
   private var connection: FlipperConnection? = null
+  private var leakListChanged = false
 
   override fun getId() = ID
 
   override fun onConnect(connection: FlipperConnection?) {
     this.connection = connection
+    connection?.setSendQueuePolicy(FlipperSendQueuePolicy.COALESCING)
     connection?.receive(CLEAR_EVENT) { _, _ -> leaks.clear() }
     sendLeakList()
   }
 
+  /** The desktop still has the last leak list sent, which is only sent again if it changed. */
+  override fun onResume(connection: FlipperConnection?) {
+    this.connection = connection
+    connection?.setSendQueuePolicy(FlipperSendQueuePolicy.COALESCING)
+    connection?.receive(CLEAR_EVENT) { _, _ -> leaks.clear() }
+    if (leakListChanged) {
+      sendLeakList()
+    }
+  }
+
   override fun onDisconnect() {
     connection = null
   }
@@ -37,6 +50,7 @@ class LeakCanary2FlipperPlugin : FlipperPlugin {
       if (leak.signature !in alreadySeenLeakSignatures) {
         this.leaks.add(leak)
         alreadySeenLeakSignatures.add(leak.signature)
+        leakListChanged = true
       }
     }
 
@@ -44,7 +58,10 @@ class LeakCanary2FlipperPlugin : FlipperPlugin {
   }
 
   private fun sendLeakList() {
-    connection?.send(REPORT_LEAK_EVENT, LeakCanary2Report(leaks).toFlipperObject())
+    val connection = connection ?: return
+    // The whole list is sent each time, so a newer one replaces the one still queued.
+    connection.trySend(REPORT_LEAK_EVENT, LeakCanary2Report(leaks).toFlipperObject())
+    leakListChanged = false
   }
 
   companion object {
@@ -13,16 +13,36 @@ import com.facebook.flipper.core.FlipperArray;
 import com.facebook.flipper.core.FlipperObject;
 import com.facebook.flipper.plugins.common.BufferingFlipperPlugin;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nullable;
 
 public class NetworkFlipperPlugin extends BufferingFlipperPlugin implements NetworkReporter {
   public static final String ID = "Network";
   private static final int MAX_BODY_SIZE_IN_BYTES = 1024 * 1024;
+  private static final int MAX_SKIPPED_REQUESTS = 1000;
 
   private @Nullable List<NetworkResponseFormatter> mFormatters;
   private @Nullable final List<NetworkRequestFormatter> mRequestFormatters;
 
+  /**
+   * Requests the desktop filtered out, whose responses are skipped too. Bounded, as requests that
+   * fail may never get a response.
+   */
+  private final Set<String> mSkippedRequests =
+      Collections.synchronizedSet(
+          Collections.newSetFromMap(
+              new LinkedHashMap<String, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                  return size() > MAX_SKIPPED_REQUESTS;
+                }
+              }));
+
   public NetworkFlipperPlugin() {
     this(null);
   }
@@ -49,21 +69,34 @@ public class NetworkFlipperPlugin extends BufferingFlipperPlugin implements Netw
 
   @Override
   public void reportRequest(final RequestInfo requestInfo) {
+    final Map<String, String> attributes = new HashMap<>(2);
+    attributes.put("url", requestInfo.uri);
+    attributes.put("method", requestInfo.method);
+    if (!isSubscribed("newRequest", attributes)) {
+      // Skipped before the body is formatted and encoded, which is most of the work.
+      mSkippedRequests.add(requestInfo.requestId);
+      return;
+    }
+
     final Runnable job =
         new ErrorReportingRunnable(getConnection()) {
           @Override
           protected void runOrThrow() throws Exception {
-            final FlipperObject request =
-                new FlipperObject.Builder()
-                    .put("id", requestInfo.requestId)
-                    .put("timestamp", requestInfo.timeStamp)
-                    .put("method", requestInfo.method)
-                    .put("url", requestInfo.uri)
-                    .put("headers", toFlipperObject(requestInfo.headers))
-                    .put("data", toBase64(requestInfo.body))
-                    .build();
-
-            send("newRequest", request);
+            send(
+                "newRequest",
+                new EventBuilder() {
+                  @Override
+                  public FlipperObject build(BlobEncoder blobs) {
+                    return new FlipperObject.StreamingBuilder()
+                        .put("id", requestInfo.requestId)
+                        .put("timestamp", requestInfo.timeStamp)
+                        .put("method", requestInfo.method)
+                        .put("url", requestInfo.uri)
+                        .put("headers", toStreamingFlipperArray(requestInfo.headers))
+                        .put("data", blobs.encode(requestInfo.body))
+                        .build();
+                  }
+                });
           }
         };
 
@@ -89,6 +122,10 @@ public class NetworkFlipperPlugin extends BufferingFlipperPlugin implements Netw
 
   @Override
   public void reportResponse(final ResponseInfo responseInfo) {
+    if (mSkippedRequests.remove(responseInfo.requestId)) {
+      return;
+    }
+
     final Runnable job =
         new ErrorReportingRunnable(getConnection()) {
           @Override
@@ -104,36 +141,42 @@ public class NetworkFlipperPlugin extends BufferingFlipperPlugin implements Netw
                         (int) Math.ceil((double) responseInfo.body.length / MAX_BODY_SIZE_IN_BYTES),
                         1);
 
+            final int totalChunks = numChunks;
             for (int i = 0; i < numChunks; i++) {
-              byte[] chunk =
+              final int index = i;
+              final byte[] chunk =
                   responseInfo.body == null
                       ? null
                       : Arrays.copyOfRange(
                           responseInfo.body,
                           i * MAX_BODY_SIZE_IN_BYTES,
                           Math.min((i + 1) * MAX_BODY_SIZE_IN_BYTES, responseInfo.body.length));
-              final FlipperObject response =
-                  i == 0
-                      ? new FlipperObject.Builder()
-                          .put("id", responseInfo.requestId)
-                          .put("timestamp", responseInfo.timeStamp)
-                          .put("status", responseInfo.statusCode)
-                          .put("reason", responseInfo.statusReason)
-                          .put("headers", toFlipperObject(responseInfo.headers))
-                          .put("isMock", responseInfo.isMock)
-                          .put("data", toBase64(chunk))
-                          .put("totalChunks", numChunks)
-                          .put("index", i)
-                          .build()
-                      : new FlipperObject.Builder()
-                          .put("id", responseInfo.requestId)
-                          .put("timestamp", responseInfo.timeStamp)
-                          .put("totalChunks", numChunks)
-                          .put("index", i)
-                          .put("data", toBase64(chunk))
-                          .build();
-
-              send(numChunks == 1 ? "newResponse" : "partialResponse", response);
+              send(
+                  numChunks == 1 ? "newResponse" : "partialResponse",
+                  new EventBuilder() {
+                    @Override
+                    public FlipperObject build(BlobEncoder blobs) {
+                      return index == 0
+                          ? new FlipperObject.StreamingBuilder()
+                              .put("id", responseInfo.requestId)
+                              .put("timestamp", responseInfo.timeStamp)
+                              .put("status", responseInfo.statusCode)
+                              .put("reason", responseInfo.statusReason)
+                              .put("headers", toStreamingFlipperArray(responseInfo.headers))
+                              .put("isMock", responseInfo.isMock)
+                              .put("data", blobs.encode(chunk))
+                              .put("totalChunks", totalChunks)
+                              .put("index", index)
+                              .build()
+                          : new FlipperObject.StreamingBuilder()
+                              .put("id", responseInfo.requestId)
+                              .put("timestamp", responseInfo.timeStamp)
+                              .put("totalChunks", totalChunks)
+                              .put("index", index)
+                              .put("data", blobs.encode(chunk))
+                              .build();
+                    }
+                  });
             }
           }
         };
@@ -188,6 +231,17 @@ public class NetworkFlipperPlugin extends BufferingFlipperPlugin implements Netw
     return list.build();
   }
 
+  private static FlipperArray.StreamingBuilder toStreamingFlipperArray(List<Header> headers) {
+    final FlipperArray.StreamingBuilder list = new FlipperArray.StreamingBuilder();
+
+    for (Header header : headers) {
+      list.put(
+          new FlipperObject.StreamingBuilder().put("key", header.name).put("value", header.value));
+    }
+
+    return list;
+  }
+
   public static boolean shouldStripResponseBody(ResponseInfo responseInfo, boolean isConnected) {
     if (!isConnected) {
       return true;
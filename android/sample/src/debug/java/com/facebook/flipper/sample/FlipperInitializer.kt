@@ -47,16 +47,20 @@ object FlipperInitializer {
     LithoFlipperDescriptors.add(descriptorMapping)
     client.addPlugin(InspectorFlipperPlugin(context, descriptorMapping))
     client.addPlugin(networkPlugin)
-    client.addPlugin(
-        SharedPreferencesFlipperPlugin(
-            context,
-            listOf(
-                SharedPreferencesDescriptor("sample", Context.MODE_PRIVATE),
-                SharedPreferencesDescriptor("other_sample", Context.MODE_PRIVATE))))
+    // Only created once the desktop opens them, as they read from disk when constructed.
+    client.addPluginFactory("Preferences", SharedPreferencesFlipperPlugin::class.java, false) {
+      SharedPreferencesFlipperPlugin(
+          context,
+          listOf(
+              SharedPreferencesDescriptor("sample", Context.MODE_PRIVATE),
+              SharedPreferencesDescriptor("other_sample", Context.MODE_PRIVATE)))
+    }
     client.addPlugin(FrescoFlipperPlugin())
     client.addPlugin(ExampleFlipperPlugin())
     client.addPlugin(CrashReporterPlugin.getInstance())
-    client.addPlugin(DatabasesFlipperPlugin(context))
+    client.addPluginFactory("Databases", DatabasesFlipperPlugin::class.java, false) {
+      DatabasesFlipperPlugin(context)
+    }
     client.addPlugin(NavigationFlipperPlugin.getInstance())
     val descriptorRegister = DescriptorRegister.Companion.withDefaults()
     val uidContext = UIDContext.Companion.create(context as Application)
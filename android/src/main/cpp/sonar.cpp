@@ -253,6 +253,28 @@ class JFlipperSocketImpl
   }
 };
 
+class JFlipperSession : public jni::JavaClass<JFlipperSession> {
+ public:
+  constexpr static auto kJavaDescriptor =
+      "Lcom/facebook/flipper/android/FlipperSession;";
+
+  static bool shouldResume(const std::string& pluginId) {
+    static const auto method =
+        javaClassStatic()->getStaticMethod<jboolean(std::string)>(
+            "shouldResume");
+    try {
+      return method(javaClassStatic(), pluginId);
+    } catch (const std::exception& e) {
+      handleException(e);
+    } catch (const std::exception* e) {
+      if (e) {
+        handleException(*e);
+      }
+    }
+    return false;
+  }
+};
+
 class JFlipperWebSocket : public facebook::flipper::FlipperSocket {
  public:
   JFlipperWebSocket(
@@ -429,7 +451,7 @@ class JFlipperResponderImpl
     registerHybrid({
         makeNativeMethod("successObject", JFlipperResponderImpl::successObject),
         makeNativeMethod("successArray", JFlipperResponderImpl::successArray),
-        makeNativeMethod("error", JFlipperResponderImpl::error),
+        makeNativeMethod("errorObject", JFlipperResponderImpl::error),
     });
   }
 
@@ -493,14 +515,12 @@ class JFlipperConnectionImpl
 
   static void registerNatives() {
     registerHybrid({
-        makeNativeMethod("sendObject", JFlipperConnectionImpl::sendObject),
-        makeNativeMethod("sendArray", JFlipperConnectionImpl::sendArray),
         makeNativeMethod("sendRaw", JFlipperConnectionImpl::sendRaw),
         makeNativeMethod("reportError", JFlipperConnectionImpl::reportError),
         makeNativeMethod(
             "reportErrorWithMetadata",
             JFlipperConnectionImpl::reportErrorWithMetadata),
-        makeNativeMethod("receive", JFlipperConnectionImpl::receive),
+        makeNativeMethod("receiveNative", JFlipperConnectionImpl::receive),
     });
   }
 
@@ -508,22 +528,6 @@ class JFlipperConnectionImpl
     _connection->sendRaw(std::move(method), std::move(params));
   }
 
-  void sendObject(
-      const std::string method,
-      jni::alias_ref<JFlipperObject> json) {
-    _connection->send(
-        std::move(method),
-        json ? folly::parseJson(json->toJsonString())
-             : folly::dynamic::object());
-  }
-
-  void sendArray(const std::string method, jni::alias_ref<JFlipperArray> json) {
-    _connection->send(
-        std::move(method),
-        json ? folly::parseJson(json->toJsonString())
-             : folly::dynamic::object());
-  }
-
   void reportErrorWithMetadata(
       const std::string reason,
       const std::string stackTrace) {
@@ -579,12 +583,18 @@ class JFlipperPlugin : public jni::JavaClass<JFlipperPlugin> {
   }
 
   void didConnect(std::shared_ptr<FlipperConnection> conn) {
+    const auto id = identifier();
     auto method =
         javaClassStatic()
             ->getMethod<void(jni::alias_ref<JFlipperConnection::javaobject>)>(
-                "onConnect");
+                JFlipperSession::shouldResume(id) ? "onResume" : "onConnect");
     try {
-      method(self(), JFlipperConnectionImpl::newObjectCxxArgs(conn));
+      auto connection = JFlipperConnectionImpl::newObjectCxxArgs(conn);
+      static const auto setPluginIdentifier =
+          JFlipperConnectionImpl::javaClassStatic()
+              ->getMethod<void(std::string)>("setPluginIdentifier");
+      setPluginIdentifier(connection, id);
+      method(self(), connection);
     } catch (const std::exception& e) {
       handleException(e);
     } catch (const std::exception* e) {
@@ -754,7 +764,7 @@ class JFlipperClient : public jni::HybridClass<JFlipperClient> {
         makeNativeMethod(
             "subscribeForUpdates", JFlipperClient::subscribeForUpdates),
         makeNativeMethod("unsubscribe", JFlipperClient::unsubscribe),
-        makeNativeMethod("getPlugin", JFlipperClient::getPlugin),
+        makeNativeMethod("getPluginNative", JFlipperClient::getPlugin),
         makeNativeMethod("getState", JFlipperClient::getState),
         makeNativeMethod("getStateSummary", JFlipperClient::getStateSummary),
     });
@@ -12,17 +12,23 @@ import android.content.pm.PackageManager;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
 import android.os.StrictMode;
 import android.util.Log;
 import androidx.core.content.ContextCompat;
 import com.facebook.flipper.BuildConfig;
 import com.facebook.flipper.core.FlipperClient;
+import java.util.zip.Deflater;
 import javax.annotation.Nullable;
 
 public final class AndroidFlipperClient {
   private static boolean sIsInitialized = false;
   private static FlipperThread sFlipperThread;
   private static FlipperThread sConnectionThread;
+  private static @Nullable DeferredFlipperClient sDeferredClient;
   private static final String[] REQUIRED_PERMISSIONS =
       new String[] {"android.permission.INTERNET", "android.permission.ACCESS_WIFI_STATE"};
 
@@ -79,11 +85,110 @@ public final class AndroidFlipperClient {
   @Nullable
   public static synchronized FlipperClient getInstanceIfInitialized() {
     if (!sIsInitialized) {
-      return null;
+      return sDeferredClient;
     }
     return FlipperClientImpl.getInstance();
   }
 
+  /**
+   * Returns a client right away and initializes Flipper on a background thread once the main
+   * thread is first idle, keeping the native library load and the start of Flipper's threads off
+   * the app's startup path. Plugins added to the returned client and calls to start() take effect
+   * once initialization is done.
+   */
+  public static FlipperClient getInstanceAsync(Context context) {
+    return getInstanceAsync(context, -1);
+  }
+
+  /**
+   * Like {@link #getInstanceAsync(Context)}, but starts initializing after the given delay rather
+   * than once the main thread is idle.
+   */
+  public static synchronized FlipperClient getInstanceAsync(Context context, long delayMs) {
+    if (!(BuildConfig.IS_INTERNAL_BUILD || BuildConfig.LOAD_FLIPPER_EXPLICIT)) {
+      Log.e("Flipper", "Attempted to initialize in non-internal build");
+      return null;
+    }
+    if (sIsInitialized) {
+      return FlipperClientImpl.getInstance();
+    }
+    if (sDeferredClient != null) {
+      return sDeferredClient;
+    }
+
+    final DeferredFlipperClient client = new DeferredFlipperClient();
+    sDeferredClient = client;
+    final Context app =
+        context.getApplicationContext() == null ? context : context.getApplicationContext();
+    final Runnable initialize =
+        new Runnable() {
+          @Override
+          public void run() {
+            new Thread(
+                    new Runnable() {
+                      @Override
+                      public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        client.onReady(getInstance(app));
+                      }
+                    },
+                    "FlipperInitThread")
+                .start();
+          }
+        };
+
+    if (delayMs >= 0) {
+      new Handler(Looper.getMainLooper()).postDelayed(initialize, delayMs);
+    } else if (Looper.myLooper() == Looper.getMainLooper()) {
+      Looper.myQueue()
+          .addIdleHandler(
+              new MessageQueue.IdleHandler() {
+                @Override
+                public boolean queueIdle() {
+                  initialize.run();
+                  return false;
+                }
+              });
+    } else {
+      initialize.run();
+    }
+    return client;
+  }
+
+  /**
+   * Compresses messages to the desktop with permessage-deflate at the given {@link
+   * java.util.zip.Deflater} level, leaving messages smaller than minMessageSize bytes uncompressed.
+   * Overrides the flipper.compression system property for connections made after this call.
+   */
+  public static void setCompression(int level, int minMessageSize) {
+    if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level: " + level);
+    }
+    if (minMessageSize < 0) {
+      throw new IllegalArgumentException("Invalid minimum message size: " + minMessageSize);
+    }
+    FlipperProps.setCompressionOverride(true, level, minMessageSize);
+  }
+
+  /** Stops offering compression to the desktop for connections made after this call. */
+  public static void disableCompression() {
+    FlipperProps.setCompressionOverride(
+        false, FlipperProps.DEFAULT_COMPRESSION_LEVEL, FlipperProps.DEFAULT_COMPRESSION_MIN_SIZE);
+  }
+
+  /**
+   * Holds back plugin messages for up to windowMs milliseconds, or until maxBytes have accumulated,
+   * and sends them to the desktop together. Only used with desktops that support batching.
+   * Overrides the flipper.batching system property. A window of 0 disables batching.
+   */
+  public static void setBatching(int windowMs, int maxBytes) {
+    if (windowMs < 0 || maxBytes < 0) {
+      throw new IllegalArgumentException(
+          "Invalid batching window or size: " + windowMs + ", " + maxBytes);
+    }
+    FlipperProps.setBatchingOverride(windowMs, maxBytes);
+  }
+
   static void checkRequiredPermissions(Context context) {
     // Don't terminate for compatibility reasons. Not all apps have ACCESS_WIFI_STATE permission.
     for (String permission : REQUIRED_PERMISSIONS) {
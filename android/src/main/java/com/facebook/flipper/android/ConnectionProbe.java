@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import com.facebook.flipper.core.FlipperConnectionStats;
+import com.facebook.flipper.core.FlipperHistogram;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+
+/**
+ * Measures the quality of an open connection. Every {@link #PROBE_INTERVAL_MS}, it samples how many
+ * bytes are waiting to be written, deduces how many were written since the last sample from the
+ * bytes queued in the meantime, and sends a ping carrying the time it was sent, which the desktop
+ * echoes back in its pong as RFC-6455 requires.
+ *
+ * <p>Pings sent by the WebSocket client to detect lost connections have no payload, so their pongs
+ * are ignored.
+ */
+final class ConnectionProbe {
+
+  static final long PROBE_INTERVAL_MS = 2000;
+
+  private static final int PING_PAYLOAD_SIZE = 8;
+
+  /** Weight of a new sample in smoothed values, as for TCP's smoothed round trip time. */
+  private static final double SMOOTHING = 0.125;
+
+  /** The connection being probed. */
+  interface Link {
+    long getBufferedBytes();
+
+    void sendPing(ByteBuffer payload);
+  }
+
+  private final Link mLink;
+  private final AtomicLong mBytesQueued;
+  private final FlipperHistogram mRoundTripTimes = new FlipperHistogram();
+  private boolean mRunning = false;
+  private long mLastSampleNanos;
+  private long mLastBytesQueued;
+  private long mLastBufferedBytes;
+  private long mRoundTripNanos = 0;
+  private long mSmoothedRoundTripNanos = 0;
+  private long mBytesSent = 0;
+  private long mSendRate = 0;
+  private long mThroughput = 0;
+  private long mBufferedBytes = 0;
+  private long mPeakBufferedBytes = 0;
+
+  private final Runnable mProbeRunnable =
+      new Runnable() {
+        @Override
+        public void run() {
+          probe();
+        }
+      };
+
+  /** @param bytesQueued the count of bytes queued on the connection, kept up to date by it. */
+  ConnectionProbe(Link link, AtomicLong bytesQueued) {
+    mLink = link;
+    mBytesQueued = bytesQueued;
+  }
+
+  /** Called once the connection opened. */
+  synchronized void start() {
+    mRunning = true;
+    mLastSampleNanos = System.nanoTime();
+    mLastBytesQueued = mBytesQueued.get();
+    mLastBufferedBytes = mLink.getBufferedBytes();
+    MessageBatcher.getHandler().postDelayed(mProbeRunnable, PROBE_INTERVAL_MS);
+  }
+
+  /** Called once the connection closed. The stats are kept as they were last measured. */
+  synchronized void stop() {
+    mRunning = false;
+    MessageBatcher.getHandler().removeCallbacks(mProbeRunnable);
+  }
+
+  private void probe() {
+    final long now = System.nanoTime();
+    synchronized (this) {
+      if (!mRunning) {
+        return;
+      }
+      sample(now);
+    }
+    final ByteBuffer payload = ByteBuffer.allocate(PING_PAYLOAD_SIZE);
+    payload.putLong(now);
+    payload.flip();
+    try {
+      mLink.sendPing(payload);
+    } catch (WebsocketNotConnectedException e) {
+      return;
+    }
+    synchronized (this) {
+      if (mRunning) {
+        MessageBatcher.getHandler().postDelayed(mProbeRunnable, PROBE_INTERVAL_MS);
+      }
+    }
+  }
+
+  synchronized void sample(long nowNanos) {
+    final long elapsed = nowNanos - mLastSampleNanos;
+    if (elapsed <= 0) {
+      return;
+    }
+    final long queued = mBytesQueued.get();
+    final long buffered = mLink.getBufferedBytes();
+    final long written =
+        Math.max(0, (queued - mLastBytesQueued) - (buffered - mLastBufferedBytes));
+
+    mSendRate = (long) (written * 1e9 / elapsed);
+    // Only when data was waiting all along does the rate tell how much the link can take.
+    if (mLastBufferedBytes > 0 && buffered > 0) {
+      mThroughput = mThroughput == 0 ? mSendRate : smooth(mThroughput, mSendRate);
+    }
+    mBytesSent += written;
+    mBufferedBytes = buffered;
+    mPeakBufferedBytes = Math.max(mPeakBufferedBytes, buffered);
+
+    mLastSampleNanos = nowNanos;
+    mLastBytesQueued = queued;
+    mLastBufferedBytes = buffered;
+  }
+
+  /** Called with the payload of each pong the desktop sends. */
+  void onPong(ByteBuffer payload, long nowNanos) {
+    if (payload.remaining() != PING_PAYLOAD_SIZE) {
+      return;
+    }
+    final long roundTrip = nowNanos - payload.getLong(payload.position());
+    if (roundTrip < 0) {
+      return;
+    }
+    mRoundTripTimes.record(roundTrip);
+    synchronized (this) {
+      mRoundTripNanos = roundTrip;
+      mSmoothedRoundTripNanos =
+          mSmoothedRoundTripNanos == 0 ? roundTrip : smooth(mSmoothedRoundTripNanos, roundTrip);
+    }
+  }
+
+  synchronized FlipperConnectionStats snapshot() {
+    return new FlipperConnectionStats(
+        mRunning,
+        mRoundTripNanos,
+        mSmoothedRoundTripNanos,
+        mRoundTripTimes.copy(),
+        mBytesSent,
+        mSendRate,
+        mThroughput,
+        mBufferedBytes,
+        mPeakBufferedBytes);
+  }
+
+  private static long smooth(long average, long sample) {
+    return (long) (average + SMOOTHING * (sample - average));
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import com.facebook.flipper.core.FlipperClient;
+import com.facebook.flipper.core.FlipperConnectionStats;
+import com.facebook.flipper.core.FlipperMethodStats;
+import com.facebook.flipper.core.FlipperPlugin;
+import com.facebook.flipper.core.FlipperPluginFactory;
+import com.facebook.flipper.core.FlipperStateUpdateListener;
+import com.facebook.flipper.core.StateSummary;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * The client handed out by {@link AndroidFlipperClient#getInstanceAsync} while Flipper is still
+ * initializing. Plugins, plugin factories, start and stop calls and the state listener are recorded,
+ * and replayed on the real client once it is ready. From then on, every call goes straight to it.
+ */
+final class DeferredFlipperClient implements FlipperClient {
+
+  private @Nullable FlipperClient mClient;
+  private final Map<String, FlipperPlugin> mPendingPlugins = new LinkedHashMap<>();
+  private final Map<String, PendingFactory<?>> mPendingFactories = new LinkedHashMap<>();
+  private @Nullable FlipperStateUpdateListener mPendingListener;
+  private boolean mPendingStart = false;
+
+  /** Called once the native client is initialized. */
+  synchronized void onReady(FlipperClient client) {
+    for (FlipperPlugin plugin : mPendingPlugins.values()) {
+      client.addPlugin(plugin);
+    }
+    mPendingPlugins.clear();
+    for (Map.Entry<String, PendingFactory<?>> entry : mPendingFactories.entrySet()) {
+      entry.getValue().addTo(client, entry.getKey());
+    }
+    mPendingFactories.clear();
+    if (mPendingListener != null) {
+      client.subscribeForUpdates(mPendingListener);
+      mPendingListener = null;
+    }
+    if (mPendingStart) {
+      client.start();
+    }
+    mClient = client;
+  }
+
+  @Override
+  public synchronized void addPlugin(FlipperPlugin plugin) {
+    if (mClient != null) {
+      mClient.addPlugin(plugin);
+    } else {
+      mPendingPlugins.put(plugin.getId(), plugin);
+    }
+  }
+
+  @Override
+  public synchronized <T extends FlipperPlugin> void addPluginFactory(
+      String id, Class<T> pluginClass, boolean runInBackground, FlipperPluginFactory<T> factory) {
+    if (mClient != null) {
+      mClient.addPluginFactory(id, pluginClass, runInBackground, factory);
+    } else {
+      mPendingFactories.put(id, new PendingFactory<>(pluginClass, runInBackground, factory));
+    }
+  }
+
+  @Nullable
+  @Override
+  @SuppressWarnings("unchecked")
+  public synchronized <T extends FlipperPlugin> T getPlugin(String id) {
+    if (mClient != null) {
+      //noinspection deprecation
+      return mClient.getPlugin(id);
+    }
+    final PendingFactory<?> factory = mPendingFactories.remove(id);
+    if (factory != null) {
+      mPendingPlugins.put(id, factory.factory.create());
+    }
+    return (T) mPendingPlugins.get(id);
+  }
+
+  @Nullable
+  @Override
+  public synchronized <T extends FlipperPlugin> T getPluginByClass(Class<T> cls) {
+    if (mClient != null) {
+      return mClient.getPluginByClass(cls);
+    }
+    for (FlipperPlugin plugin : mPendingPlugins.values()) {
+      if (plugin.getClass() == cls) {
+        return cls.cast(plugin);
+      }
+    }
+    for (Map.Entry<String, PendingFactory<?>> entry : mPendingFactories.entrySet()) {
+      if (entry.getValue().pluginClass == cls) {
+        //noinspection deprecation
+        return getPlugin(entry.getKey());
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public synchronized void removePlugin(FlipperPlugin plugin) {
+    if (mClient != null) {
+      mClient.removePlugin(plugin);
+    } else {
+      mPendingPlugins.remove(plugin.getId());
+      mPendingFactories.remove(plugin.getId());
+    }
+  }
+
+  @Override
+  public synchronized void start() {
+    if (mClient != null) {
+      mClient.start();
+    } else {
+      mPendingStart = true;
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (mClient != null) {
+      mClient.stop();
+    } else {
+      mPendingStart = false;
+    }
+  }
+
+  @Override
+  public synchronized boolean isConnected() {
+    return mClient != null && mClient.isConnected();
+  }
+
+  @Override
+  public synchronized void subscribeForUpdates(FlipperStateUpdateListener stateListener) {
+    if (mClient != null) {
+      mClient.subscribeForUpdates(stateListener);
+    } else {
+      mPendingListener = stateListener;
+    }
+  }
+
+  @Override
+  public synchronized void unsubscribe() {
+    if (mClient != null) {
+      mClient.unsubscribe();
+    } else {
+      mPendingListener = null;
+    }
+  }
+
+  @Override
+  public synchronized String getState() {
+    return mClient != null ? mClient.getState() : "Initializing Flipper\n";
+  }
+
+  @Override
+  public synchronized StateSummary getStateSummary() {
+    if (mClient != null) {
+      return mClient.getStateSummary();
+    }
+    final StateSummary summary = new StateSummary();
+    summary.addEntry("Initializing Flipper", StateSummary.State.IN_PROGRESS.name());
+    return summary;
+  }
+
+  @Override
+  public List<FlipperMethodStats> getMethodStats() {
+    return TrafficMetrics.snapshot();
+  }
+
+  /** Not connected until the real client exists, without loading the native library to tell. */
+  @Override
+  public synchronized FlipperConnectionStats getConnectionStats() {
+    return mClient != null ? mClient.getConnectionStats() : FlipperConnectionStats.DISCONNECTED;
+  }
+
+  private static final class PendingFactory<T extends FlipperPlugin> {
+    final Class<T> pluginClass;
+    final boolean runInBackground;
+    final FlipperPluginFactory<T> factory;
+
+    PendingFactory(Class<T> pluginClass, boolean runInBackground, FlipperPluginFactory<T> factory) {
+      this.pluginClass = pluginClass;
+      this.runInBackground = runInBackground;
+      this.factory = factory;
+    }
+
+    void addTo(FlipperClient client, String id) {
+      client.addPluginFactory(id, pluginClass, runInBackground, factory);
+    }
+  }
+}
@@ -9,14 +9,18 @@ package com.facebook.flipper.android;
 
 import com.facebook.flipper.BuildConfig;
 import com.facebook.flipper.core.FlipperClient;
+import com.facebook.flipper.core.FlipperConnectionStats;
+import com.facebook.flipper.core.FlipperMethodStats;
 import com.facebook.flipper.core.FlipperPlugin;
+import com.facebook.flipper.core.FlipperPluginFactory;
 import com.facebook.flipper.core.FlipperStateUpdateListener;
 import com.facebook.flipper.core.StateSummary;
 import com.facebook.jni.HybridData;
 import com.facebook.proguard.annotations.DoNotStrip;
 import com.facebook.soloader.SoLoader;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 
 @DoNotStrip
@@ -28,7 +32,7 @@ class FlipperClientImpl implements FlipperClient {
   }
 
   private final HybridData mHybridData;
-  private final Map<Class<?>, String> mClassIdentifierMap = new HashMap<>(8);
+  private final Map<Class<?>, String> mClassIdentifierMap = new ConcurrentHashMap<>(8);
 
   private FlipperClientImpl(HybridData hd) {
     mHybridData = hd;
@@ -59,13 +63,30 @@ class FlipperClientImpl implements FlipperClient {
 
   public native void addPluginNative(FlipperPlugin plugin);
 
+  /** The native client only ever sees the stand-in, so it advertises the plugin right away. */
+  @Override
+  public <T extends FlipperPlugin> void addPluginFactory(
+      String id, Class<T> pluginClass, boolean runInBackground, FlipperPluginFactory<T> factory) {
+    mClassIdentifierMap.put(pluginClass, id);
+    addPluginNative(new LazyFlipperPlugin<>(id, pluginClass, runInBackground, factory));
+  }
+
   /**
    * @deprecated Prefer using {@link #getPluginByClass(Class)} over the stringly-typed interface.
    */
   @Override
   @Nullable
   @Deprecated
-  public native <T extends FlipperPlugin> T getPlugin(String id);
+  @SuppressWarnings("unchecked")
+  public <T extends FlipperPlugin> T getPlugin(String id) {
+    final FlipperPlugin plugin = getPluginNative(id);
+    if (plugin instanceof LazyFlipperPlugin) {
+      return (T) ((LazyFlipperPlugin<?>) plugin).get();
+    }
+    return (T) plugin;
+  }
+
+  public native FlipperPlugin getPluginNative(String id);
 
   @Nullable
   @Override
@@ -103,4 +124,14 @@ class FlipperClientImpl implements FlipperClient {
 
   @Override
   public native StateSummary getStateSummary();
+
+  @Override
+  public List<FlipperMethodStats> getMethodStats() {
+    return TrafficMetrics.snapshot();
+  }
+
+  @Override
+  public FlipperConnectionStats getConnectionStats() {
+    return FlipperSocketImpl.getConnectionStats();
+  }
 }
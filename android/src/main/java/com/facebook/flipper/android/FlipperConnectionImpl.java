@@ -7,14 +7,22 @@
 
 package com.facebook.flipper.android;
 
+import android.util.Base64;
 import com.facebook.flipper.BuildConfig;
 import com.facebook.flipper.core.FlipperArray;
 import com.facebook.flipper.core.FlipperConnection;
+import com.facebook.flipper.core.FlipperExecutionPolicy;
+import com.facebook.flipper.core.FlipperMethodStats;
 import com.facebook.flipper.core.FlipperObject;
 import com.facebook.flipper.core.FlipperReceiver;
+import com.facebook.flipper.core.FlipperResponder;
+import com.facebook.flipper.core.FlipperSendQueuePolicy;
 import com.facebook.jni.HybridData;
 import com.facebook.proguard.annotations.DoNotStrip;
 import com.facebook.soloader.SoLoader;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
 
 @DoNotStrip
 class FlipperConnectionImpl implements FlipperConnection {
@@ -25,29 +33,99 @@ class FlipperConnectionImpl implements FlipperConnection {
   }
 
   private final HybridData mHybridData;
+  private final MessageBatcher mBatcher =
+      new MessageBatcher(
+          new MessageBatcher.Sink() {
+            @Override
+            public void sendRaw(String method, String params) {
+              if (!FlipperSocketImpl.hasOpenSocket()) {
+                // Still queued or batched as the connection dropped.
+                FlipperSession.onMessageLost();
+              }
+              FlipperConnectionImpl.this.sendRaw(method, params);
+            }
+          });
+  private final OutboundQueue mQueue = new OutboundQueue(mBatcher);
+  private final Map<String, FlipperMethodStats> mStats = new ConcurrentHashMap<>();
+  private volatile String mPluginId = "unknown";
 
   private FlipperConnectionImpl(HybridData hd) {
     mHybridData = hd;
   }
 
+  /** Called by the native side before the connection is handed to its plugin. */
+  @DoNotStrip
+  void setPluginIdentifier(String pluginId) {
+    mPluginId = pluginId;
+  }
+
+  /**
+   * Objects and arrays are passed to the native side as already encoded JSON, rather than having it
+   * parse {@link FlipperObject#toJsonString()} into a folly::dynamic only to serialize it again.
+   */
   @Override
   public void send(String method, FlipperObject params) {
-    sendObject(method, params);
+    final long start = System.nanoTime();
+    final String encoded = params == null ? "{}" : params.toJsonString();
+    mQueue.add(method, recordSent(method, encoded, start));
   }
 
   @Override
   public void send(String method, FlipperArray params) {
-    sendArray(method, params);
+    final long start = System.nanoTime();
+    final String encoded = params == null ? "{}" : params.toJsonString();
+    mQueue.add(method, recordSent(method, encoded, start));
   }
 
   @Override
   public void send(String method, String params) {
-    sendRaw(method, params);
+    final long start = System.nanoTime();
+    mQueue.add(method, recordSent(method, params == null ? "{}" : params, start));
+  }
+
+  @Override
+  public boolean trySend(String method, FlipperObject params) {
+    return trySend(method, params, method);
+  }
+
+  @Override
+  public boolean trySend(String method, FlipperObject params, String coalescingKey) {
+    final long start = System.nanoTime();
+    final String encoded = params == null ? "{}" : params.toJsonString();
+    return mQueue.offer(method, recordSent(method, encoded, start), coalescingKey);
+  }
+
+  @Override
+  public boolean isSubscribed(String method, @Nullable Map<String, String> attributes) {
+    return Subscriptions.isSubscribed(mPluginId, method, attributes);
+  }
+
+  @Override
+  public void setSendQueuePolicy(FlipperSendQueuePolicy policy) {
+    mQueue.setPolicy(policy);
   }
 
-  public native void sendObject(String method, FlipperObject params);
+  @Override
+  public void flush() {
+    mQueue.drainAll();
+    mBatcher.flush();
+  }
 
-  public native void sendArray(String method, FlipperArray params);
+  /**
+   * Attachments bypass the native client, which only deals in JSON text, and are written to the
+   * socket right away. They reach it before the message referencing them however that is sent, be
+   * it as a response or from another thread. While the socket is backed up, they are embedded in
+   * the message as base64 instead, to wait in the send queue, count against its quota and be
+   * dropped along with the message.
+   */
+  @Override
+  public String attachBlob(byte[] blob) {
+    final String reference =
+        FlipperSocketImpl.hasBufferedBytesAbove(OutboundQueue.SOCKET_HIGH_WATERMARK_BYTES)
+            ? null
+            : FlipperSocketImpl.sendAttachment(blob);
+    return reference != null ? reference : Base64.encodeToString(blob, Base64.DEFAULT);
+  }
 
   public native void sendRaw(String method, String params);
 
@@ -58,5 +136,45 @@ class FlipperConnectionImpl implements FlipperConnection {
   public native void reportError(Throwable throwable);
 
   @Override
-  public native void receive(String method, FlipperReceiver receiver);
+  public void receive(String method, FlipperReceiver receiver) {
+    receive(method, receiver, FlipperExecutionPolicy.CALLBACK_THREAD);
+  }
+
+  /**
+   * Receivers are wrapped to run as their policy says, and to record the size of incoming calls and
+   * how long they take. Their responses flush this connection before they are sent.
+   */
+  @Override
+  public void receive(
+      final String method, final FlipperReceiver receiver, final FlipperExecutionPolicy policy) {
+    receiveNative(
+        method,
+        new FlipperReceiver() {
+          @Override
+          public void onReceive(FlipperObject params, FlipperResponder responder)
+              throws Exception {
+            if (responder instanceof FlipperResponderImpl) {
+              ((FlipperResponderImpl) responder).setConnection(FlipperConnectionImpl.this);
+            }
+            ReceiverExecutors.dispatch(
+                policy, mPluginId, method, stats(method), receiver, params, responder);
+          }
+        });
+  }
+
+  private String recordSent(String method, String params, long startNanos) {
+    stats(method).recordSent(params.length(), System.nanoTime() - startNanos);
+    return params;
+  }
+
+  private FlipperMethodStats stats(String method) {
+    FlipperMethodStats stats = mStats.get(method);
+    if (stats == null) {
+      stats = TrafficMetrics.get(mPluginId, method);
+      mStats.put(method, stats);
+    }
+    return stats;
+  }
+
+  public native void receiveNative(String method, FlipperReceiver receiver);
 }
@@ -13,11 +13,24 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+import javax.annotation.Nullable;
 
 class FlipperProps {
 
   private static final String FLIPPER_PORTS_PROP_NAME = "flipper.ports";
   private static final String FLIPPER_ALT_PORTS_PROP_NAME = "flipper.alt.ports";
+  private static final String FLIPPER_WIRE_FORMAT_PROP_NAME = "flipper.wire.format";
+  static final String WIRE_FORMAT_MSGPACK = "msgpack";
+  private static final String FLIPPER_COMPRESSION_PROP_NAME = "flipper.compression";
+  private static final String COMPRESSION_OFF = "off";
+  static final int DEFAULT_COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+  static final int DEFAULT_COMPRESSION_MIN_SIZE = 1024;
+  private static final String FLIPPER_BATCHING_PROP_NAME = "flipper.batching";
+  static final int DEFAULT_BATCHING_WINDOW_MS = 16;
+  static final int DEFAULT_BATCHING_MAX_BYTES = 64 * 1024;
+  private static final String FLIPPER_TRANSPORT_PROP_NAME = "flipper.transport";
+  private static final String TRANSPORT_LOCAL_ABSTRACT = "localabstract:";
   private static final int DEFAULT_INSECURE_PORT = 9089;
   private static final int DEFAULT_SECURE_PORT = 9088;
   private static final int DEFAULT_ALT_INSECURE_PORT = 9089;
@@ -44,6 +57,112 @@ class FlipperProps {
     return extractIntFromPropValue(propValue, 1, DEFAULT_ALT_SECURE_PORT);
   }
 
+  /**
+   * Whether the client should offer MessagePack framing to the desktop. Off by default, and enabled
+   * with `adb shell setprop flipper.wire.format msgpack`; JSON text is used otherwise, or if the
+   * desktop declines.
+   *
+   * <p>Messages are produced as JSON text, and re-encoded from it just before they are written to
+   * the socket. MessagePack frames are smaller, but cost the app that extra pass over every message
+   * it sends, so only enable it when bandwidth to the desktop matters more than the app's CPU time.
+   */
+  static boolean isMessagePackOffered() {
+    return WIRE_FORMAT_MSGPACK.equals(getFlipperWireFormatPropValue());
+  }
+
+  /**
+   * Whether permessage-deflate is offered to the desktop. Configured with `adb shell setprop
+   * flipper.compression <level>,<min size>` or `off`, unless overridden through {@link
+   * AndroidFlipperClient#setCompression}.
+   */
+  static synchronized boolean isCompressionEnabled() {
+    if (compressionEnabledOverride != null) {
+      return compressionEnabledOverride;
+    }
+    return !COMPRESSION_OFF.equals(getFlipperCompressionPropValue());
+  }
+
+  static synchronized int getCompressionLevel() {
+    if (compressionLevelOverride != null) {
+      return compressionLevelOverride;
+    }
+    final int level =
+        extractIntFromPropValue(getFlipperCompressionPropValue(), 0, DEFAULT_COMPRESSION_LEVEL);
+    return level >= Deflater.DEFAULT_COMPRESSION && level <= Deflater.BEST_COMPRESSION
+        ? level
+        : DEFAULT_COMPRESSION_LEVEL;
+  }
+
+  static synchronized int getCompressionMinSize() {
+    if (compressionMinSizeOverride != null) {
+      return compressionMinSizeOverride;
+    }
+    return Math.max(
+        0,
+        extractIntFromPropValue(getFlipperCompressionPropValue(), 1, DEFAULT_COMPRESSION_MIN_SIZE));
+  }
+
+  private static Boolean compressionEnabledOverride = null;
+  private static Integer compressionLevelOverride = null;
+  private static Integer compressionMinSizeOverride = null;
+
+  static synchronized void setCompressionOverride(boolean enabled, int level, int minSize) {
+    compressionEnabledOverride = enabled;
+    compressionLevelOverride = level;
+    compressionMinSizeOverride = minSize;
+  }
+
+  /**
+   * How long plugin messages are held back to be sent together, if the desktop supports it.
+   * Configured with `adb shell setprop flipper.batching <window ms>,<max bytes>`, where a window of
+   * 0 disables batching, unless overridden through {@link AndroidFlipperClient#setBatching}.
+   */
+  static synchronized int getBatchingWindowMs() {
+    if (batchingWindowMsOverride != null) {
+      return batchingWindowMsOverride;
+    }
+    return Math.max(
+        0, extractIntFromPropValue(getFlipperBatchingPropValue(), 0, DEFAULT_BATCHING_WINDOW_MS));
+  }
+
+  static synchronized int getBatchingMaxBytes() {
+    if (batchingMaxBytesOverride != null) {
+      return batchingMaxBytesOverride;
+    }
+    return Math.max(
+        0, extractIntFromPropValue(getFlipperBatchingPropValue(), 1, DEFAULT_BATCHING_MAX_BYTES));
+  }
+
+  private static Integer batchingWindowMsOverride = null;
+  private static Integer batchingMaxBytesOverride = null;
+
+  static synchronized void setBatchingOverride(int windowMs, int maxBytes) {
+    batchingWindowMsOverride = windowMs;
+    batchingMaxBytesOverride = maxBytes;
+  }
+
+  /**
+   * The prefix of the local sockets to connect to instead of TCP ports, or null to use TCP.
+   * Configured with `adb shell setprop flipper.transport localabstract:<prefix>`, after which the
+   * client connects to the abstract socket `<prefix>_<port>` for each port, e.g. with `adb reverse
+   * localabstract:flipper_9088 tcp:9088`.
+   */
+  static @Nullable String getLocalSocketPrefix() {
+    return extractLocalSocketPrefix(getFlipperTransportPropValue());
+  }
+
+  static @Nullable String extractLocalSocketPrefix(String propValue) {
+    if (propValue == null || !propValue.startsWith(TRANSPORT_LOCAL_ABSTRACT)) {
+      return null;
+    }
+    final String prefix = propValue.substring(TRANSPORT_LOCAL_ABSTRACT.length());
+    if (prefix.isEmpty()) {
+      Log.e(TAG, "Failed to parse flipper prop value: " + propValue);
+      return null;
+    }
+    return prefix;
+  }
+
   static int extractIntFromPropValue(String propValue, int index, int fallback) {
     if (propValue != null && !propValue.isEmpty()) {
       try {
@@ -52,7 +171,7 @@ class FlipperProps {
           return Integer.parseInt(values[index]);
         }
       } catch (NumberFormatException e) {
-        Log.e(TAG, "Failed to parse flipper ports value: " + propValue);
+        Log.e(TAG, "Failed to parse flipper prop value: " + propValue);
       }
     }
     return fallback;
@@ -64,7 +183,7 @@ class FlipperProps {
     if (flipperPortsPropValue != null) {
       return flipperPortsPropValue;
     }
-    flipperPortsPropValue = getFlipperPortsPropValue(FLIPPER_PORTS_PROP_NAME);
+    flipperPortsPropValue = getPropValue(FLIPPER_PORTS_PROP_NAME);
     return flipperPortsPropValue;
   }
 
@@ -74,11 +193,51 @@ class FlipperProps {
     if (flipperAltPortsPropValue != null) {
       return flipperAltPortsPropValue;
     }
-    flipperAltPortsPropValue = getFlipperPortsPropValue(FLIPPER_ALT_PORTS_PROP_NAME);
+    flipperAltPortsPropValue = getPropValue(FLIPPER_ALT_PORTS_PROP_NAME);
     return flipperAltPortsPropValue;
   }
 
-  private static synchronized String getFlipperPortsPropValue(String propsName) {
+  private static String flipperWireFormatPropValue = null;
+
+  private static synchronized String getFlipperWireFormatPropValue() {
+    if (flipperWireFormatPropValue != null) {
+      return flipperWireFormatPropValue;
+    }
+    flipperWireFormatPropValue = getPropValue(FLIPPER_WIRE_FORMAT_PROP_NAME).trim();
+    return flipperWireFormatPropValue;
+  }
+
+  private static String flipperCompressionPropValue = null;
+
+  private static synchronized String getFlipperCompressionPropValue() {
+    if (flipperCompressionPropValue != null) {
+      return flipperCompressionPropValue;
+    }
+    flipperCompressionPropValue = getPropValue(FLIPPER_COMPRESSION_PROP_NAME).trim();
+    return flipperCompressionPropValue;
+  }
+
+  private static String flipperBatchingPropValue = null;
+
+  private static synchronized String getFlipperBatchingPropValue() {
+    if (flipperBatchingPropValue != null) {
+      return flipperBatchingPropValue;
+    }
+    flipperBatchingPropValue = getPropValue(FLIPPER_BATCHING_PROP_NAME).trim();
+    return flipperBatchingPropValue;
+  }
+
+  private static String flipperTransportPropValue = null;
+
+  private static synchronized String getFlipperTransportPropValue() {
+    if (flipperTransportPropValue != null) {
+      return flipperTransportPropValue;
+    }
+    flipperTransportPropValue = getPropValue(FLIPPER_TRANSPORT_PROP_NAME).trim();
+    return flipperTransportPropValue;
+  }
+
+  private static synchronized String getPropValue(String propsName) {
     String propValue = null;
     Process process = null;
     BufferedReader reader = null;
@@ -98,7 +257,7 @@ class FlipperProps {
       }
       propValue = lastLine;
     } catch (IOException e) {
-      Log.e(TAG, "Failed to query for flipper ports prop", e);
+      Log.e(TAG, "Failed to query for prop " + propsName, e);
       propValue = "";
     } finally {
       try {
@@ -106,7 +265,7 @@ class FlipperProps {
           reader.close();
         }
       } catch (IOException e) {
-        Log.e(TAG, "Failed to close BufferedReader when reading flipper ports prop", e);
+        Log.e(TAG, "Failed to close BufferedReader when reading prop " + propsName, e);
       }
       if (process != null) {
         process.destroy();
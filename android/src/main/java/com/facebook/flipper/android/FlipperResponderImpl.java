@@ -9,11 +9,13 @@ package com.facebook.flipper.android;
 
 import com.facebook.flipper.BuildConfig;
 import com.facebook.flipper.core.FlipperArray;
+import com.facebook.flipper.core.FlipperCancellationToken;
 import com.facebook.flipper.core.FlipperObject;
 import com.facebook.flipper.core.FlipperResponder;
 import com.facebook.jni.HybridData;
 import com.facebook.proguard.annotations.DoNotStrip;
 import com.facebook.soloader.SoLoader;
+import javax.annotation.Nullable;
 
 @DoNotStrip
 class FlipperResponderImpl implements FlipperResponder {
@@ -24,30 +26,73 @@ class FlipperResponderImpl implements FlipperResponder {
   }
 
   private final HybridData mHybridData;
+  private final FlipperCancellationToken mCancellationToken;
+  private volatile @Nullable FlipperConnectionImpl mConnection;
 
+  /** Created by the native side while dispatching the request this responds to. */
   private FlipperResponderImpl(HybridData hd) {
     mHybridData = hd;
+    mCancellationToken = PendingRequests.dispatching();
   }
 
   @Override
   public void success(FlipperObject params) {
-    successObject(params);
+    if (complete()) {
+      successObject(params);
+    }
   }
 
   @Override
   public void success(FlipperArray params) {
-    successArray(params);
+    if (complete()) {
+      successArray(params);
+    }
   }
 
   @Override
   public void success() {
-    successObject(new FlipperObject.Builder().build());
+    if (complete()) {
+      successObject(new FlipperObject.Builder().build());
+    }
+  }
+
+  @Override
+  public void error(FlipperObject response) {
+    if (complete()) {
+      errorObject(response);
+    }
+  }
+
+  @Override
+  public FlipperCancellationToken getCancellationToken() {
+    return mCancellationToken;
+  }
+
+  /** Called with the connection of the plugin whose receiver the request is handed to. */
+  void setConnection(FlipperConnectionImpl connection) {
+    mConnection = connection;
+  }
+
+  /**
+   * Returns whether the response should be sent, which it isn't if the desktop cancelled. If it
+   * should, the messages the plugin sent before are sent first, for the response not to overtake
+   * those held back for batching or waiting in the plugin's send queue.
+   */
+  private boolean complete() {
+    PendingRequests.complete(mCancellationToken);
+    if (mCancellationToken.isCancelled()) {
+      return false;
+    }
+    final FlipperConnectionImpl connection = mConnection;
+    if (connection != null) {
+      connection.flush();
+    }
+    return true;
   }
 
   public native void successObject(FlipperObject response);
 
   public native void successArray(FlipperArray response);
 
-  @Override
-  public native void error(FlipperObject response);
+  public native void errorObject(FlipperObject response);
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import com.facebook.flipper.core.FlipperPlugin;
+import com.facebook.proguard.annotations.DoNotStrip;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+/**
+ * The session of the client with a desktop, which outlives a connection. The client sends the id of
+ * its session with every connection in the {@link #HEADER} upgrade request header. A desktop that
+ * still has the state of that session echoes the id back, in which case plugins that were connected
+ * on the previous connection get {@link FlipperPlugin#onResume} rather than {@link
+ * FlipperPlugin#onConnect} and can skip sending what the desktop already has.
+ *
+ * <p>The session is only resumed after a brief disconnection: past {@link #RESUME_WINDOW_MS}, it is
+ * safer to start over than to trust that nothing was missed. Nor is it resumed if messages were
+ * still waiting to be sent as the connection dropped, since plugins count what they sent as what
+ * the desktop has.
+ */
+@DoNotStrip
+final class FlipperSession {
+
+  static final String HEADER = "Flipper-Session";
+
+  static final long RESUME_WINDOW_MS = 60000;
+
+  private static final String sId = UUID.randomUUID().toString();
+  private static boolean sResumed = false;
+  private static long sClosedAtMs = 0;
+  private static boolean sMessagesLost = false;
+  private static Set<String> sConnectedPlugins = new HashSet<>();
+  private static Set<String> sPreviousPlugins = new HashSet<>();
+
+  private FlipperSession() {}
+
+  static String getId() {
+    return sId;
+  }
+
+  /**
+   * Called when a connection opened, with the session id the desktop echoed, if any. Returns
+   * whether the session was resumed.
+   */
+  static synchronized boolean onOpen(@Nullable String echoedId, long nowMs) {
+    sResumed =
+        !sMessagesLost
+            && sId.equals(echoedId)
+            && sClosedAtMs > 0
+            && nowMs - sClosedAtMs <= RESUME_WINDOW_MS;
+    if (sMessagesLost) {
+      // The desktop missed messages of the previous connection, which therefore can't be resumed,
+      // even after a connection without plugins.
+      sMessagesLost = false;
+      sClosedAtMs = 0;
+    }
+    return sResumed;
+  }
+
+  /** Called when a message was sent that can't reach the desktop, as the connection dropped. */
+  static synchronized void onMessageLost() {
+    sMessagesLost = true;
+  }
+
+  /** Called when a connection that opened closed. */
+  static synchronized void onClose(long nowMs) {
+    if (!sResumed && sConnectedPlugins.isEmpty()) {
+      // No plugin connected, as during the certificate exchange: the previous connection is still
+      // the one to resume.
+      return;
+    }
+    if (sResumed) {
+      // The desktop kept what plugins that didn't connect again sent before.
+      sPreviousPlugins.addAll(sConnectedPlugins);
+    } else {
+      sPreviousPlugins = sConnectedPlugins;
+    }
+    sConnectedPlugins = new HashSet<>();
+    sResumed = false;
+    sClosedAtMs = nowMs;
+  }
+
+  /**
+   * Called by the native client as a plugin connects. Returns whether it should resume rather than
+   * connect from scratch, which is only the case if it was connected on the previous connection.
+   */
+  @DoNotStrip
+  static synchronized boolean shouldResume(String pluginId) {
+    sConnectedPlugins.add(pluginId);
+    return sResumed && sPreviousPlugins.contains(pluginId);
+  }
+}
@@ -8,19 +8,25 @@
 package com.facebook.flipper.android;
 
 import android.net.TrafficStats;
+import android.os.SystemClock;
 import android.util.Log;
 import com.facebook.flipper.BuildConfig;
+import com.facebook.flipper.core.FlipperConnectionStats;
+import com.facebook.flipper.core.FlipperMessagePack;
 import com.facebook.flipper.core.FlipperObject;
 import com.facebook.flipper.core.FlipperSocket;
 import com.facebook.flipper.core.FlipperSocketEventHandler;
 import com.facebook.proguard.annotations.DoNotStrip;
 import com.facebook.soloader.SoLoader;
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.lang.reflect.Method;
 import java.net.Socket;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
@@ -33,18 +39,35 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.PKIXParameters;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import javax.annotation.Nullable;
 import javax.net.SocketFactory;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft;
 import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.PingFrame;
 import org.java_websocket.handshake.ServerHandshake;
 
 /** WS Protocol (RFC-6455): https://datatracker.ietf.org/doc/html/rfc6455 */
@@ -53,6 +76,62 @@ class FlipperSocketImpl extends WebSocketClient implements FlipperSocket {
 
   private static final int CERTIFICATE_TTL_DAYS = 30;
 
+  /**
+   * Upgrade request header listing the optional wire features the client understands, comma
+   * separated. A desktop that supports some of them echoes those in the same header of its
+   * handshake response. Desktops that do not know the header ignore it and keep exchanging plain
+   * JSON text frames.
+   */
+  static final String WIRE_FORMAT_HEADER = "Flipper-Wire-Format";
+
+  /** Binary attachment frames, referenced by messages sent after them. */
+  static final String WIRE_FEATURE_BLOB = "blob";
+
+  /** Calls to {@link MessageBatcher#BATCH_METHOD} standing for several plugin messages. */
+  static final String WIRE_FEATURE_BATCH = "batch";
+
+  /**
+   * Messages calling {@link PendingRequests#CANCEL_METHOD} to cancel a pending request. The desktop
+   * only sends them if the client offers this feature, so it is not echoed back.
+   */
+  static final String WIRE_FEATURE_CANCEL = "cancel";
+
+  /** Messages calling {@link Subscriptions#SUBSCRIBE_METHOD}, not echoed back either. */
+  static final String WIRE_FEATURE_SUBSCRIBE = "subscribe";
+
+  /** The features always offered, MessagePack only being offered if enabled. */
+  private static final String WIRE_FEATURES =
+      WIRE_FEATURE_BLOB
+          + ","
+          + WIRE_FEATURE_BATCH
+          + ","
+          + WIRE_FEATURE_CANCEL
+          + ","
+          + WIRE_FEATURE_SUBSCRIBE;
+
+  /**
+   * First byte of an attachment frame, followed by the attachment id as a big-endian int and the
+   * payload. MessagePack never uses this byte, so attachments can't be mistaken for messages.
+   */
+  private static final byte BLOB_FRAME_MARKER = (byte) 0xc1;
+
+  private static final int BLOB_FRAME_HEADER_SIZE = 5;
+  private static final String BLOB_REFERENCE_PREFIX = "flipper-blob:";
+
+  /** The SSL context of the last secure connection and the certificate versions it was built from. */
+  private static @Nullable SSLContext sSSLContext;
+
+  private static @Nullable String sSSLContextKey;
+
+  /** The last socket to connect, which attachments are sent on. */
+  private static volatile @Nullable FlipperSocketImpl sOpenSocket;
+
+  /**
+   * Attachment ids are unique across connections, so that a message referencing an attachment that
+   * was sent on a previous connection can never resolve to a different one.
+   */
+  private static final AtomicInteger sNextBlobId = new AtomicInteger();
+
   static {
     if (BuildConfig.IS_INTERNAL_BUILD || BuildConfig.LOAD_FLIPPER_EXPLICIT) {
       SoLoader.loadLibrary("flipper");
@@ -61,9 +140,105 @@ class FlipperSocketImpl extends WebSocketClient implements FlipperSocket {
 
   FlipperSocketEventHandler mEventHandler;
   boolean mConnected = false;
+  volatile boolean mMessagePack = false;
+  volatile boolean mBlobs = false;
+  volatile boolean mBatching = false;
+  private final ConnectionProbe mProbe;
 
   FlipperSocketImpl(String url) throws URISyntaxException {
-    super(new URI(url), new Draft_6455(), null, 30);
+    this(url, new AtomicLong());
+  }
+
+  private FlipperSocketImpl(String url, AtomicLong bytesQueued) throws URISyntaxException {
+    super(new URI(url), createDraft(bytesQueued), null, 30);
+    mProbe =
+        new ConnectionProbe(
+            new ConnectionProbe.Link() {
+              @Override
+              public long getBufferedBytes() {
+                return FlipperSocketImpl.this.getBufferedBytes(Long.MAX_VALUE);
+              }
+
+              @Override
+              public void sendPing(ByteBuffer payload) {
+                final PingFrame ping = new PingFrame();
+                ping.setPayload(payload);
+                sendFrame(ping);
+              }
+            },
+            bytesQueued);
+    addHeader(
+        WIRE_FORMAT_HEADER,
+        FlipperProps.isMessagePackOffered()
+            ? WIRE_FEATURES + "," + FlipperProps.WIRE_FORMAT_MSGPACK
+            : WIRE_FEATURES);
+    addHeader(FlipperSession.HEADER, FlipperSession.getId());
+  }
+
+  /** Whether more than the given number of bytes are waiting to be written to the socket. */
+  static boolean hasBufferedBytesAbove(long limit) {
+    final FlipperSocketImpl socket = sOpenSocket;
+    return socket != null && socket.getBufferedBytes(limit) > limit;
+  }
+
+  /** Bytes waiting to be written to the socket, counted up to just above the given limit. */
+  private long getBufferedBytes(long limit) {
+    long buffered = 0;
+    for (ByteBuffer buffer : ((WebSocketImpl) getConnection()).outQueue) {
+      buffered += buffer.remaining();
+      if (buffered > limit) {
+        break;
+      }
+    }
+    return buffered;
+  }
+
+  /** The quality of the connection to the desktop, as last measured. */
+  static FlipperConnectionStats getConnectionStats() {
+    final FlipperSocketImpl socket = sOpenSocket;
+    return socket != null ? socket.mProbe.snapshot() : FlipperConnectionStats.DISCONNECTED;
+  }
+
+  /** Whether there is a connection for messages to be sent on. */
+  static boolean hasOpenSocket() {
+    return sOpenSocket != null;
+  }
+
+  /** Whether the connected desktop accepts batched messages. */
+  static boolean isBatchingAccepted() {
+    final FlipperSocketImpl socket = sOpenSocket;
+    return socket != null && socket.mBatching;
+  }
+
+  private static Draft_6455 createDraft(AtomicLong bytesQueued) {
+    final List<IExtension> extensions = new ArrayList<>();
+    if (FlipperProps.isCompressionEnabled()) {
+      extensions.add(
+          new DeflateExtension(
+              FlipperProps.getCompressionLevel(), FlipperProps.getCompressionMinSize()));
+    }
+    return new CountingDraft(extensions, bytesQueued);
+  }
+
+  /**
+   * Sends an attachment on the connected socket. Returns the reference to it to embed in a message,
+   * or null if there is no connection or the desktop does not accept attachments.
+   */
+  static @Nullable String sendAttachment(byte[] blob) {
+    final FlipperSocketImpl socket = sOpenSocket;
+    if (socket == null || !socket.mBlobs) {
+      return null;
+    }
+    final int id = sNextBlobId.incrementAndGet();
+    final ByteBuffer frame = ByteBuffer.allocate(BLOB_FRAME_HEADER_SIZE + blob.length);
+    frame.put(BLOB_FRAME_MARKER).putInt(id).put(blob);
+    frame.flip();
+    try {
+      socket.flipperSend(frame);
+    } catch (WebsocketNotConnectedException e) {
+      return null;
+    }
+    return BLOB_REFERENCE_PREFIX + id;
   }
 
   public void flipperSetEventHandler(FlipperSocketEventHandler eventHandler) {
@@ -102,34 +277,35 @@ class FlipperSocketImpl extends WebSocketClient implements FlipperSocket {
       if (authenticationObject.contains("certificates_client_path")
           && authenticationObject.contains("certificates_client_pass")) {
 
-        SSLContext sslContext = SSLContext.getInstance("TLS");
-        KeyStore ks = KeyStore.getInstance("PKCS12");
-
         String cert_client_path = authenticationObject.getString("certificates_client_path");
         String cert_client_pass = authenticationObject.getString("certificates_client_pass");
         String cert_ca_path = authenticationObject.getString("certificates_ca_path");
 
-        try (InputStream clientCertificateStream = new FileInputStream(cert_client_path)) {
-          ks.load(clientCertificateStream, cert_client_pass.toCharArray());
-        }
-
-        KeyManagerFactory kmf =
-            KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-        kmf.init(ks, cert_client_pass.toCharArray());
-
-        sslContext.init(
-            kmf.getKeyManagers(), new TrustManager[] {new FlipperTrustManager(cert_ca_path)}, null);
-
-        socketFactory = sslContext.getSocketFactory();
+        socketFactory =
+            getSSLContext(cert_client_path, cert_client_pass, cert_ca_path).getSocketFactory();
       } else {
         socketFactory = SocketFactory.getDefault();
       }
 
+      final String localSocketPrefix = FlipperProps.getLocalSocketPrefix();
+      if (localSocketPrefix != null) {
+        final int port = getURI().getPort();
+        socketFactory =
+            new LocalSocketFactory(
+                LocalSocketFactory.socketName(localSocketPrefix, port),
+                socketFactory instanceof SSLSocketFactory
+                    ? (SSLSocketFactory) socketFactory
+                    : null,
+                getURI().getHost(),
+                port);
+      }
+
       this.setSocketFactory(
           new DelegatingSocketFactory(socketFactory) {
             @Override
             protected Socket configureSocket(Socket socket) {
               TrafficStats.setThreadStatsTag(SOCKET_TAG);
+              enableSessionTickets(socket);
               return socket;
             }
           });
@@ -142,6 +318,60 @@ class FlipperSocketImpl extends WebSocketClient implements FlipperSocket {
     }
   }
 
+  /**
+   * Returns the SSL context for the given certificates, reusing the one built for the previous
+   * connection while the certificate files are unchanged. Besides saving the keystore load, this
+   * keeps the context's TLS session cache, so reconnecting to the same desktop resumes the previous
+   * session rather than doing a full handshake.
+   */
+  private static synchronized SSLContext getSSLContext(
+      String clientPath, String clientPass, String caPath) throws Exception {
+    final String key = fileKey(clientPath) + '|' + fileKey(caPath);
+    if (sSSLContext != null && key.equals(sSSLContextKey)) {
+      return sSSLContext;
+    }
+
+    final KeyStore ks = KeyStore.getInstance("PKCS12");
+    try (InputStream clientCertificateStream = new FileInputStream(clientPath)) {
+      ks.load(clientCertificateStream, clientPass.toCharArray());
+    }
+
+    final KeyManagerFactory kmf =
+        KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    kmf.init(ks, clientPass.toCharArray());
+
+    final SSLContext sslContext = SSLContext.getInstance("TLS");
+    sslContext.init(
+        kmf.getKeyManagers(), new TrustManager[] {new FlipperTrustManager(caPath)}, null);
+
+    sSSLContext = sslContext;
+    sSSLContextKey = key;
+    return sslContext;
+  }
+
+  /** Identifies a version of a file: certificates are rewritten whenever they are renewed. */
+  private static String fileKey(String path) {
+    final File file = new File(path);
+    return path + '@' + file.lastModified() + ':' + file.length();
+  }
+
+  /**
+   * Session tickets let the desktop resume sessions without keeping per-client state. The
+   * platform's TLS provider supports them but only exposes the switch on its own socket class.
+   */
+  private static void enableSessionTickets(Socket socket) {
+    if (!(socket instanceof SSLSocket)) {
+      return;
+    }
+    try {
+      final Method setUseSessionTickets =
+          socket.getClass().getMethod("setUseSessionTickets", boolean.class);
+      setUseSessionTickets.invoke(socket, true);
+    } catch (Exception e) {
+      // Not supported by this provider, sessions are still resumed by id.
+    }
+  }
+
   @Override
   protected void onSetSSLParameters(SSLParameters sslParameters) {
     sslParameters.setNeedClientAuth(true);
@@ -150,12 +380,69 @@ class FlipperSocketImpl extends WebSocketClient implements FlipperSocket {
   @Override
   public void onOpen(ServerHandshake handshakedata) {
     mConnected = true;
+    final List<String> accepted = new ArrayList<>();
+    for (String feature : handshakedata.getFieldValue(WIRE_FORMAT_HEADER).split(",")) {
+      accepted.add(feature.trim());
+    }
+    mMessagePack =
+        FlipperProps.isMessagePackOffered()
+            && accepted.contains(FlipperProps.WIRE_FORMAT_MSGPACK);
+    mBlobs = accepted.contains(WIRE_FEATURE_BLOB);
+    mBatching = accepted.contains(WIRE_FEATURE_BATCH);
+    sOpenSocket = this;
+    FlipperSession.onOpen(
+        handshakedata.getFieldValue(FlipperSession.HEADER), SystemClock.elapsedRealtime());
+    mProbe.start();
     this.mEventHandler.onConnectionEvent(FlipperSocketEventHandler.SocketEvent.OPEN, "");
   }
 
+  @Override
+  public void onWebsocketPong(WebSocket conn, Framedata f) {
+    super.onWebsocketPong(conn, f);
+    mProbe.onPong(f.getPayloadData(), System.nanoTime());
+  }
+
   @Override
   public void onMessage(String message) {
-    this.mEventHandler.onMessageReceived(message);
+    receive(message);
+  }
+
+  @Override
+  public void onMessage(ByteBuffer bytes) {
+    final String message;
+    try {
+      message = FlipperMessagePack.toJson(bytes);
+    } catch (IllegalArgumentException e) {
+      Log.e("flipper", "Dropping malformed binary message. Error: " + e.getMessage());
+      return;
+    }
+    receive(message);
+  }
+
+  /**
+   * Cancellations and subscriptions are handled here rather than by the native side. Only messages
+   * that may be either are parsed to tell, the native side parsing the others anyway.
+   */
+  private void receive(String message) {
+    if (PendingRequests.mayBeCancellation(message) || Subscriptions.mayBeSubscription(message)) {
+      FlipperObject parsed = null;
+      try {
+        parsed = new FlipperObject(message);
+      } catch (RuntimeException e) {
+        // Let the native side report the malformed message as it always has.
+      }
+      if (parsed != null
+          && (PendingRequests.onMessage(parsed) || Subscriptions.onMessage(parsed))) {
+        return;
+      }
+    } else {
+      PendingRequests.onRequest(message);
+    }
+    try {
+      this.mEventHandler.onMessageReceived(message);
+    } finally {
+      PendingRequests.onMessageDispatched();
+    }
   }
 
   @Override
@@ -187,6 +474,7 @@ class FlipperSocketImpl extends WebSocketClient implements FlipperSocket {
     }
 
     mConnected = false;
+    clearOpenSocket();
   }
 
   /**
@@ -225,19 +513,118 @@ class FlipperSocketImpl extends WebSocketClient implements FlipperSocket {
   @Override
   public void flipperDisconnect() {
     mConnected = false;
+    mMessagePack = false;
+    clearOpenSocket();
 
     this.clearEventHandler();
     super.close();
   }
 
+  /**
+   * With MessagePack, messages are parsed again to be encoded, see {@link
+   * FlipperProps#isMessagePackOffered}.
+   */
   @Override
   public void flipperSend(String message) {
+    if (mMessagePack) {
+      try {
+        this.send(FlipperMessagePack.fromJson(message));
+        return;
+      } catch (IllegalArgumentException e) {
+        // Not strict JSON, which MessagePack cannot represent. The desktop still accepts text
+        // frames, so fall through and send it as is.
+      }
+    }
+    this.send(message);
+  }
+
+  @Override
+  public void flipperSend(ByteBuffer message) {
     this.send(message);
   }
 
-  public class FlipperTrustManager implements X509TrustManager {
+  private void clearOpenSocket() {
+    mProbe.stop();
+    mBlobs = false;
+    mBatching = false;
+    if (sOpenSocket == this) {
+      sOpenSocket = null;
+      if (getBufferedBytes(0) > 0) {
+        FlipperSession.onMessageLost();
+      }
+      PendingRequests.cancelAll();
+      Subscriptions.clear();
+      FlipperSession.onClose(SystemClock.elapsedRealtime());
+    }
+  }
+
+  /** Counts the bytes of the frames queued on the connection, as they go out on the wire. */
+  private static class CountingDraft extends Draft_6455 {
+    private final AtomicLong mBytesQueued;
+
+    CountingDraft(List<IExtension> extensions, AtomicLong bytesQueued) {
+      super(extensions);
+      mBytesQueued = bytesQueued;
+    }
+
+    @Override
+    public ByteBuffer createBinaryFrame(Framedata framedata) {
+      final ByteBuffer frame = super.createBinaryFrame(framedata);
+      mBytesQueued.addAndGet(frame.remaining());
+      return frame;
+    }
+
+    /** The base implementation returns a plain draft, which would stop counting. */
+    @Override
+    public Draft copyInstance() {
+      final List<IExtension> extensions = new ArrayList<>();
+      for (IExtension extension : getKnownExtensions()) {
+        extensions.add(extension.copyInstance());
+      }
+      return new CountingDraft(extensions, mBytesQueued);
+    }
+  }
+
+  /**
+   * permessage-deflate (RFC-7692) with a configurable level. Attachments are left uncompressed as
+   * they are mostly PNGs, which deflate only makes slower to send.
+   */
+  private static class DeflateExtension extends PerMessageDeflateExtension {
+    private final int mLevel;
+
+    DeflateExtension(int level, int minSize) {
+      mLevel = level;
+      setDeflater(new Deflater(level, true));
+      setThreshold(minSize);
+    }
+
+    @Override
+    public void encodeFrame(Framedata frame) {
+      final ByteBuffer payload = frame.getPayloadData();
+      if (frame.getOpcode() == Opcode.BINARY
+          && payload.hasRemaining()
+          && payload.get(payload.position()) == BLOB_FRAME_MARKER) {
+        return;
+      }
+      super.encodeFrame(frame);
+    }
+
+    /** The base implementation returns a default instance, dropping the level and threshold. */
+    @Override
+    public IExtension copyInstance() {
+      return new DeflateExtension(mLevel, getThreshold());
+    }
+  }
+
+  public static class FlipperTrustManager implements X509TrustManager {
     Certificate mCA;
 
+    /**
+     * The last chain that passed validation against the CA. The trust manager lives as long as its
+     * cached SSL context, so reconnecting to the same desktop only needs the date checks.
+     */
+    private volatile @Nullable X509Certificate[] mValidatedChain;
+
     public FlipperTrustManager(String cert_ca_path) throws Exception {
 
       CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
@@ -305,6 +692,10 @@ class FlipperSocketImpl extends WebSocketClient implements FlipperSocket {
         }
       }
 
+      if (Arrays.equals(chain, mValidatedChain)) {
+        return;
+      }
+
       // Check issued by trusted issuer
       final CertPathValidator certificatePathValidator;
       try {
@@ -337,6 +728,7 @@ class FlipperSocketImpl extends WebSocketClient implements FlipperSocket {
       } catch (CertPathValidatorException | InvalidAlgorithmParameterException e) {
         throw new CertificateException(e);
       }
+      mValidatedChain = chain.clone();
     }
 
     public X509Certificate[] getAcceptedIssuers() {
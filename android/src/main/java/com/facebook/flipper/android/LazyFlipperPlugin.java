@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import com.facebook.flipper.core.FlipperConnection;
+import com.facebook.flipper.core.FlipperPlugin;
+import com.facebook.flipper.core.FlipperPluginFactory;
+import javax.annotation.Nullable;
+
+/**
+ * Stands in for a plugin registered with a factory. The native client advertises it to the desktop
+ * like any other plugin, and the real plugin is only created when the desktop first activates it
+ * or it is looked up.
+ */
+final class LazyFlipperPlugin<T extends FlipperPlugin> implements FlipperPlugin {
+
+  private final String mId;
+  private final Class<T> mPluginClass;
+  private final boolean mRunInBackground;
+  private @Nullable FlipperPluginFactory<T> mFactory;
+  private @Nullable T mPlugin;
+
+  LazyFlipperPlugin(
+      String id, Class<T> pluginClass, boolean runInBackground, FlipperPluginFactory<T> factory) {
+    mId = id;
+    mPluginClass = pluginClass;
+    mRunInBackground = runInBackground;
+    mFactory = factory;
+  }
+
+  /** Returns the real plugin, creating it if that wasn't done yet. */
+  synchronized T get() {
+    if (mPlugin != null) {
+      return mPlugin;
+    }
+    final T plugin = mFactory.create();
+    if (!mId.equals(plugin.getId()) || plugin.getClass() != mPluginClass) {
+      throw new IllegalStateException(
+          "Plugin factory for "
+              + mId
+              + " ("
+              + mPluginClass.getName()
+              + ") created plugin "
+              + plugin.getId()
+              + " ("
+              + plugin.getClass().getName()
+              + ")");
+    }
+    mPlugin = plugin;
+    mFactory = null;
+    return plugin;
+  }
+
+  @Override
+  public String getId() {
+    return mId;
+  }
+
+  @Override
+  public void onConnect(FlipperConnection connection) throws Exception {
+    get().onConnect(connection);
+  }
+
+  @Override
+  public void onResume(FlipperConnection connection) throws Exception {
+    get().onResume(connection);
+  }
+
+  @Override
+  public void onDisconnect() throws Exception {
+    final T plugin;
+    synchronized (this) {
+      plugin = mPlugin;
+    }
+    if (plugin != null) {
+      plugin.onDisconnect();
+    }
+  }
+
+  @Override
+  public boolean runInBackground() {
+    return mRunInBackground;
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import javax.annotation.Nullable;
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Creates sockets connecting to an abstract-namespace Unix domain socket rather than over TCP. The
+ * desktop still listens on TCP: `adb reverse localabstract:<name> tcp:<port>` bridges the two,
+ * without going through the device's TCP stack.
+ *
+ * <p>For secure connections, TLS is layered on top of the local socket, which therefore has to be
+ * connected when created rather than by the WebSocket client.
+ */
+final class LocalSocketFactory extends SocketFactory {
+
+  private final String mName;
+  private final @Nullable SSLSocketFactory mTlsFactory;
+  private final String mHost;
+  private final int mPort;
+
+  /**
+   * @param tlsFactory the factory to layer TLS with, or null for plain connections. The host and
+   *     port are those TLS sessions are cached for.
+   */
+  LocalSocketFactory(String name, @Nullable SSLSocketFactory tlsFactory, String host, int port) {
+    mName = name;
+    mTlsFactory = tlsFactory;
+    mHost = host;
+    mPort = port;
+  }
+
+  /** The name of the local socket standing in for the given TCP port. */
+  static String socketName(String prefix, int port) {
+    return prefix + "_" + port;
+  }
+
+  @Override
+  public Socket createSocket() throws IOException {
+    final StreamSocket socket = new StreamSocket(new LocalSocketConnector(mName));
+    if (mTlsFactory == null) {
+      return socket;
+    }
+    socket.connect(null);
+    return mTlsFactory.createSocket(socket, mHost, mPort, true);
+  }
+
+  @Override
+  public Socket createSocket(String host, int port) throws IOException {
+    return connected(createSocket());
+  }
+
+  @Override
+  public Socket createSocket(String host, int port, InetAddress localAddress, int localPort)
+      throws IOException {
+    return connected(createSocket());
+  }
+
+  @Override
+  public Socket createSocket(InetAddress host, int port) throws IOException {
+    return connected(createSocket());
+  }
+
+  @Override
+  public Socket createSocket(InetAddress host, int port, InetAddress localAddress, int localPort)
+      throws IOException {
+    return connected(createSocket());
+  }
+
+  private static Socket connected(Socket socket) throws IOException {
+    if (!socket.isConnected()) {
+      socket.connect(null);
+    }
+    return socket;
+  }
+
+  private static final class LocalSocketConnector implements StreamSocket.Connector {
+    private final String mName;
+    private final LocalSocket mSocket = new LocalSocket();
+
+    LocalSocketConnector(String name) {
+      mName = name;
+    }
+
+    /** Connecting to a local socket never blocks for long, so there is no timeout. */
+    @Override
+    public void connect(int timeoutMs) throws IOException {
+      mSocket.connect(new LocalSocketAddress(mName, LocalSocketAddress.Namespace.ABSTRACT));
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return mSocket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+      return mSocket.getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+      mSocket.close();
+    }
+  }
+}
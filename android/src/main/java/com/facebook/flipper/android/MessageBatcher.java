@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONObject;
+
+/**
+ * Holds back the messages a plugin sends for a short window, and hands them to the native client as
+ * a single message once the window ends or enough bytes have accumulated. That way a burst of small
+ * messages crosses JNI once and goes out as a single frame.
+ *
+ * <p>A batch is sent as a call to {@link #BATCH_METHOD} on the plugin, with a list of [method,
+ * params] pairs as params, which the desktop unpacks into the original messages. Batching is only
+ * used if the desktop accepted it when the socket connected, otherwise messages are passed through
+ * as they are sent.
+ */
+final class MessageBatcher {
+
+  static final String BATCH_METHOD = "flipper:batch";
+
+  interface Sink {
+    void sendRaw(String method, String params);
+  }
+
+  private static Handler sHandler;
+
+  private final Sink mSink;
+  private final List<String> mMethods = new ArrayList<>();
+  private final List<String> mParams = new ArrayList<>();
+  private int mPendingBytes = 0;
+  private boolean mFlushScheduled = false;
+
+  private final Runnable mFlushRunnable =
+      new Runnable() {
+        @Override
+        public void run() {
+          synchronized (MessageBatcher.this) {
+            mFlushScheduled = false;
+            flush();
+          }
+        }
+      };
+
+  MessageBatcher(Sink sink) {
+    mSink = sink;
+  }
+
+  synchronized void send(String method, String params) {
+    final int windowMs = FlipperProps.getBatchingWindowMs();
+    if (windowMs <= 0 || !FlipperSocketImpl.isBatchingAccepted()) {
+      // Flush first so that the message can't overtake ones sent while batching was on.
+      flush();
+      mSink.sendRaw(method, params);
+      return;
+    }
+
+    mMethods.add(method);
+    mParams.add(params);
+    mPendingBytes += method.length() + params.length();
+    if (mPendingBytes >= FlipperProps.getBatchingMaxBytes()) {
+      flush();
+    } else if (!mFlushScheduled) {
+      mFlushScheduled = true;
+      getHandler().postDelayed(mFlushRunnable, windowMs);
+    }
+  }
+
+  synchronized void flush() {
+    final int count = mMethods.size();
+    if (count == 0) {
+      return;
+    }
+    if (count == 1) {
+      mSink.sendRaw(mMethods.get(0), mParams.get(0));
+    } else {
+      final StringBuilder batch = new StringBuilder(mPendingBytes + count * 8);
+      batch.append('[');
+      for (int i = 0; i < count; i++) {
+        if (i > 0) {
+          batch.append(',');
+        }
+        batch.append('[').append(JSONObject.quote(mMethods.get(i)));
+        batch.append(',').append(mParams.get(i)).append(']');
+      }
+      batch.append(']');
+      mSink.sendRaw(BATCH_METHOD, batch.toString());
+    }
+    mMethods.clear();
+    mParams.clear();
+    mPendingBytes = 0;
+  }
+
+  /** The thread batches and backed up messages are sent from. */
+  static synchronized Handler getHandler() {
+    if (sHandler == null) {
+      final HandlerThread thread =
+          new HandlerThread("FlipperBatchThread", Process.THREAD_PRIORITY_BACKGROUND);
+      thread.start();
+      sHandler = new Handler(thread.getLooper());
+    }
+    return sHandler;
+  }
+}
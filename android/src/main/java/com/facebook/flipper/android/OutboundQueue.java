@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import com.facebook.flipper.core.FlipperSendQueuePolicy;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A plugin's messages on their way to the {@link MessageBatcher}. They pass straight through while
+ * the socket keeps up. Once the socket has more than {@link #SOCKET_HIGH_WATERMARK_BYTES} waiting
+ * to be written, messages wait here instead, within the bounds of the plugin's {@link
+ * FlipperSendQueuePolicy}, and are drained as the socket catches up.
+ *
+ * <p>Messages added with {@link #add} are never dropped: they count against the bounds, but only
+ * messages offered with {@link #offer} are dropped or replaced to stay within them. Both are sent
+ * in the order they arrived.
+ */
+final class OutboundQueue {
+
+  static final long SOCKET_HIGH_WATERMARK_BYTES = 4 * 1024 * 1024;
+  private static final int DRAIN_RETRY_MS = 16;
+
+  private static final class Entry {
+    final long seq;
+    final String method;
+    String params;
+    final @Nullable String key;
+
+    Entry(long seq, String method, String params, @Nullable String key) {
+      this.seq = seq;
+      this.method = method;
+      this.params = params;
+      this.key = key;
+    }
+
+    int size() {
+      return method.length() + params.length();
+    }
+  }
+
+  private final MessageBatcher mBatcher;
+  private final ArrayDeque<Entry> mLossless = new ArrayDeque<>();
+  private final ArrayDeque<Entry> mDroppable = new ArrayDeque<>();
+  private final Map<String, Entry> mEntriesByKey = new HashMap<>();
+  private FlipperSendQueuePolicy mPolicy = FlipperSendQueuePolicy.DEFAULT;
+  private long mBytes = 0;
+  private long mNextSeq = 0;
+  private boolean mDrainScheduled = false;
+
+  private final Runnable mDrainRunnable =
+      new Runnable() {
+        @Override
+        public void run() {
+          synchronized (OutboundQueue.this) {
+            mDrainScheduled = false;
+            drain();
+          }
+        }
+      };
+
+  OutboundQueue(MessageBatcher batcher) {
+    mBatcher = batcher;
+  }
+
+  synchronized void setPolicy(FlipperSendQueuePolicy policy) {
+    mPolicy = policy;
+    trim();
+  }
+
+  /** Sends or queues the message, however full the queue is. */
+  synchronized void add(String method, String params) {
+    if (sendIfIdle(method, params)) {
+      return;
+    }
+
+    final Entry entry = new Entry(mNextSeq++, method, params, null);
+    mLossless.addLast(entry);
+    mBytes += entry.size();
+    trim();
+    scheduleDrain(0);
+  }
+
+  /**
+   * Returns whether the message was sent or queued. It is only refused when the queue is full and
+   * the policy is {@link FlipperSendQueuePolicy.Overflow#DROP_NEWEST}, or when the message alone
+   * exceeds the byte quota.
+   */
+  synchronized boolean offer(String method, String params, @Nullable String key) {
+    if (sendIfIdle(method, params)) {
+      return true;
+    }
+
+    final boolean coalesce =
+        key != null && mPolicy.getOverflow() == FlipperSendQueuePolicy.Overflow.COALESCE_BY_KEY;
+    if (coalesce) {
+      final Entry existing = mEntriesByKey.get(key);
+      if (existing != null && existing.method.equals(method)) {
+        mBytes += params.length() - existing.params.length();
+        existing.params = params;
+        trim();
+        scheduleDrain(0);
+        return mEntriesByKey.get(key) == existing;
+      }
+    }
+
+    final Entry entry = new Entry(mNextSeq++, method, params, coalesce ? key : null);
+    if (mPolicy.getOverflow() == FlipperSendQueuePolicy.Overflow.DROP_NEWEST
+        && (size() >= mPolicy.getMaxMessages()
+            || mBytes + entry.size() > mPolicy.getMaxBytes())) {
+      scheduleDrain(0);
+      return false;
+    }
+
+    mDroppable.addLast(entry);
+    mBytes += entry.size();
+    if (entry.key != null) {
+      mEntriesByKey.put(entry.key, entry);
+    }
+    trim();
+    scheduleDrain(0);
+    return mDroppable.peekLast() == entry;
+  }
+
+  /** Hands all waiting messages to the batcher, whether or not the socket has caught up. */
+  synchronized void drainAll() {
+    while (size() > 0) {
+      sendFirst();
+    }
+  }
+
+  /** Sends the message right away if nothing is waiting and the socket keeps up. */
+  private boolean sendIfIdle(String method, String params) {
+    if (size() == 0 && !FlipperSocketImpl.hasBufferedBytesAbove(SOCKET_HIGH_WATERMARK_BYTES)) {
+      mBatcher.send(method, params);
+      return true;
+    }
+    return false;
+  }
+
+  private void drain() {
+    while (size() > 0 && !FlipperSocketImpl.hasBufferedBytesAbove(SOCKET_HIGH_WATERMARK_BYTES)) {
+      sendFirst();
+    }
+    if (size() > 0) {
+      scheduleDrain(DRAIN_RETRY_MS);
+    }
+  }
+
+  private int size() {
+    return mLossless.size() + mDroppable.size();
+  }
+
+  private void sendFirst() {
+    final Entry lossless = mLossless.peekFirst();
+    final Entry droppable = mDroppable.peekFirst();
+    final Entry entry =
+        droppable == null || (lossless != null && lossless.seq < droppable.seq)
+            ? removeFirst(mLossless)
+            : removeFirst(mDroppable);
+    mBatcher.send(entry.method, entry.params);
+  }
+
+  /** Drops the oldest droppable messages until the queue is within its quotas, if it can be. */
+  private void trim() {
+    while (!mDroppable.isEmpty()
+        && (size() > mPolicy.getMaxMessages() || mBytes > mPolicy.getMaxBytes())) {
+      removeFirst(mDroppable);
+    }
+  }
+
+  private Entry removeFirst(ArrayDeque<Entry> entries) {
+    final Entry entry = entries.removeFirst();
+    mBytes -= entry.size();
+    if (entry.key != null && mEntriesByKey.get(entry.key) == entry) {
+      mEntriesByKey.remove(entry.key);
+    }
+    return entry;
+  }
+
+  private void scheduleDrain(int delayMs) {
+    if (!mDrainScheduled) {
+      mDrainScheduled = true;
+      MessageBatcher.getHandler().postDelayed(mDrainRunnable, delayMs);
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import android.util.Log;
+import com.facebook.flipper.core.FlipperCancellationToken;
+import com.facebook.flipper.core.FlipperObject;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Desktop requests waiting for a response, so that the desktop can cancel them with a {@link
+ * #CANCEL_METHOD} message naming the request id.
+ *
+ * <p>Incoming messages are dispatched synchronously by the native side on the socket thread, down to
+ * the creation of the {@link FlipperResponderImpl} handed to the receiver. The token of the request
+ * being dispatched is kept in a thread local in the meantime, for the responder to pick up.
+ */
+final class PendingRequests {
+
+  static final String CANCEL_METHOD = "cancel";
+
+  private static final String EXECUTE_METHOD = "execute";
+  private static final String QUOTED_CANCEL_METHOD = '"' + CANCEL_METHOD + '"';
+  private static final String QUOTED_EXECUTE_METHOD = '"' + EXECUTE_METHOD + '"';
+
+  private static final ConcurrentHashMap<Integer, FlipperCancellationToken> sTokens =
+      new ConcurrentHashMap<>();
+  private static final ThreadLocal<FlipperCancellationToken> sDispatching = new ThreadLocal<>();
+
+  private PendingRequests() {}
+
+  /**
+   * Whether a message may be a cancellation, told without parsing it. Those that may are parsed and
+   * passed to {@link #onMessage}, the others to {@link #onRequest}.
+   */
+  static boolean mayBeCancellation(String message) {
+    return message.contains(QUOTED_CANCEL_METHOD);
+  }
+
+  /**
+   * Called with each message before it is dispatched. Returns whether the message was a
+   * cancellation, which is handled here and must not be dispatched.
+   */
+  static boolean onMessage(FlipperObject parsed) {
+    final String method = parsed.getString("method");
+    if (CANCEL_METHOD.equals(method)) {
+      final FlipperObject params = parsed.getObject("params");
+      final FlipperCancellationToken token =
+          params == null ? null : sTokens.remove(params.getInt("id"));
+      if (token != null) {
+        token.cancel();
+      } else {
+        Log.d("flipper", "Cancelled request already completed: " + parsed.toJsonString());
+      }
+      return true;
+    }
+    if (EXECUTE_METHOD.equals(method) && parsed.contains("id")) {
+      start(parsed.getInt("id"));
+    }
+    return false;
+  }
+
+  /**
+   * Called instead of {@link #onMessage} with each message that can't be a cancellation, before it
+   * is dispatched. Only the id of requests is read, without parsing the rest of the message.
+   */
+  static void onRequest(String message) {
+    if (!message.contains(QUOTED_EXECUTE_METHOD)) {
+      return;
+    }
+    final int id = findRequestId(message);
+    if (id >= 0) {
+      start(id);
+    }
+  }
+
+  private static void start(int id) {
+    final FlipperCancellationToken token = new FlipperCancellationToken();
+    sTokens.put(id, token);
+    sDispatching.set(token);
+  }
+
+  /**
+   * Returns the id of an {@link #EXECUTE_METHOD} request, or -1 if the message isn't one. Only the
+   * members of the outermost object are looked at, and only until both the method and id are found,
+   * which the desktop sends first.
+   */
+  static int findRequestId(String message) {
+    final int length = message.length();
+    int depth = 0;
+    int keyStart = -1;
+    int keyEnd = -1;
+    boolean execute = false;
+    int id = -1;
+    for (int i = 0; i < length && (!execute || id < 0); i++) {
+      final char c = message.charAt(i);
+      if (c == '"') {
+        final int start = i + 1;
+        i = skipString(message, start);
+        if (depth != 1) {
+          continue;
+        }
+        int next = i + 1;
+        while (next < length && Character.isWhitespace(message.charAt(next))) {
+          next++;
+        }
+        if (next < length && message.charAt(next) == ':') {
+          keyStart = start;
+          keyEnd = i;
+          i = next;
+        } else if (regionEquals(message, keyStart, keyEnd, "method")) {
+          execute = regionEquals(message, start, i, EXECUTE_METHOD);
+        }
+      } else if (c == '{' || c == '[') {
+        depth++;
+      } else if (c == '}' || c == ']') {
+        depth--;
+      } else if (depth == 1
+          && c >= '0'
+          && c <= '9'
+          && regionEquals(message, keyStart, keyEnd, "id")) {
+        long value = 0;
+        while (i < length && message.charAt(i) >= '0' && message.charAt(i) <= '9') {
+          value = Math.min(value * 10 + message.charAt(i) - '0', Integer.MAX_VALUE + 1L);
+          i++;
+        }
+        id = value <= Integer.MAX_VALUE ? (int) value : -1;
+        i--;
+      }
+    }
+    return execute ? id : -1;
+  }
+
+  /** Returns the index of the quote closing the string starting at the given index. */
+  private static int skipString(String message, int start) {
+    int i = start;
+    while (i < message.length() && message.charAt(i) != '"') {
+      i += message.charAt(i) == '\\' ? 2 : 1;
+    }
+    return i;
+  }
+
+  private static boolean regionEquals(String message, int start, int end, String value) {
+    return end - start == value.length() && message.startsWith(value, start);
+  }
+
+  /** Called once the message passed to {@link #onMessage} was dispatched. */
+  static void onMessageDispatched() {
+    sDispatching.remove();
+  }
+
+  /** The token of the request being dispatched on this thread, if any. */
+  static FlipperCancellationToken dispatching() {
+    final FlipperCancellationToken token = sDispatching.get();
+    return token != null ? token : FlipperCancellationToken.NONE;
+  }
+
+  /** Called once a request was responded to. */
+  static void complete(@Nullable FlipperCancellationToken token) {
+    if (token != null && token != FlipperCancellationToken.NONE) {
+      sTokens.values().remove(token);
+    }
+  }
+
+  /** Cancels all pending requests, as nobody is left to read their responses. */
+  static void cancelAll() {
+    for (Integer id : sTokens.keySet()) {
+      final FlipperCancellationToken token = sTokens.remove(id);
+      if (token != null) {
+        token.cancel();
+      }
+    }
+  }
+}
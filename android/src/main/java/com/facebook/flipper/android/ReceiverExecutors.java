@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import com.facebook.flipper.core.FlipperExecutionPolicy;
+import com.facebook.flipper.core.FlipperMethodStats;
+import com.facebook.flipper.core.FlipperObject;
+import com.facebook.flipper.core.FlipperReceiver;
+import com.facebook.flipper.core.FlipperResponder;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs receivers off Flipper's callback thread, as chosen by their {@link FlipperExecutionPolicy}.
+ * Background calls share a small pool of threads. At most {@link #MAX_QUEUED_CALLS} calls wait for
+ * it at any time, further calls are answered with an error rather than piling up. Serial calls go
+ * through a queue per key that hands one call at a time to the pool.
+ */
+final class ReceiverExecutors {
+
+  private static final int POOL_SIZE =
+      Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+  private static final int MAX_QUEUED_CALLS = 256;
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+  private static final AtomicInteger sQueuedCalls = new AtomicInteger();
+  private static final ConcurrentHashMap<String, SerialExecutor> sSerialExecutors =
+      new ConcurrentHashMap<>();
+  private static final ThreadPoolExecutor sPool = createPool();
+
+  private ReceiverExecutors() {}
+
+  /**
+   * Runs the receiver as the policy says, recording queueing and receiver times in the stats. Serial
+   * keys are scoped to the plugin, and calls with a serial policy without a key of its own are
+   * ordered with other calls to the same method.
+   */
+  static void dispatch(
+      final FlipperExecutionPolicy policy,
+      final String pluginId,
+      final String method,
+      final FlipperMethodStats stats,
+      final FlipperReceiver receiver,
+      final FlipperObject params,
+      final FlipperResponder responder)
+      throws Exception {
+    if (policy.getType() == FlipperExecutionPolicy.Type.CALLBACK_THREAD) {
+      final long start = System.nanoTime();
+      try {
+        receiver.onReceive(params, responder);
+      } finally {
+        recordReceived(stats, params, start);
+      }
+      return;
+    }
+
+    final Executor executor;
+    switch (policy.getType()) {
+      case MAIN_THREAD:
+        executor = MainThreadExecutor.INSTANCE;
+        break;
+      case SERIAL:
+        final String key = policy.getSerialKey();
+        executor =
+            getSerialExecutor(key != null ? pluginId + '/' + key : pluginId + '#' + method);
+        break;
+      default:
+        executor = sPool;
+        break;
+    }
+
+    if (sQueuedCalls.incrementAndGet() > MAX_QUEUED_CALLS) {
+      sQueuedCalls.decrementAndGet();
+      stats.recordRejected();
+      responder.error(
+          new FlipperObject.Builder()
+              .put("name", "ReceiverQueueFull")
+              .put("message", "Too many calls are waiting to be handled, try again later")
+              .build());
+      return;
+    }
+
+    stats.recordQueued();
+    final long queuedAt = System.nanoTime();
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            sQueuedCalls.decrementAndGet();
+            final long start = System.nanoTime();
+            stats.recordDequeued(start - queuedAt);
+            if (responder.getCancellationToken().isCancelled()) {
+              return;
+            }
+            try {
+              receiver.onReceive(params, responder);
+            } catch (Exception ex) {
+              responder.error(
+                  new FlipperObject.Builder()
+                      .put("name", ex.getClass().getCanonicalName())
+                      .put("message", ex.getMessage())
+                      .put("stacktrace", getStackTraceString(ex))
+                      .build());
+            } finally {
+              recordReceived(stats, params, start);
+            }
+          }
+        });
+  }
+
+  private static void recordReceived(
+      FlipperMethodStats stats, FlipperObject params, long startNanos) {
+    stats.recordReceived(
+        params == null ? 0 : params.encodedLength(), System.nanoTime() - startNanos);
+  }
+
+  private static SerialExecutor getSerialExecutor(String key) {
+    SerialExecutor executor = sSerialExecutors.get(key);
+    if (executor == null) {
+      executor = new SerialExecutor();
+      final SerialExecutor existing = sSerialExecutors.putIfAbsent(key, executor);
+      if (existing != null) {
+        executor = existing;
+      }
+    }
+    return executor;
+  }
+
+  /**
+   * The pool's own queue is unbounded: calls are bounded when they are admitted by {@link
+   * #dispatch}, so that a serial executor handing over its next call is never refused.
+   */
+  private static ThreadPoolExecutor createPool() {
+    final ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(
+            POOL_SIZE,
+            POOL_SIZE,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+              private final AtomicInteger mCount = new AtomicInteger();
+
+              @Override
+              public Thread newThread(final Runnable runnable) {
+                return new Thread(
+                    new Runnable() {
+                      @Override
+                      public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                      }
+                    },
+                    "FlipperReceiverThread-" + mCount.incrementAndGet());
+              }
+            });
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  private static String getStackTraceString(Throwable th) {
+    StringWriter stringWriter = new StringWriter();
+    th.printStackTrace(new PrintWriter(stringWriter));
+    return stringWriter.toString();
+  }
+
+  private enum MainThreadExecutor implements Executor {
+    INSTANCE;
+
+    @Override
+    public void execute(Runnable runnable) {
+      sMainHandler.post(runnable);
+    }
+  }
+
+  /** Runs its calls on the pool one after the other, in the order they were queued. */
+  private static final class SerialExecutor implements Executor {
+    private final ArrayDeque<Runnable> mCalls = new ArrayDeque<>();
+    private boolean mRunning = false;
+
+    @Override
+    public synchronized void execute(final Runnable runnable) {
+      mCalls.addLast(
+          new Runnable() {
+            @Override
+            public void run() {
+              try {
+                runnable.run();
+              } finally {
+                scheduleNext();
+              }
+            }
+          });
+      if (!mRunning) {
+        scheduleNext();
+      }
+    }
+
+    private synchronized void scheduleNext() {
+      final Runnable next = mCalls.pollFirst();
+      mRunning = next != null;
+      if (next != null) {
+        sPool.execute(next);
+      }
+    }
+  }
+}
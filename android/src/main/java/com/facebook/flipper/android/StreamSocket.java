@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+
+/**
+ * A {@link Socket} over a stream connection that isn't TCP, such as a Unix domain socket, so that
+ * the WebSocket client, which only deals in java.net sockets, can run over it. Only what the client
+ * and TLS layered on top use is supported: connecting, the two streams and closing. TCP options are
+ * ignored.
+ */
+class StreamSocket extends Socket {
+
+  /** The underlying connection. */
+  interface Connector {
+    void connect(int timeoutMs) throws IOException;
+
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+
+    void close() throws IOException;
+  }
+
+  private final Connector mConnector;
+  private final Object mLock = new Object();
+  private boolean mConnected = false;
+  private boolean mClosed = false;
+
+  StreamSocket(Connector connector) {
+    mConnector = connector;
+  }
+
+  /** The address is ignored, the connector knows where to connect to. */
+  @Override
+  public void connect(SocketAddress endpoint) throws IOException {
+    connect(endpoint, 0);
+  }
+
+  @Override
+  public void connect(SocketAddress endpoint, int timeout) throws IOException {
+    synchronized (mLock) {
+      if (mClosed) {
+        throw new SocketException("Socket is closed");
+      }
+      if (mConnected) {
+        throw new SocketException("Already connected");
+      }
+      mConnector.connect(timeout);
+      mConnected = true;
+    }
+  }
+
+  @Override
+  public boolean isConnected() {
+    synchronized (mLock) {
+      return mConnected;
+    }
+  }
+
+  @Override
+  public boolean isClosed() {
+    synchronized (mLock) {
+      return mClosed;
+    }
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    checkOpen();
+    return mConnector.getInputStream();
+  }
+
+  @Override
+  public OutputStream getOutputStream() throws IOException {
+    checkOpen();
+    return mConnector.getOutputStream();
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (mLock) {
+      if (mClosed) {
+        return;
+      }
+      mClosed = true;
+    }
+    mConnector.close();
+  }
+
+  @Override
+  public void setTcpNoDelay(boolean on) {}
+
+  @Override
+  public void setReuseAddress(boolean on) {}
+
+  @Override
+  public void setSoTimeout(int timeout) {}
+
+  @Override
+  public void setKeepAlive(boolean on) {}
+
+  @Override
+  public SocketAddress getRemoteSocketAddress() {
+    return null;
+  }
+
+  @Override
+  public SocketAddress getLocalSocketAddress() {
+    return null;
+  }
+
+  private void checkOpen() throws SocketException {
+    synchronized (mLock) {
+      if (mClosed) {
+        throw new SocketException("Socket is closed");
+      }
+      if (!mConnected) {
+        throw new SocketException("Socket is not connected");
+      }
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import android.util.Log;
+import com.facebook.flipper.core.FlipperArray;
+import com.facebook.flipper.core.FlipperObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * What the desktop displays of each plugin, as filters it pushes with {@link #SUBSCRIBE_METHOD}
+ * messages, so that plugins can skip building messages nobody will look at:
+ *
+ * <pre>
+ * {"method": "subscribe", "params": {"plugin": "Network", "filters": [
+ *   {"method": "newRequest", "prefix": {"url": "https://api.example.com/"}},
+ *   {"method": "*"}
+ * ]}}
+ * </pre>
+ *
+ * <p>A message is subscribed if one of the filters for its method matches its attributes: all the
+ * values in {@code equals} are equal to those of the attributes, and all those in {@code prefix}
+ * start them. Methods that no filter names use the filters for {@code "*"}, and are not subscribed
+ * if there are none. Without filters, or once the desktop sends null filters, everything is
+ * subscribed. Attributes a plugin does not pass are not checked, as it could not tell.
+ *
+ * <p>Filters are forgotten when the connection closes, as the next desktop may show something else.
+ */
+final class Subscriptions {
+
+  static final String SUBSCRIBE_METHOD = "subscribe";
+
+  private static final String ANY_METHOD = "*";
+  private static final String QUOTED_SUBSCRIBE_METHOD = '"' + SUBSCRIBE_METHOD + '"';
+
+  private static final ConcurrentHashMap<String, Map<String, List<Filter>>> sFilters =
+      new ConcurrentHashMap<>();
+
+  private static final class Filter {
+    final Map<String, String> equals;
+    final Map<String, String> prefixes;
+
+    Filter(Map<String, String> equals, Map<String, String> prefixes) {
+      this.equals = equals;
+      this.prefixes = prefixes;
+    }
+
+    boolean matches(@Nullable Map<String, String> attributes) {
+      if (attributes == null) {
+        return true;
+      }
+      for (Map.Entry<String, String> condition : equals.entrySet()) {
+        final String value = attributes.get(condition.getKey());
+        if (value != null && !value.equals(condition.getValue())) {
+          return false;
+        }
+      }
+      for (Map.Entry<String, String> condition : prefixes.entrySet()) {
+        final String value = attributes.get(condition.getKey());
+        if (value != null && !value.startsWith(condition.getValue())) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private Subscriptions() {}
+
+  /**
+   * Whether a message may set filters, told without parsing it. Those that do are parsed and passed
+   * to {@link #onMessage}.
+   */
+  static boolean mayBeSubscription(String message) {
+    return message.contains(QUOTED_SUBSCRIBE_METHOD);
+  }
+
+  /**
+   * Called with each message before it is dispatched. Returns whether the message set filters,
+   * which is handled here and must not be dispatched.
+   */
+  static boolean onMessage(FlipperObject message) {
+    if (!SUBSCRIBE_METHOD.equals(message.getString("method"))) {
+      return false;
+    }
+    final Object params = message.get("params");
+    final String plugin =
+        params instanceof FlipperObject ? ((FlipperObject) params).getString("plugin") : null;
+    if (plugin == null) {
+      Log.w("flipper", "Ignoring subscription without a plugin: " + message.toJsonString());
+      return true;
+    }
+    final Object filters = ((FlipperObject) params).get("filters");
+    if (filters instanceof FlipperArray) {
+      sFilters.put(plugin, parse((FlipperArray) filters));
+    } else {
+      sFilters.remove(plugin);
+    }
+    return true;
+  }
+
+  static boolean isSubscribed(
+      String plugin, String method, @Nullable Map<String, String> attributes) {
+    final Map<String, List<Filter>> filtersByMethod = sFilters.get(plugin);
+    if (filtersByMethod == null) {
+      return true;
+    }
+    List<Filter> filters = filtersByMethod.get(method);
+    if (filters == null) {
+      filters = filtersByMethod.get(ANY_METHOD);
+      if (filters == null) {
+        return false;
+      }
+    }
+    for (Filter filter : filters) {
+      if (filter.matches(attributes)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Forgets all filters, for the next desktop to push its own. */
+  static void clear() {
+    sFilters.clear();
+  }
+
+  private static Map<String, List<Filter>> parse(FlipperArray array) {
+    final Map<String, List<Filter>> filtersByMethod = new HashMap<>();
+    for (int i = 0; i < array.length(); i++) {
+      final Object element = array.get(i);
+      if (!(element instanceof FlipperObject)) {
+        continue;
+      }
+      final FlipperObject filter = (FlipperObject) element;
+      String method = filter.getString("method");
+      if (method == null) {
+        method = ANY_METHOD;
+      }
+      List<Filter> filters = filtersByMethod.get(method);
+      if (filters == null) {
+        filters = new ArrayList<>();
+        filtersByMethod.put(method, filters);
+      }
+      filters.add(new Filter(parseConditions(filter, "equals"), parseConditions(filter, "prefix")));
+    }
+    return filtersByMethod;
+  }
+
+  private static Map<String, String> parseConditions(FlipperObject filter, String name) {
+    final Object conditions = filter.get(name);
+    if (!(conditions instanceof FlipperObject)) {
+      return Collections.emptyMap();
+    }
+    final FlipperObject object = (FlipperObject) conditions;
+    final Map<String, String> parsed = new HashMap<>();
+    final Iterator<String> keys = object.keys();
+    while (keys.hasNext()) {
+      final String key = keys.next();
+      final String value = object.getString(key);
+      if (value != null) {
+        parsed.put(key, value);
+      }
+    }
+    return parsed;
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import com.facebook.flipper.core.FlipperMethodStats;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Per plugin and method traffic of the client, kept for the lifetime of the process. */
+final class TrafficMetrics {
+
+  private static final ConcurrentHashMap<String, FlipperMethodStats> sStats =
+      new ConcurrentHashMap<>();
+
+  private TrafficMetrics() {}
+
+  static FlipperMethodStats get(String pluginId, String method) {
+    final String key = pluginId + '#' + method;
+    FlipperMethodStats stats = sStats.get(key);
+    if (stats == null) {
+      stats = new FlipperMethodStats(pluginId, method);
+      final FlipperMethodStats existing = sStats.putIfAbsent(key, stats);
+      if (existing != null) {
+        stats = existing;
+      }
+    }
+    return stats;
+  }
+
+  static List<FlipperMethodStats> snapshot() {
+    final List<FlipperMethodStats> snapshot = new ArrayList<>(sStats.size());
+    for (FlipperMethodStats stats : sStats.values()) {
+      snapshot.add(stats.copy());
+    }
+    return snapshot;
+  }
+}
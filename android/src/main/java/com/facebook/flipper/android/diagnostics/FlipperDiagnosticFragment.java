@@ -23,13 +23,24 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import com.facebook.flipper.android.AndroidFlipperClient;
 import com.facebook.flipper.core.FlipperClient;
+import com.facebook.flipper.core.FlipperConnectionStats;
+import com.facebook.flipper.core.FlipperHistogram;
+import com.facebook.flipper.core.FlipperMethodStats;
 import com.facebook.flipper.core.FlipperStateUpdateListener;
 import com.facebook.flipper.core.StateSummary;
 import com.facebook.flipper.core.StateSummary.StateElement;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
 
 public class FlipperDiagnosticFragment extends Fragment implements FlipperStateUpdateListener {
 
+  private static final int TRAFFIC_REFRESH_INTERVAL_MS = 1000;
+  private static final int MAX_TRAFFIC_ENTRIES = 20;
+
   TextView mSummaryView;
+  TextView mTrafficView;
   TextView mLogView;
   ScrollView mScrollView;
   Button mReportButton;
@@ -46,6 +57,15 @@ public class FlipperDiagnosticFragment extends Fragment implements FlipperStateU
         }
       };
 
+  private final Runnable mRefreshTraffic =
+      new Runnable() {
+        @Override
+        public void run() {
+          mTrafficView.setText(getTrafficSummary());
+          mTrafficView.postDelayed(this, TRAFFIC_REFRESH_INTERVAL_MS);
+        }
+      };
+
   public static FlipperDiagnosticFragment newInstance() {
     return new FlipperDiagnosticFragment();
   }
@@ -67,6 +87,7 @@ public class FlipperDiagnosticFragment extends Fragment implements FlipperStateU
       mReportButton.setOnClickListener(mOnBugReportClickListener);
     }
     mSummaryView = new TextView(getContext());
+    mTrafficView = new TextView(getContext());
     mLogView = new TextView(getContext());
     mScrollView = new ScrollView(getContext());
     mScrollView.addView(mLogView);
@@ -74,6 +95,7 @@ public class FlipperDiagnosticFragment extends Fragment implements FlipperStateU
       root.addView(mReportButton);
     }
     root.addView(mSummaryView);
+    root.addView(mTrafficView);
     root.addView(mScrollView);
     return root;
   }
@@ -86,6 +108,7 @@ public class FlipperDiagnosticFragment extends Fragment implements FlipperStateU
 
     mSummaryView.setText(getSummary());
     mLogView.setText(client.getState());
+    mRefreshTraffic.run();
   }
 
   @Override
@@ -141,9 +164,97 @@ public class FlipperDiagnosticFragment extends Fragment implements FlipperStateU
     return stateText.toString();
   }
 
+  /**
+   * The quality of the connection, then plugin methods with the most traffic, with their
+   * serialization and receiver latencies.
+   */
+  CharSequence getTrafficSummary() {
+    final FlipperClient client = AndroidFlipperClient.getInstance(getContext());
+    final List<FlipperMethodStats> stats = client.getMethodStats();
+    Collections.sort(
+        stats,
+        new Comparator<FlipperMethodStats>() {
+          @Override
+          public int compare(FlipperMethodStats a, FlipperMethodStats b) {
+            final long aBytes = a.getBytesSent() + a.getBytesReceived();
+            final long bBytes = b.getBytesSent() + b.getBytesReceived();
+            return aBytes == bBytes ? 0 : (aBytes > bBytes ? -1 : 1);
+          }
+        });
+
+    final StringBuilder text = new StringBuilder(256);
+    final FlipperConnectionStats connection = client.getConnectionStats();
+    if (connection.isConnected()) {
+      text.append(
+          String.format(
+              Locale.US,
+              "link rtt %.1f ms (p99 %.1f ms), %.1f KB/s (capacity %.1f KB/s), buffered %.1f KB\n",
+              connection.getSmoothedRoundTripNanos() / 1e6,
+              connection.getRoundTripTimes().getValueAtPercentile(99) / 1e6,
+              connection.getSendRate() / 1024.0,
+              connection.getThroughput() / 1024.0,
+              connection.getBufferedBytes() / 1024.0));
+    }
+    for (int i = 0; i < stats.size() && i < MAX_TRAFFIC_ENTRIES; i++) {
+      final FlipperMethodStats method = stats.get(i);
+      text.append(method.getPluginId()).append('.').append(method.getMethod()).append('\n');
+      if (method.getMessagesSent() > 0) {
+        appendTraffic(
+            text,
+            "sent",
+            method.getMessagesSent(),
+            method.getBytesSent(),
+            "serialize",
+            method.getSerializationTimes());
+      }
+      if (method.getMessagesReceived() > 0) {
+        appendTraffic(
+            text,
+            "received",
+            method.getMessagesReceived(),
+            method.getBytesReceived(),
+            "receiver",
+            method.getReceiverTimes());
+      }
+      final FlipperHistogram queueTimes = method.getQueueTimes();
+      if (queueTimes.getCount() > 0 || method.getCallsRejected() > 0) {
+        text.append(
+            String.format(
+                Locale.US,
+                "  queued %d (peak %d, rejected %d), wait p50 %.2f ms / p99 %.2f ms\n",
+                method.getQueueDepth(),
+                method.getPeakQueueDepth(),
+                method.getCallsRejected(),
+                queueTimes.getValueAtPercentile(50) / 1e6,
+                queueTimes.getValueAtPercentile(99) / 1e6));
+      }
+    }
+    return text.toString();
+  }
+
+  private static void appendTraffic(
+      StringBuilder text,
+      String direction,
+      long messages,
+      long bytes,
+      String timing,
+      FlipperHistogram times) {
+    text.append(
+        String.format(
+            Locale.US,
+            "  %s %d (%.1f KB), %s p50 %.2f ms / p99 %.2f ms\n",
+            direction,
+            messages,
+            bytes / 1024.0,
+            timing,
+            times.getValueAtPercentile(50) / 1e6,
+            times.getValueAtPercentile(99) / 1e6));
+  }
+
   @Override
   public void onStop() {
     super.onStop();
+    mTrafficView.removeCallbacks(mRefreshTraffic);
     final FlipperClient client = AndroidFlipperClient.getInstance(getContext());
     client.unsubscribe();
   }
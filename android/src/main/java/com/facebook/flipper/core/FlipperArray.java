@@ -15,59 +15,181 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 public class FlipperArray {
-  final JSONArray mJson;
+  private volatile @Nullable JSONArray mJson;
+  private volatile @Nullable JsonIndex mIndex;
+  private final int mToken;
+  private final @Nullable String mEncoded;
+  private @Nullable int[] mElements;
 
   public FlipperArray(JSONArray json) {
     mJson = (json != null ? json : new JSONArray());
+    mIndex = null;
+    mToken = 0;
+    mEncoded = null;
   }
 
+  /**
+   * Parses the given JSON text. Well-formed input is only indexed here and individual elements are
+   * decoded when they are first read; anything the index cannot handle is parsed eagerly by
+   * org.json instead.
+   */
   public FlipperArray(String json) {
-    try {
-      mJson = new JSONArray(json);
-    } catch (JSONException e) {
-      throw new RuntimeException(e);
+    mIndex = JsonIndex.parse(json, JsonIndex.ARRAY);
+    mToken = 0;
+    mEncoded = null;
+    if (mIndex == null) {
+      try {
+        mJson = new JSONArray(json);
+      } catch (JSONException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  FlipperArray(JsonIndex index, int token) {
+    this(index, token, null);
+  }
+
+  private FlipperArray(@Nullable JsonIndex index, int token, @Nullable String encoded) {
+    mIndex = index;
+    mToken = token;
+    mEncoded = encoded;
+  }
+
+  /** Wraps JSON text produced by a {@link StreamingBuilder}, which is sent without re-encoding. */
+  private static FlipperArray fromEncoded(String encoded) {
+    return new FlipperArray(null, 0, encoded);
+  }
+
+  private JsonIndex index() {
+    JsonIndex index = mIndex;
+    if (index == null) {
+      index = JsonIndex.parse(mEncoded, JsonIndex.ARRAY);
+      mIndex = index;
+    }
+    return index;
+  }
+
+  /** Returns the backing org.json array, materializing it from the index if needed. */
+  JSONArray json() {
+    JSONArray json = mJson;
+    if (json == null) {
+      try {
+        json = new JSONArray(mEncoded != null ? mEncoded : mIndex.text(mToken));
+      } catch (JSONException e) {
+        throw new RuntimeException(e);
+      }
+      mJson = json;
+    }
+    return json;
+  }
+
+  private boolean isLazy() {
+    return mJson == null;
+  }
+
+  /** See {@link FlipperObject}: containers are returned as lazy views over the same index. */
+  private @Nullable Object optLazy(int position) {
+    final JsonIndex index = index();
+    int[] elements = mElements;
+    if (elements == null) {
+      elements = index.elements(mToken);
+      mElements = elements;
+    }
+    if (position < 0 || position >= elements.length) {
+      return null;
+    }
+    final int token = elements[position];
+    switch (index.kind(token)) {
+      case JsonIndex.OBJECT:
+        return new FlipperObject(index, token);
+      case JsonIndex.ARRAY:
+        return new FlipperArray(index, token);
+      default:
+        return index.decodeScalar(token);
     }
   }
 
   public FlipperDynamic getDynamic(int index) {
+    if (isLazy()) {
+      final Object o = optLazy(index);
+      if (o instanceof FlipperObject) {
+        return new FlipperDynamic(((FlipperObject) o).json());
+      } else if (o instanceof FlipperArray) {
+        return new FlipperDynamic(((FlipperArray) o).json());
+      }
+      return new FlipperDynamic(o);
+    }
     return new FlipperDynamic(mJson.opt(index));
   }
 
   public String getString(int index) {
+    if (isLazy()) {
+      return JsonCoercion.toString(optLazy(index));
+    }
     return mJson.optString(index);
   }
 
   public int getInt(int index) {
+    if (isLazy()) {
+      return JsonCoercion.toInt(optLazy(index));
+    }
     return mJson.optInt(index);
   }
 
   public long getLong(int index) {
+    if (isLazy()) {
+      return JsonCoercion.toLong(optLazy(index));
+    }
     return mJson.optLong(index);
   }
 
   public float getFloat(int index) {
-    return (float) mJson.optDouble(index);
+    return (float) getDouble(index);
   }
 
   public double getDouble(int index) {
+    if (isLazy()) {
+      return JsonCoercion.toDouble(optLazy(index));
+    }
     return mJson.optDouble(index);
   }
 
   public boolean getBoolean(int index) {
+    if (isLazy()) {
+      return JsonCoercion.toBoolean(optLazy(index));
+    }
     return mJson.optBoolean(index);
   }
 
   public FlipperObject getObject(int index) {
+    if (isLazy()) {
+      final Object o = optLazy(index);
+      if (o instanceof FlipperObject) {
+        return (FlipperObject) o;
+      }
+      return new FlipperObject((JSONObject) o);
+    }
     final Object o = mJson.opt(index);
     return new FlipperObject((JSONObject) o);
   }
 
   public FlipperArray getArray(int index) {
+    if (isLazy()) {
+      final Object o = optLazy(index);
+      if (o instanceof FlipperArray) {
+        return (FlipperArray) o;
+      }
+      return new FlipperArray((JSONArray) o);
+    }
     final Object o = mJson.opt(index);
     return new FlipperArray((JSONArray) o);
   }
 
   public Object get(int index) {
+    if (isLazy()) {
+      return optLazy(index);
+    }
     final Object o = mJson.opt(index);
 
     if (o instanceof JSONObject) {
@@ -80,6 +202,9 @@ public class FlipperArray {
   }
 
   public int length() {
+    if (isLazy()) {
+      return index().count(mToken);
+    }
     return mJson.length();
   }
 
@@ -98,7 +223,7 @@ public class FlipperArray {
 
   @Override
   public String toString() {
-    return mJson.toString();
+    return mEncoded != null ? mEncoded : json().toString();
   }
 
   @Override
@@ -106,13 +231,13 @@ public class FlipperArray {
     if (o == null) {
       return false;
     } else {
-      return mJson.toString().equals(o.toString());
+      return toString().equals(o.toString());
     }
   }
 
   @Override
   public int hashCode() {
-    return mJson.hashCode();
+    return json().hashCode();
   }
 
   public static class Builder {
@@ -157,7 +282,7 @@ public class FlipperArray {
     }
 
     public Builder put(FlipperArray a) {
-      mJson.put(a == null ? null : a.mJson);
+      mJson.put(a == null ? null : a.json());
       return this;
     }
 
@@ -166,7 +291,7 @@ public class FlipperArray {
     }
 
     public Builder put(FlipperObject o) {
-      mJson.put(o == null ? null : o.mJson);
+      mJson.put(o == null ? null : o.json());
       return this;
     }
 
@@ -178,4 +303,129 @@ public class FlipperArray {
       return new FlipperArray(mJson);
     }
   }
+
+  /**
+   * A builder which encodes values straight into a pooled buffer instead of building a
+   * JSONArray, and has primitive overloads which do not box. Use it for payloads which are
+   * only sent and not read back. Unlike {@link Builder}, null and NaN values are written as JSON
+   * null. A builder can only be built once.
+   */
+  public static class StreamingBuilder {
+    private @Nullable StringBuilder mOut;
+    private boolean mEmpty = true;
+
+    public StreamingBuilder() {
+      mOut = JsonStringWriter.acquire();
+      mOut.append('[');
+    }
+
+    private StringBuilder next() {
+      final StringBuilder out = mOut;
+      if (out == null) {
+        throw new IllegalStateException("StreamingBuilder has already been built");
+      }
+      if (!mEmpty) {
+        out.append(',');
+      }
+      mEmpty = false;
+      return out;
+    }
+
+    public StreamingBuilder put(int i) {
+      next().append(i);
+      return this;
+    }
+
+    public StreamingBuilder put(long l) {
+      next().append(l);
+      return this;
+    }
+
+    public StreamingBuilder put(float f) {
+      if (Float.isNaN(f)) {
+        next().append("null");
+      } else {
+        JsonStringWriter.writeFloat(next(), f);
+      }
+      return this;
+    }
+
+    public StreamingBuilder put(double d) {
+      if (Double.isNaN(d)) {
+        next().append("null");
+      } else {
+        JsonStringWriter.writeDouble(next(), d);
+      }
+      return this;
+    }
+
+    public StreamingBuilder put(boolean b) {
+      next().append(b);
+      return this;
+    }
+
+    public StreamingBuilder put(@Nullable String s) {
+      if (s == null) {
+        next().append("null");
+      } else {
+        JsonStringWriter.writeString(next(), s);
+      }
+      return this;
+    }
+
+    public StreamingBuilder put(@Nullable FlipperObject o) {
+      if (o == null) {
+        next().append("null");
+      } else {
+        next().append(o.toJsonString());
+      }
+      return this;
+    }
+
+    public StreamingBuilder put(@Nullable FlipperArray a) {
+      if (a == null) {
+        next().append("null");
+      } else {
+        next().append(a.toJsonString());
+      }
+      return this;
+    }
+
+    public StreamingBuilder put(FlipperValue v) {
+      return put(v.toFlipperObject());
+    }
+
+    /** Appends the nested builder's output without an intermediate String. Builds {@code b}. */
+    public StreamingBuilder put(StreamingBuilder b) {
+      b.finishInto(next());
+      return this;
+    }
+
+    public StreamingBuilder put(FlipperObject.StreamingBuilder b) {
+      b.finishInto(next());
+      return this;
+    }
+
+    private StringBuilder finish() {
+      final StringBuilder out = mOut;
+      if (out == null) {
+        throw new IllegalStateException("StreamingBuilder has already been built");
+      }
+      mOut = null;
+      return out.append(']');
+    }
+
+    void finishInto(StringBuilder target) {
+      final StringBuilder out = finish();
+      target.append(out);
+      JsonStringWriter.release(out);
+    }
+
+    public FlipperArray build() {
+      final StringBuilder out = finish();
+      final String encoded = out.toString();
+      JsonStringWriter.release(out);
+      return fromEncoded(encoded);
+    }
+  }
 }
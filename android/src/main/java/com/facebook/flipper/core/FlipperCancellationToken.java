@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tells a receiver that the desktop is no longer waiting for its response, for example because the
+ * user navigated away. Long running receivers should poll {@link #isCancelled()} or register a
+ * listener and stop early. Responses to cancelled requests are dropped.
+ */
+public final class FlipperCancellationToken {
+
+  public interface OnCancelListener {
+    /** Called on the thread cancelling the request, so it should return quickly. */
+    void onCancel();
+  }
+
+  /** A token that is never cancelled, for requests that cannot be cancelled. */
+  public static final FlipperCancellationToken NONE = new FlipperCancellationToken();
+
+  private boolean mCancelled = false;
+  private List<OnCancelListener> mListeners;
+
+  public synchronized boolean isCancelled() {
+    return mCancelled;
+  }
+
+  /** Calls the listener when the request is cancelled, or right away if it already was. */
+  public void addOnCancelListener(OnCancelListener listener) {
+    synchronized (this) {
+      if (!mCancelled) {
+        if (mListeners == null) {
+          mListeners = new ArrayList<>(1);
+        }
+        mListeners.add(listener);
+        return;
+      }
+    }
+    listener.onCancel();
+  }
+
+  public synchronized void removeOnCancelListener(OnCancelListener listener) {
+    if (mListeners != null) {
+      mListeners.remove(listener);
+    }
+  }
+
+  /** Cancels the request. Has no effect on {@link #NONE} or if already cancelled. */
+  public void cancel() {
+    final List<OnCancelListener> listeners;
+    synchronized (this) {
+      if (this == NONE || mCancelled) {
+        return;
+      }
+      mCancelled = true;
+      listeners = mListeners;
+      mListeners = null;
+    }
+    if (listeners != null) {
+      for (OnCancelListener listener : listeners) {
+        listener.onCancel();
+      }
+    }
+  }
+}
@@ -7,11 +7,22 @@
 
 package com.facebook.flipper.core;
 
+import java.util.List;
 import javax.annotation.Nullable;
 
 public interface FlipperClient {
   void addPlugin(FlipperPlugin plugin);
 
+  /**
+   * Registers a plugin without creating it. The desktop is told about the plugin right away, but
+   * the factory is only called when the desktop first activates it, or when it is looked up with
+   * {@link #getPlugin} or {@link #getPluginByClass}. Use this for plugins that are costly to set up
+   * and not always used. The plugin's class is declared along with its id, for it to be looked up
+   * by class without creating every other plugin.
+   */
+  <T extends FlipperPlugin> void addPluginFactory(
+      String id, Class<T> pluginClass, boolean runInBackground, FlipperPluginFactory<T> factory);
+
   @Nullable
   <T extends FlipperPlugin> T getPlugin(String id);
 
@@ -33,4 +44,16 @@ public interface FlipperClient {
   String getState();
 
   StateSummary getStateSummary();
+
+  /**
+   * Returns a snapshot of the traffic of every plugin method used so far: message counts and sizes
+   * in both directions, and histograms of serialization and receiver times.
+   */
+  List<FlipperMethodStats> getMethodStats();
+
+  /**
+   * Returns the quality of the link to the desktop as last measured: round trip times, send
+   * throughput and bytes waiting to be sent.
+   */
+  FlipperConnectionStats getConnectionStats();
 }
@@ -7,6 +7,10 @@
 
 package com.facebook.flipper.core;
 
+import android.util.Base64;
+import java.util.Map;
+import javax.annotation.Nullable;
+
 /**
  * A connection between a FlipperPlugin and the desktop Flipper application. Register request
  * handlers to respond to calls made by the desktop application or directly send messages to the
@@ -32,6 +36,75 @@ public interface FlipperConnection {
    */
   void send(String method, String message);
 
+  /**
+   * Call a remote method on the Flipper desktop application without ever blocking or growing the
+   * client's memory use unboundedly. If the connection is backed up, the message waits in this
+   * plugin's send queue, bounded as configured by {@link #setSendQueuePolicy}. Returns whether the
+   * message was accepted; it is refused if the queue is full and its policy drops new messages.
+   *
+   * <p>With {@link FlipperSendQueuePolicy.Overflow#COALESCE_BY_KEY}, a waiting message for the same
+   * method is replaced by this one.
+   */
+  default boolean trySend(String method, FlipperObject params) {
+    send(method, params);
+    return true;
+  }
+
+  /**
+   * Like {@link #trySend(String, FlipperObject)}, but with {@link
+   * FlipperSendQueuePolicy.Overflow#COALESCE_BY_KEY} only replaces a waiting message for the same
+   * method that was sent with the same coalescing key.
+   */
+  default boolean trySend(String method, FlipperObject params, String coalescingKey) {
+    send(method, params);
+    return true;
+  }
+
+  /**
+   * Whether the desktop application displays messages for the given method. Plugins can check it to
+   * skip building messages nobody will look at. Everything is subscribed unless the desktop says
+   * otherwise.
+   */
+  default boolean isSubscribed(String method) {
+    return isSubscribed(method, null);
+  }
+
+  /**
+   * Like {@link #isSubscribed(String)}, for a message with the given attributes, such as the URL of
+   * a request, which the desktop may filter on.
+   */
+  default boolean isSubscribed(String method, @Nullable Map<String, String> attributes) {
+    return true;
+  }
+
+  /**
+   * Set the bounds of this plugin's send queue, which holds messages while the connection is backed
+   * up. Messages passed to {@link #send} count against them but are never dropped: only those
+   * passed to {@link #trySend} are dropped or replaced to stay within them.
+   */
+  default void setSendQueuePolicy(FlipperSendQueuePolicy policy) {}
+
+  /**
+   * Send any messages held back for batching right away, rather than at the end of the batching
+   * window. Use after sends the desktop is waiting on.
+   */
+  default void flush() {}
+
+  /**
+   * Attach a binary payload to a message or response sent on this connection afterwards. Returns
+   * the string to put in that message's params in place of the payload.
+   *
+   * <p>If the desktop application accepts binary attachments, the payload is sent right away as a
+   * raw binary frame, ahead of anything sent after this call, and the returned string is a short
+   * reference to it, which the desktop resolves when the message arrives. Otherwise the payload is
+   * returned base64 encoded, so callers do not need to care which one the desktop supports. The
+   * reference is only valid for this connection, so messages kept to be sent later, possibly on
+   * another one, must not contain it.
+   */
+  default String attachBlob(byte[] blob) {
+    return Base64.encodeToString(blob, Base64.DEFAULT);
+  }
+
   /** Report client error with reason and stacktrace as an argument */
   void reportErrorWithMetadata(String reason, String stackTrace);
 
@@ -43,4 +116,13 @@ public interface FlipperConnection {
    * FlipperReceiver is passed a responder to respond back to the desktop application.
    */
   void receive(String method, FlipperReceiver receiver);
+
+  /**
+   * Register a receiver for a remote method call issued by the Flipper desktop application, to be
+   * run as the given policy says rather than on Flipper's callback thread. Receivers doing I/O or
+   * heavy work should use a background policy, so they do not hold up calls to other plugins.
+   */
+  default void receive(String method, FlipperReceiver receiver, FlipperExecutionPolicy policy) {
+    receive(method, receiver);
+  }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+/**
+ * Quality of the link to the desktop, as last measured by the client: round trip times of pings,
+ * how fast sent data leaves the device, and how much is waiting to be written. Sizes are in bytes
+ * on the wire, after compression, times in nanoseconds.
+ *
+ * <p>Plugins sending a lot of data can use this to adapt their rate to the link: when bytes keep
+ * piling up in the buffer, the link, not the device, is the bottleneck.
+ */
+public final class FlipperConnectionStats {
+
+  public static final FlipperConnectionStats DISCONNECTED =
+      new FlipperConnectionStats(false, 0, 0, new FlipperHistogram(), 0, 0, 0, 0, 0);
+
+  private final boolean mConnected;
+  private final long mRoundTripNanos;
+  private final long mSmoothedRoundTripNanos;
+  private final FlipperHistogram mRoundTripTimes;
+  private final long mBytesSent;
+  private final long mSendRate;
+  private final long mThroughput;
+  private final long mBufferedBytes;
+  private final long mPeakBufferedBytes;
+
+  public FlipperConnectionStats(
+      boolean connected,
+      long roundTripNanos,
+      long smoothedRoundTripNanos,
+      FlipperHistogram roundTripTimes,
+      long bytesSent,
+      long sendRate,
+      long throughput,
+      long bufferedBytes,
+      long peakBufferedBytes) {
+    mConnected = connected;
+    mRoundTripNanos = roundTripNanos;
+    mSmoothedRoundTripNanos = smoothedRoundTripNanos;
+    mRoundTripTimes = roundTripTimes;
+    mBytesSent = bytesSent;
+    mSendRate = sendRate;
+    mThroughput = throughput;
+    mBufferedBytes = bufferedBytes;
+    mPeakBufferedBytes = peakBufferedBytes;
+  }
+
+  public boolean isConnected() {
+    return mConnected;
+  }
+
+  /**
+   * Round trip time of the last ping, or 0 if none was answered yet. Pings queue behind data
+   * waiting to be sent, so this grows as the buffer fills up.
+   */
+  public long getRoundTripNanos() {
+    return mRoundTripNanos;
+  }
+
+  /** Round trip time averaged over recent pings, less sensitive to a single slow one. */
+  public long getSmoothedRoundTripNanos() {
+    return mSmoothedRoundTripNanos;
+  }
+
+  /** Round trip times of all pings of the connection. */
+  public FlipperHistogram getRoundTripTimes() {
+    return mRoundTripTimes;
+  }
+
+  /** Bytes written to the socket since the connection opened. */
+  public long getBytesSent() {
+    return mBytesSent;
+  }
+
+  /** Bytes per second written to the socket recently, whether or not the link was busy. */
+  public long getSendRate() {
+    return mSendRate;
+  }
+
+  /**
+   * Bytes per second the link sustains, measured while data was waiting to be sent, or 0 if it
+   * never had to be.
+   */
+  public long getThroughput() {
+    return mThroughput;
+  }
+
+  /** Bytes waiting to be written to the socket. */
+  public long getBufferedBytes() {
+    return mBufferedBytes;
+  }
+
+  public long getPeakBufferedBytes() {
+    return mPeakBufferedBytes;
+  }
+}
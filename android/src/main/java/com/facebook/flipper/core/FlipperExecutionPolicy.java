@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+import javax.annotation.Nullable;
+
+/**
+ * Where a {@link FlipperReceiver} registered through {@link FlipperConnection#receive(String,
+ * FlipperReceiver, FlipperExecutionPolicy)} runs.
+ */
+public final class FlipperExecutionPolicy {
+
+  public enum Type {
+    CALLBACK_THREAD,
+    MAIN_THREAD,
+    BACKGROUND,
+    SERIAL,
+  }
+
+  /**
+   * On Flipper's callback thread, which is shared by all plugins, so a slow receiver delays every
+   * other one. This is what {@link FlipperConnection#receive(String, FlipperReceiver)} does.
+   */
+  public static final FlipperExecutionPolicy CALLBACK_THREAD =
+      new FlipperExecutionPolicy(Type.CALLBACK_THREAD, null);
+
+  /** On the main thread, for receivers that touch views. */
+  public static final FlipperExecutionPolicy MAIN_THREAD =
+      new FlipperExecutionPolicy(Type.MAIN_THREAD, null);
+
+  /** On a shared, bounded pool of background threads, with no ordering between calls. */
+  public static final FlipperExecutionPolicy BACKGROUND =
+      new FlipperExecutionPolicy(Type.BACKGROUND, null);
+
+  /**
+   * On the background pool, one call at a time and in the order they arrived, for calls to the same
+   * method of the same plugin.
+   */
+  public static final FlipperExecutionPolicy SERIAL = new FlipperExecutionPolicy(Type.SERIAL, null);
+
+  private final Type mType;
+  private final @Nullable String mSerialKey;
+
+  private FlipperExecutionPolicy(Type type, @Nullable String serialKey) {
+    mType = type;
+    mSerialKey = serialKey;
+  }
+
+  /**
+   * On the background pool, one call at a time and in the order they arrived, for all receivers of
+   * the plugin registered with the same key. For example, all methods reading the same database.
+   */
+  public static FlipperExecutionPolicy serial(String key) {
+    return new FlipperExecutionPolicy(Type.SERIAL, key);
+  }
+
+  public Type getType() {
+    return mType;
+  }
+
+  /** The key calls are ordered by, or null to order them by plugin and method. */
+  @Nullable
+  public String getSerialKey() {
+    return mSerialKey;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+/**
+ * A fixed-size histogram of non-negative values in the style of HdrHistogram: buckets are
+ * logarithmic, each split in {@link #SUB_BUCKETS} linear sub-buckets, so recorded values are kept
+ * with a relative precision of about 12% whatever their magnitude. Values up to 2^41 (about 36
+ * minutes in nanoseconds) are tracked, larger ones count towards the last bucket.
+ */
+public final class FlipperHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 40;
+  private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+  private final int[] mCounts = new int[BUCKETS];
+  private long mCount = 0;
+  private long mSum = 0;
+  private long mMin = Long.MAX_VALUE;
+  private long mMax = 0;
+
+  public synchronized void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    mCounts[indexOf(value)]++;
+    mCount++;
+    mSum += value;
+    mMin = Math.min(mMin, value);
+    mMax = Math.max(mMax, value);
+  }
+
+  public synchronized long getCount() {
+    return mCount;
+  }
+
+  public synchronized long getMin() {
+    return mCount == 0 ? 0 : mMin;
+  }
+
+  public synchronized long getMax() {
+    return mMax;
+  }
+
+  public synchronized double getMean() {
+    return mCount == 0 ? 0 : (double) mSum / mCount;
+  }
+
+  /** Returns an estimate of the value below which the given percentage (0-100) of values fall. */
+  public synchronized long getValueAtPercentile(double percentile) {
+    if (mCount == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * mCount));
+    if (rank >= mCount) {
+      return mMax;
+    }
+    long seen = 0;
+    for (int i = 0; i < BUCKETS - 1; i++) {
+      seen += mCounts[i];
+      if (seen >= rank) {
+        return Math.max(mMin, Math.min(mMax, midpointOf(i)));
+      }
+    }
+    return mMax;
+  }
+
+  public synchronized FlipperHistogram copy() {
+    final FlipperHistogram copy = new FlipperHistogram();
+    System.arraycopy(mCounts, 0, copy.mCounts, 0, BUCKETS);
+    copy.mCount = mCount;
+    copy.mSum = mSum;
+    copy.mMin = mMin;
+    copy.mMax = mMax;
+    return copy;
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    final int subBucket = (int) (value >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long midpointOf(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    final int shift = index / SUB_BUCKETS - 1;
+    final long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    return lowerBound + ((1L << shift) >> 1);
+  }
+}
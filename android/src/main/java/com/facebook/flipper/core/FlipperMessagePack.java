@@ -0,0 +1,410 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+import android.util.Base64;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * MessagePack (https://github.com/msgpack/msgpack/blob/master/spec.md) encoding of Flipper
+ * messages, used as an alternative to JSON text on the wire when the desktop supports it.
+ *
+ * <p>Encoding walks the {@link JsonIndex} of a message, so JSON text is transcoded in a single pass
+ * without building an intermediate tree. Decoding produces JSON text with the same escaping as
+ * org.json.
+ */
+public final class FlipperMessagePack {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int INITIAL_CAPACITY = 256;
+
+  private byte[] mBuffer;
+  private int mSize;
+
+  private FlipperMessagePack(int capacity) {
+    mBuffer = new byte[capacity];
+  }
+
+  /**
+   * Transcodes a JSON object or array to MessagePack.
+   *
+   * @throws IllegalArgumentException if the text is not strict JSON with an object or array root.
+   */
+  public static byte[] fromJson(String json) {
+    final JsonIndex index =
+        JsonIndex.parse(
+            json, json.trim().startsWith("[") ? JsonIndex.ARRAY : JsonIndex.OBJECT);
+    if (index == null) {
+      throw new IllegalArgumentException("Not a JSON object or array");
+    }
+    final FlipperMessagePack writer =
+        new FlipperMessagePack(Math.max(INITIAL_CAPACITY, json.length()));
+    writer.writeToken(index, 0);
+    final byte[] result = new byte[writer.mSize];
+    System.arraycopy(writer.mBuffer, 0, result, 0, writer.mSize);
+    return result;
+  }
+
+  /**
+   * Transcodes a MessagePack value to JSON text. The buffer is read from its position to its limit.
+   *
+   * @throws IllegalArgumentException if the buffer does not hold exactly one MessagePack value or
+   *     uses a type without a JSON equivalent.
+   */
+  public static String toJson(ByteBuffer buffer) {
+    final ByteBuffer input = buffer.duplicate();
+    final StringBuilder out = JsonStringWriter.acquire();
+    try {
+      readValue(input, out);
+      if (input.hasRemaining()) {
+        throw new IllegalArgumentException("Trailing bytes after MessagePack value");
+      }
+      return out.toString();
+    } catch (RuntimeException e) {
+      if (e instanceof IllegalArgumentException) {
+        throw e;
+      }
+      throw new IllegalArgumentException("Malformed MessagePack", e);
+    } finally {
+      JsonStringWriter.release(out);
+    }
+  }
+
+  private void writeToken(JsonIndex index, int token) {
+    switch (index.kind(token)) {
+      case JsonIndex.OBJECT:
+        {
+          final int count = index.count(token);
+          writeContainerHeader(count, 0x80, 0xde);
+          int key = JsonIndex.firstChild(token);
+          for (int i = 0; i < count; i++) {
+            writeString(index, key);
+            final int value = index.next(key);
+            writeToken(index, value);
+            key = index.next(value);
+          }
+          break;
+        }
+      case JsonIndex.ARRAY:
+        {
+          final int count = index.count(token);
+          writeContainerHeader(count, 0x90, 0xdc);
+          int element = JsonIndex.firstChild(token);
+          for (int i = 0; i < count; i++) {
+            writeToken(index, element);
+            element = index.next(element);
+          }
+          break;
+        }
+      case JsonIndex.STRING:
+      case JsonIndex.ESCAPED_STRING:
+        writeString(index, token);
+        break;
+      case JsonIndex.TRUE:
+        writeByte(0xc3);
+        break;
+      case JsonIndex.FALSE:
+        writeByte(0xc2);
+        break;
+      case JsonIndex.NULL:
+        writeByte(0xc0);
+        break;
+      default:
+        writeNumber(index.decodeScalar(token));
+        break;
+    }
+  }
+
+  private void writeContainerHeader(int count, int fixPrefix, int prefix16) {
+    if (count < 16) {
+      writeByte(fixPrefix | count);
+    } else if (count < 0x10000) {
+      writeByte(prefix16);
+      writeShort(count);
+    } else {
+      writeByte(prefix16 + 1);
+      writeInt(count);
+    }
+  }
+
+  private void writeNumber(Object number) {
+    if (number instanceof Double) {
+      writeByte(0xcb);
+      writeLong(Double.doubleToLongBits((Double) number));
+      return;
+    }
+    final long value = ((Number) number).longValue();
+    if (value >= 0 && value < 0x80) {
+      writeByte((int) value);
+    } else if (value < 0 && value >= -32) {
+      writeByte((int) value & 0xff);
+    } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+      writeByte(0xd2);
+      writeInt((int) value);
+    } else {
+      writeByte(0xd3);
+      writeLong(value);
+    }
+  }
+
+  /** Writes a string token as UTF-8 straight from the source, without creating a String. */
+  private void writeString(JsonIndex index, int token) {
+    if (index.kind(token) == JsonIndex.ESCAPED_STRING) {
+      writeUtf8(index.decodeString(token), 0, -1);
+      return;
+    }
+    writeUtf8(index.mSource, index.start(token) + 1, index.end(token) - 1);
+  }
+
+  private void writeUtf8(String source, int start, int end) {
+    if (end == -1) {
+      end = source.length();
+    }
+    int length = 0;
+    for (int i = start; i < end; i++) {
+      final char c = source.charAt(i);
+      if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < end
+          && Character.isLowSurrogate(source.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
+      }
+    }
+
+    if (length < 32) {
+      writeByte(0xa0 | length);
+    } else if (length < 0x100) {
+      writeByte(0xd9);
+      writeByte(length);
+    } else if (length < 0x10000) {
+      writeByte(0xda);
+      writeShort(length);
+    } else {
+      writeByte(0xdb);
+      writeInt(length);
+    }
+
+    ensureCapacity(length);
+    final byte[] buffer = mBuffer;
+    int pos = mSize;
+    for (int i = start; i < end; i++) {
+      final char c = source.charAt(i);
+      if (c < 0x80) {
+        buffer[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        buffer[pos++] = (byte) (0xc0 | (c >> 6));
+        buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < end
+          && Character.isLowSurrogate(source.charAt(i + 1))) {
+        final int codePoint = Character.toCodePoint(c, source.charAt(++i));
+        buffer[pos++] = (byte) (0xf0 | (codePoint >> 18));
+        buffer[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        buffer[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        buffer[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+      } else {
+        // Unpaired surrogates are encoded as-is rather than replaced with '?' like
+        // String.getBytes would.
+        buffer[pos++] = (byte) (0xe0 | (c >> 12));
+        buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    mSize = pos;
+  }
+
+  private void writeByte(int b) {
+    ensureCapacity(1);
+    mBuffer[mSize++] = (byte) b;
+  }
+
+  private void writeShort(int s) {
+    ensureCapacity(2);
+    mBuffer[mSize++] = (byte) (s >> 8);
+    mBuffer[mSize++] = (byte) s;
+  }
+
+  private void writeInt(int i) {
+    ensureCapacity(4);
+    mBuffer[mSize++] = (byte) (i >> 24);
+    mBuffer[mSize++] = (byte) (i >> 16);
+    mBuffer[mSize++] = (byte) (i >> 8);
+    mBuffer[mSize++] = (byte) i;
+  }
+
+  private void writeLong(long l) {
+    writeInt((int) (l >> 32));
+    writeInt((int) l);
+  }
+
+  private void ensureCapacity(int additional) {
+    if (mSize + additional > mBuffer.length) {
+      final byte[] grown = new byte[Math.max(mBuffer.length * 2, mSize + additional)];
+      System.arraycopy(mBuffer, 0, grown, 0, mSize);
+      mBuffer = grown;
+    }
+  }
+
+  private static void readValue(ByteBuffer in, StringBuilder out) {
+    final int b = in.get() & 0xff;
+    if (b <= 0x7f) {
+      out.append(b);
+    } else if (b <= 0x8f) {
+      readMap(in, out, b & 0x0f);
+    } else if (b <= 0x9f) {
+      readArray(in, out, b & 0x0f);
+    } else if (b <= 0xbf) {
+      readString(in, out, b & 0x1f);
+    } else if (b >= 0xe0) {
+      out.append((byte) b);
+    } else {
+      switch (b) {
+        case 0xc0:
+          out.append("null");
+          break;
+        case 0xc2:
+          out.append(false);
+          break;
+        case 0xc3:
+          out.append(true);
+          break;
+        case 0xc4:
+          readBinary(in, out, in.get() & 0xff);
+          break;
+        case 0xc5:
+          readBinary(in, out, in.getShort() & 0xffff);
+          break;
+        case 0xc6:
+          readBinary(in, out, in.getInt());
+          break;
+        case 0xca:
+          JsonStringWriter.writeDouble(out, in.getFloat());
+          break;
+        case 0xcb:
+          JsonStringWriter.writeDouble(out, in.getDouble());
+          break;
+        case 0xcc:
+          out.append(in.get() & 0xff);
+          break;
+        case 0xcd:
+          out.append(in.getShort() & 0xffff);
+          break;
+        case 0xce:
+          out.append(in.getInt() & 0xffffffffL);
+          break;
+        case 0xcf:
+          {
+            final long value = in.getLong();
+            if (value >= 0) {
+              out.append(value);
+            } else {
+              out.append(new BigInteger(1, ByteBuffer.allocate(8).putLong(value).array()));
+            }
+            break;
+          }
+        case 0xd0:
+          out.append(in.get());
+          break;
+        case 0xd1:
+          out.append(in.getShort());
+          break;
+        case 0xd2:
+          out.append(in.getInt());
+          break;
+        case 0xd3:
+          out.append(in.getLong());
+          break;
+        case 0xd9:
+          readString(in, out, in.get() & 0xff);
+          break;
+        case 0xda:
+          readString(in, out, in.getShort() & 0xffff);
+          break;
+        case 0xdb:
+          readString(in, out, in.getInt());
+          break;
+        case 0xdc:
+          readArray(in, out, in.getShort() & 0xffff);
+          break;
+        case 0xdd:
+          readArray(in, out, in.getInt());
+          break;
+        case 0xde:
+          readMap(in, out, in.getShort() & 0xffff);
+          break;
+        case 0xdf:
+          readMap(in, out, in.getInt());
+          break;
+        default:
+          throw new IllegalArgumentException(
+              "Unsupported MessagePack type: 0x" + Integer.toHexString(b));
+      }
+    }
+  }
+
+  private static void readMap(ByteBuffer in, StringBuilder out, int count) {
+    out.append('{');
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        out.append(',');
+      }
+      final int b = in.get() & 0xff;
+      if (b >= 0xa0 && b <= 0xbf) {
+        readString(in, out, b & 0x1f);
+      } else if (b == 0xd9) {
+        readString(in, out, in.get() & 0xff);
+      } else if (b == 0xda) {
+        readString(in, out, in.getShort() & 0xffff);
+      } else if (b == 0xdb) {
+        readString(in, out, in.getInt());
+      } else {
+        throw new IllegalArgumentException("MessagePack map keys must be strings");
+      }
+      out.append(':');
+      readValue(in, out);
+    }
+    out.append('}');
+  }
+
+  private static void readArray(ByteBuffer in, StringBuilder out, int count) {
+    out.append('[');
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        out.append(',');
+      }
+      readValue(in, out);
+    }
+    out.append(']');
+  }
+
+  private static void readString(ByteBuffer in, StringBuilder out, int length) {
+    JsonStringWriter.writeString(out, new String(readBytes(in, length), UTF_8));
+  }
+
+  /** JSON has no binary type, so bin values are surfaced as base64 strings. */
+  private static void readBinary(ByteBuffer in, StringBuilder out, int length) {
+    JsonStringWriter.writeString(out, Base64.encodeToString(readBytes(in, length), Base64.NO_WRAP));
+  }
+
+  private static byte[] readBytes(ByteBuffer in, int length) {
+    if (length < 0 || length > in.remaining()) {
+      throw new IllegalArgumentException("MessagePack length exceeds the message");
+    }
+    final byte[] bytes = new byte[length];
+    in.get(bytes);
+    return bytes;
+  }
+}
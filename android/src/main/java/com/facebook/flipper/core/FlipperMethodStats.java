@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+/**
+ * Traffic of a single plugin method: messages the plugin sent with it, and calls from the desktop
+ * handled by the receiver registered for it. Sizes are in characters of encoded JSON, times in
+ * nanoseconds. Calls to receivers registered with a background {@link FlipperExecutionPolicy} also
+ * record how many of them are waiting for a thread, and for how long.
+ */
+public final class FlipperMethodStats {
+
+  private final String mPluginId;
+  private final String mMethod;
+  private long mMessagesSent = 0;
+  private long mBytesSent = 0;
+  private long mMessagesReceived = 0;
+  private long mBytesReceived = 0;
+  private int mQueueDepth = 0;
+  private int mPeakQueueDepth = 0;
+  private long mCallsRejected = 0;
+  private final FlipperHistogram mSerializationTimes;
+  private final FlipperHistogram mReceiverTimes;
+  private final FlipperHistogram mQueueTimes;
+
+  public FlipperMethodStats(String pluginId, String method) {
+    this(pluginId, method, new FlipperHistogram(), new FlipperHistogram(), new FlipperHistogram());
+  }
+
+  private FlipperMethodStats(
+      String pluginId,
+      String method,
+      FlipperHistogram serializationTimes,
+      FlipperHistogram receiverTimes,
+      FlipperHistogram queueTimes) {
+    mPluginId = pluginId;
+    mMethod = method;
+    mSerializationTimes = serializationTimes;
+    mReceiverTimes = receiverTimes;
+    mQueueTimes = queueTimes;
+  }
+
+  public void recordSent(int bytes, long serializationNanos) {
+    synchronized (this) {
+      mMessagesSent++;
+      mBytesSent += bytes;
+    }
+    mSerializationTimes.record(serializationNanos);
+  }
+
+  public void recordReceived(int bytes, long receiverNanos) {
+    synchronized (this) {
+      mMessagesReceived++;
+      mBytesReceived += bytes;
+    }
+    mReceiverTimes.record(receiverNanos);
+  }
+
+  /** A call was queued to run on a background thread. */
+  public synchronized void recordQueued() {
+    mQueueDepth++;
+    mPeakQueueDepth = Math.max(mPeakQueueDepth, mQueueDepth);
+  }
+
+  /** A queued call started running after waiting for the given time. */
+  public void recordDequeued(long queueNanos) {
+    synchronized (this) {
+      mQueueDepth--;
+    }
+    mQueueTimes.record(queueNanos);
+  }
+
+  /** A call was refused because too many calls were already waiting. */
+  public synchronized void recordRejected() {
+    mCallsRejected++;
+  }
+
+  public String getPluginId() {
+    return mPluginId;
+  }
+
+  public String getMethod() {
+    return mMethod;
+  }
+
+  public synchronized long getMessagesSent() {
+    return mMessagesSent;
+  }
+
+  public synchronized long getBytesSent() {
+    return mBytesSent;
+  }
+
+  public synchronized long getMessagesReceived() {
+    return mMessagesReceived;
+  }
+
+  public synchronized long getBytesReceived() {
+    return mBytesReceived;
+  }
+
+  /** Calls currently waiting for a background thread. */
+  public synchronized int getQueueDepth() {
+    return mQueueDepth;
+  }
+
+  public synchronized int getPeakQueueDepth() {
+    return mPeakQueueDepth;
+  }
+
+  public synchronized long getCallsRejected() {
+    return mCallsRejected;
+  }
+
+  /** Time spent encoding the params of sent messages. */
+  public FlipperHistogram getSerializationTimes() {
+    return mSerializationTimes;
+  }
+
+  /** Time spent in the receiver handling calls from the desktop. */
+  public FlipperHistogram getReceiverTimes() {
+    return mReceiverTimes;
+  }
+
+  /** Time calls spent waiting for a background thread before their receiver ran. */
+  public FlipperHistogram getQueueTimes() {
+    return mQueueTimes;
+  }
+
+  /** Returns a snapshot that is not affected by later recordings. */
+  public synchronized FlipperMethodStats copy() {
+    final FlipperMethodStats copy =
+        new FlipperMethodStats(
+            mPluginId,
+            mMethod,
+            mSerializationTimes.copy(),
+            mReceiverTimes.copy(),
+            mQueueTimes.copy());
+    copy.mMessagesSent = mMessagesSent;
+    copy.mBytesSent = mBytesSent;
+    copy.mMessagesReceived = mMessagesReceived;
+    copy.mBytesReceived = mBytesReceived;
+    copy.mQueueDepth = mQueueDepth;
+    copy.mPeakQueueDepth = mPeakQueueDepth;
+    copy.mCallsRejected = mCallsRejected;
+    return copy;
+  }
+}
@@ -47,6 +47,14 @@ public class FlipperMultiPlugin implements FlipperPlugin {
     }
   }
 
+  @Override
+  public void onResume(FlipperConnection conn) throws Exception {
+    // Forward the resumed connection to each plugin.
+    for (FlipperPlugin plugin : plugins) {
+      plugin.onResume(conn);
+    }
+  }
+
   @Override
   public void onDisconnect() throws Exception {
     // Forward the disconnection to each plugin.
@@ -15,25 +15,119 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 public class FlipperObject {
-  final JSONObject mJson;
+  private volatile @Nullable JSONObject mJson;
+  private volatile @Nullable JsonIndex mIndex;
+  private final int mToken;
+  private final @Nullable String mEncoded;
 
   public FlipperObject(JSONObject json) {
     mJson = (json != null ? json : new JSONObject());
+    mIndex = null;
+    mToken = 0;
+    mEncoded = null;
   }
 
+  /**
+   * Parses the given JSON text. Well-formed input is only indexed here and individual values are
+   * decoded when they are first read; anything the index cannot handle is parsed eagerly by
+   * org.json instead.
+   */
   public FlipperObject(String json) {
-    try {
-      mJson = new JSONObject(json);
-    } catch (JSONException e) {
-      throw new RuntimeException(e);
+    mIndex = JsonIndex.parse(json, JsonIndex.OBJECT);
+    mToken = 0;
+    mEncoded = null;
+    if (mIndex == null) {
+      try {
+        mJson = new JSONObject(json);
+      } catch (JSONException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  FlipperObject(JsonIndex index, int token) {
+    this(index, token, null);
+  }
+
+  private FlipperObject(@Nullable JsonIndex index, int token, @Nullable String encoded) {
+    mIndex = index;
+    mToken = token;
+    mEncoded = encoded;
+  }
+
+  /** Wraps JSON text produced by a {@link StreamingBuilder}, which is sent without re-encoding. */
+  private static FlipperObject fromEncoded(String encoded) {
+    return new FlipperObject(null, 0, encoded);
+  }
+
+  private JsonIndex index() {
+    JsonIndex index = mIndex;
+    if (index == null) {
+      index = JsonIndex.parse(mEncoded, JsonIndex.OBJECT);
+      mIndex = index;
+    }
+    return index;
+  }
+
+  /** Returns the backing org.json object, materializing it from the index if needed. */
+  JSONObject json() {
+    JSONObject json = mJson;
+    if (json == null) {
+      try {
+        json = new JSONObject(mEncoded != null ? mEncoded : mIndex.text(mToken));
+      } catch (JSONException e) {
+        throw new RuntimeException(e);
+      }
+      mJson = json;
+    }
+    return json;
+  }
+
+  /**
+   * Looks up a value while it is still only indexed. Containers are returned as lazy {@link
+   * FlipperObject} and {@link FlipperArray} views, scalars as the values org.json would produce.
+   */
+  private @Nullable Object optLazy(String name) {
+    final JsonIndex index = index();
+    final int token = index.find(mToken, name);
+    if (token == -1) {
+      return null;
+    }
+    switch (index.kind(token)) {
+      case JsonIndex.OBJECT:
+        return new FlipperObject(index, token);
+      case JsonIndex.ARRAY:
+        return new FlipperArray(index, token);
+      default:
+        return index.decodeScalar(token);
     }
   }
 
+  private boolean isLazy() {
+    return mJson == null;
+  }
+
   public FlipperDynamic getDynamic(String name) {
+    if (isLazy()) {
+      final Object o = optLazy(name);
+      if (o instanceof FlipperObject) {
+        return new FlipperDynamic(((FlipperObject) o).json());
+      } else if (o instanceof FlipperArray) {
+        return new FlipperDynamic(((FlipperArray) o).json());
+      }
+      return new FlipperDynamic(o);
+    }
     return new FlipperDynamic(mJson.opt(name));
   }
 
   public String getString(String name) {
+    if (isLazy()) {
+      final Object o = optLazy(name);
+      if (o == null || o == JSONObject.NULL) {
+        return null;
+      }
+      return JsonCoercion.toString(o);
+    }
     if (mJson.isNull(name)) {
       return null;
     }
@@ -41,36 +135,65 @@ public class FlipperObject {
   }
 
   public int getInt(String name) {
+    if (isLazy()) {
+      return JsonCoercion.toInt(optLazy(name));
+    }
     return mJson.optInt(name);
   }
 
   public long getLong(String name) {
+    if (isLazy()) {
+      return JsonCoercion.toLong(optLazy(name));
+    }
     return mJson.optLong(name);
   }
 
   public float getFloat(String name) {
-    return (float) mJson.optDouble(name);
+    return (float) getDouble(name);
   }
 
   public double getDouble(String name) {
+    if (isLazy()) {
+      return JsonCoercion.toDouble(optLazy(name));
+    }
     return mJson.optDouble(name);
   }
 
   public boolean getBoolean(String name) {
+    if (isLazy()) {
+      return JsonCoercion.toBoolean(optLazy(name));
+    }
     return mJson.optBoolean(name);
   }
 
   public FlipperObject getObject(String name) {
+    if (isLazy()) {
+      final Object o = optLazy(name);
+      if (o instanceof FlipperObject) {
+        return (FlipperObject) o;
+      }
+      return new FlipperObject((JSONObject) o);
+    }
     final Object o = mJson.opt(name);
     return new FlipperObject((JSONObject) o);
   }
 
   public FlipperArray getArray(String name) {
+    if (isLazy()) {
+      final Object o = optLazy(name);
+      if (o instanceof FlipperArray) {
+        return (FlipperArray) o;
+      }
+      return new FlipperArray((JSONArray) o);
+    }
     final Object o = mJson.opt(name);
     return new FlipperArray((JSONArray) o);
   }
 
   public Object get(String name) {
+    if (isLazy()) {
+      return optLazy(name);
+    }
     final Object o = mJson.opt(name);
 
     if (o instanceof JSONObject) {
@@ -83,20 +206,38 @@ public class FlipperObject {
   }
 
   public boolean contains(String name) {
+    if (isLazy()) {
+      return index().find(mToken, name) != -1;
+    }
     return mJson.has(name);
   }
 
   public Iterator<String> keys() {
-    return mJson.keys();
+    return json().keys();
   }
 
   public String toJsonString() {
     return toString();
   }
 
+  /**
+   * Returns the length of this object's JSON text. Objects that were parsed or streamed are measured
+   * as they are, without being decoded or encoded again.
+   */
+  public int encodedLength() {
+    if (mEncoded != null) {
+      return mEncoded.length();
+    }
+    final JsonIndex index = mIndex;
+    if (index != null) {
+      return index.end(mToken) - index.start(mToken);
+    }
+    return json().toString().length();
+  }
+
   @Override
   public String toString() {
-    return mJson.toString();
+    return mEncoded != null ? mEncoded : json().toString();
   }
 
   @Override
@@ -104,13 +245,13 @@ public class FlipperObject {
     if (o == null) {
       return false;
     } else {
-      return mJson.toString().equals(o.toString());
+      return toString().equals(o.toString());
     }
   }
 
   @Override
   public int hashCode() {
-    return mJson.hashCode();
+    return json().hashCode();
   }
 
   public static class Builder {
@@ -212,7 +353,7 @@ public class FlipperObject {
 
     public Builder put(String name, @Nullable FlipperArray a) {
       try {
-        mJson.put(name, a == null ? null : a.mJson);
+        mJson.put(name, a == null ? null : a.json());
       } catch (JSONException e) {
         throw new RuntimeException(e);
       }
@@ -225,7 +366,7 @@ public class FlipperObject {
 
     public Builder put(String name, @Nullable FlipperObject o) {
       try {
-        mJson.put(name, o == null ? null : o.mJson);
+        mJson.put(name, o == null ? null : o.json());
       } catch (JSONException e) {
         throw new RuntimeException(e);
       }
@@ -240,4 +381,121 @@ public class FlipperObject {
       return new FlipperObject(mJson);
     }
   }
+
+  /**
+   * A builder which encodes keys and values straight into a pooled buffer instead of building a
+   * JSONObject graph, and has primitive overloads which do not box. Use it for payloads which are
+   * only sent and not read back. As with {@link Builder}, null and NaN values are omitted; unlike
+   * it, keys must be unique as there is no way to overwrite a value once it has been written. A
+   * builder can only be built once.
+   */
+  public static class StreamingBuilder {
+    private @Nullable StringBuilder mOut;
+    private boolean mEmpty = true;
+
+    public StreamingBuilder() {
+      mOut = JsonStringWriter.acquire();
+      mOut.append('{');
+    }
+
+    private StringBuilder name(String name) {
+      final StringBuilder out = mOut;
+      if (out == null) {
+        throw new IllegalStateException("StreamingBuilder has already been built");
+      }
+      if (!mEmpty) {
+        out.append(',');
+      }
+      mEmpty = false;
+      JsonStringWriter.writeString(out, name);
+      return out.append(':');
+    }
+
+    public StreamingBuilder put(String name, int i) {
+      name(name).append(i);
+      return this;
+    }
+
+    public StreamingBuilder put(String name, long l) {
+      name(name).append(l);
+      return this;
+    }
+
+    public StreamingBuilder put(String name, float f) {
+      if (!Float.isNaN(f)) {
+        JsonStringWriter.writeFloat(name(name), f);
+      }
+      return this;
+    }
+
+    public StreamingBuilder put(String name, double d) {
+      if (!Double.isNaN(d)) {
+        JsonStringWriter.writeDouble(name(name), d);
+      }
+      return this;
+    }
+
+    public StreamingBuilder put(String name, boolean b) {
+      name(name).append(b);
+      return this;
+    }
+
+    public StreamingBuilder put(String name, @Nullable String s) {
+      if (s != null) {
+        JsonStringWriter.writeString(name(name), s);
+      }
+      return this;
+    }
+
+    public StreamingBuilder put(String name, @Nullable FlipperObject o) {
+      if (o != null) {
+        name(name).append(o.toJsonString());
+      }
+      return this;
+    }
+
+    public StreamingBuilder put(String name, @Nullable FlipperArray a) {
+      if (a != null) {
+        name(name).append(a.toJsonString());
+      }
+      return this;
+    }
+
+    public StreamingBuilder put(String name, FlipperValue v) {
+      return put(name, v.toFlipperObject());
+    }
+
+    /** Appends the nested builder's output without an intermediate String. Builds {@code b}. */
+    public StreamingBuilder put(String name, StreamingBuilder b) {
+      b.finishInto(name(name));
+      return this;
+    }
+
+    public StreamingBuilder put(String name, FlipperArray.StreamingBuilder b) {
+      b.finishInto(name(name));
+      return this;
+    }
+
+    private StringBuilder finish() {
+      final StringBuilder out = mOut;
+      if (out == null) {
+        throw new IllegalStateException("StreamingBuilder has already been built");
+      }
+      mOut = null;
+      return out.append('}');
+    }
+
+    void finishInto(StringBuilder target) {
+      final StringBuilder out = finish();
+      target.append(out);
+      JsonStringWriter.release(out);
+    }
+
+    public FlipperObject build() {
+      final StringBuilder out = finish();
+      final String encoded = out.toString();
+      JsonStringWriter.release(out);
+      return fromEncoded(encoded);
+    }
+  }
 }
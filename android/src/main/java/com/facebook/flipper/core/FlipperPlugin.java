@@ -29,6 +29,18 @@ public interface FlipperPlugin {
    */
   void onConnect(FlipperConnection connection) throws Exception;
 
+  /**
+   * Called instead of {@link FlipperPlugin#onConnect(FlipperConnection)} when the client reconnected
+   * to the same desktop shortly after losing the connection, and the desktop still has everything
+   * the plugin sent on the previous connection. Receivers have to be registered again, but only
+   * what changed while disconnected needs to be sent.
+   *
+   * <p>Plugins opt in to this by overriding it. By default, the plugin connects from scratch.
+   */
+  default void onResume(FlipperConnection connection) throws Exception {
+    onConnect(connection);
+  }
+
   /**
    * Called when the connection passed to {@link FlipperPlugin#onConnect(FlipperConnection)} is no
    * longer valid. Do not try to use the connection in or after this method has been called.
@@ -0,0 +1,16 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+/**
+ * Creates a plugin registered with {@link FlipperClient#addPluginFactory}. Called at most once, on
+ * the thread the plugin is first needed on.
+ */
+public interface FlipperPluginFactory<T extends FlipperPlugin> {
+  T create();
+}
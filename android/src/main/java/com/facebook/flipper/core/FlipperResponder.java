@@ -25,4 +25,13 @@ public interface FlipperResponder {
 
   /** Inform the Flipper desktop app of an error in handling the request. */
   void error(FlipperObject response);
+
+  /**
+   * The token telling whether the desktop cancelled the request. Receivers doing long work should
+   * check it and stop early, nothing is sent for cancelled requests. Requests of responders that
+   * can't be cancelled are never cancelled.
+   */
+  default FlipperCancellationToken getCancellationToken() {
+    return FlipperCancellationToken.NONE;
+  }
 }
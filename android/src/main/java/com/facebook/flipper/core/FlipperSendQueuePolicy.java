@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+/**
+ * Bounds on the messages a plugin can have waiting to be sent while the connection to the desktop
+ * is backed up, and what happens to messages sent with {@link FlipperConnection#trySend} once a
+ * bound is reached. Messages sent with {@link FlipperConnection#send} count against the bounds but
+ * are never dropped. Sizes are measured in characters of encoded JSON.
+ */
+public final class FlipperSendQueuePolicy {
+
+  public enum Overflow {
+    /** Drop the oldest waiting messages to make room for new ones. */
+    DROP_OLDEST,
+    /** Refuse new messages until there is room again. */
+    DROP_NEWEST,
+    /**
+     * Replace a waiting message sent with the same coalescing key, so only the latest one is sent.
+     * Messages without a match drop the oldest waiting messages, as with {@link #DROP_OLDEST}.
+     */
+    COALESCE_BY_KEY,
+  }
+
+  public static final FlipperSendQueuePolicy DEFAULT = new Builder().build();
+
+  /**
+   * The default bounds, with messages sent with a coalescing key replacing the waiting one. For
+   * plugins sending state that supersedes the previous one.
+   */
+  public static final FlipperSendQueuePolicy COALESCING =
+      new Builder().overflow(Overflow.COALESCE_BY_KEY).build();
+
+  private final int mMaxMessages;
+  private final long mMaxBytes;
+  private final Overflow mOverflow;
+
+  private FlipperSendQueuePolicy(Builder builder) {
+    mMaxMessages = builder.mMaxMessages;
+    mMaxBytes = builder.mMaxBytes;
+    mOverflow = builder.mOverflow;
+  }
+
+  public int getMaxMessages() {
+    return mMaxMessages;
+  }
+
+  public long getMaxBytes() {
+    return mMaxBytes;
+  }
+
+  public Overflow getOverflow() {
+    return mOverflow;
+  }
+
+  public static class Builder {
+    private int mMaxMessages = 10000;
+    private long mMaxBytes = 16 * 1024 * 1024;
+    private Overflow mOverflow = Overflow.DROP_OLDEST;
+
+    public Builder maxMessages(int maxMessages) {
+      if (maxMessages < 1) {
+        throw new IllegalArgumentException("maxMessages must be positive");
+      }
+      mMaxMessages = maxMessages;
+      return this;
+    }
+
+    public Builder maxBytes(long maxBytes) {
+      if (maxBytes < 1) {
+        throw new IllegalArgumentException("maxBytes must be positive");
+      }
+      mMaxBytes = maxBytes;
+      return this;
+    }
+
+    public Builder overflow(Overflow overflow) {
+      mOverflow = overflow;
+      return this;
+    }
+
+    public FlipperSendQueuePolicy build() {
+      return new FlipperSendQueuePolicy(this);
+    }
+  }
+}
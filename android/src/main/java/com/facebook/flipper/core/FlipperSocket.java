@@ -7,6 +7,8 @@
 
 package com.facebook.flipper.core;
 
+import java.nio.ByteBuffer;
+
 public interface FlipperSocket {
 
   /** The value used by Flipper to tag sockets, visible to {@link android.net.TrafficStats}. */
@@ -24,6 +26,12 @@ public interface FlipperSocket {
    */
   void flipperSend(String message);
 
+  /**
+   * Send a binary frame to the Flipper desktop application. Used for payloads, like snapshots, that
+   * would otherwise have to be base64 encoded into a text message.
+   */
+  void flipperSend(ByteBuffer message);
+
   /** Sets a socket event handler. */
   void flipperSetEventHandler(FlipperSocketEventHandler eventHandler);
 }
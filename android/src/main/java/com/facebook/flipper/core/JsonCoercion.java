@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+import javax.annotation.Nullable;
+
+/**
+ * Value coercions applied by the opt* accessors of org.json, so that lazily decoded values read
+ * exactly the same as values read from a materialized JSONObject or JSONArray.
+ */
+final class JsonCoercion {
+
+  private JsonCoercion() {}
+
+  static String toString(@Nullable Object value) {
+    return value == null ? "" : String.valueOf(value);
+  }
+
+  static int toInt(@Nullable Object value) {
+    if (value instanceof Number) {
+      return ((Number) value).intValue();
+    } else if (value instanceof String) {
+      try {
+        return (int) Double.parseDouble((String) value);
+      } catch (NumberFormatException e) {
+        return 0;
+      }
+    }
+    return 0;
+  }
+
+  static long toLong(@Nullable Object value) {
+    if (value instanceof Number) {
+      return ((Number) value).longValue();
+    } else if (value instanceof String) {
+      try {
+        return (long) Double.parseDouble((String) value);
+      } catch (NumberFormatException e) {
+        return 0;
+      }
+    }
+    return 0;
+  }
+
+  static double toDouble(@Nullable Object value) {
+    if (value instanceof Number) {
+      return ((Number) value).doubleValue();
+    } else if (value instanceof String) {
+      try {
+        return Double.valueOf((String) value);
+      } catch (NumberFormatException e) {
+        return Double.NaN;
+      }
+    }
+    return Double.NaN;
+  }
+
+  static boolean toBoolean(@Nullable Object value) {
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    } else if (value instanceof String) {
+      return "true".equalsIgnoreCase((String) value);
+    }
+    return false;
+  }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+import javax.annotation.Nullable;
+import org.json.JSONObject;
+
+/**
+ * A flat offset index over a JSON document. The source is tokenized once and values are only
+ * decoded when they are read, which lets {@link FlipperObject} and {@link FlipperArray} avoid
+ * building a full org.json tree for messages where only a few fields are accessed.
+ *
+ * <p>Every token occupies {@link #SLOTS} consecutive ints: its kind, the start and end offsets in
+ * the source, the index of the token following it (which skips over children for containers) and,
+ * for containers, the number of children. Object members are stored as a key token directly
+ * followed by its value token.
+ */
+final class JsonIndex {
+
+  static final int OBJECT = 1;
+  static final int ARRAY = 2;
+  static final int STRING = 3;
+  static final int ESCAPED_STRING = 4;
+  static final int NUMBER = 5;
+  static final int TRUE = 6;
+  static final int FALSE = 7;
+  static final int NULL = 8;
+
+  static final int SLOTS = 5;
+  private static final int KIND = 0;
+  private static final int START = 1;
+  private static final int END = 2;
+  private static final int NEXT = 3;
+  private static final int COUNT = 4;
+
+  private static final int INITIAL_DEPTH = 16;
+  private static final int MAX_EXACT_DIGITS = 18;
+
+  final String mSource;
+  private int[] mTokens;
+  private int mSize;
+
+  private JsonIndex(String source) {
+    mSource = source;
+    mTokens = new int[Math.max(SLOTS * 8, source.length() / 4)];
+  }
+
+  /**
+   * Indexes the given document. Returns null if the source is not strict JSON with the expected
+   * root kind, in which case callers should fall back to the lenient org.json parser so that
+   * behaviour stays identical to eager parsing.
+   */
+  @Nullable
+  static JsonIndex parse(@Nullable String source, int rootKind) {
+    if (source == null) {
+      return null;
+    }
+    final JsonIndex index = new JsonIndex(source);
+    try {
+      final int end = index.tokenize();
+      if (skipWhitespace(source, end) != source.length() || index.kind(0) != rootKind) {
+        return null;
+      }
+    } catch (MalformedJsonException | IndexOutOfBoundsException e) {
+      return null;
+    }
+    return index;
+  }
+
+  int kind(int token) {
+    return mTokens[token + KIND];
+  }
+
+  int start(int token) {
+    return mTokens[token + START];
+  }
+
+  int end(int token) {
+    return mTokens[token + END];
+  }
+
+  int next(int token) {
+    return mTokens[token + NEXT];
+  }
+
+  int count(int token) {
+    return mTokens[token + COUNT];
+  }
+
+  /** Returns the first child of a container token. Only meaningful if {@link #count} is > 0. */
+  static int firstChild(int token) {
+    return token + SLOTS;
+  }
+
+  /**
+   * Finds the value token for the given key in an object token, or -1 if the key is absent. As
+   * with org.json, the last occurrence wins for duplicate keys.
+   */
+  int find(int object, String name) {
+    int result = -1;
+    int key = firstChild(object);
+    for (int i = 0, count = count(object); i < count; i++) {
+      final int value = next(key);
+      if (keyEquals(key, name)) {
+        result = value;
+      }
+      key = next(value);
+    }
+    return result;
+  }
+
+  /** Returns the tokens of all elements of an array token, in order. */
+  int[] elements(int array) {
+    final int[] elements = new int[count(array)];
+    int element = firstChild(array);
+    for (int i = 0; i < elements.length; i++) {
+      elements[i] = element;
+      element = next(element);
+    }
+    return elements;
+  }
+
+  private boolean keyEquals(int key, String name) {
+    if (kind(key) == STRING) {
+      final int length = end(key) - start(key) - 2;
+      return length == name.length() && mSource.regionMatches(start(key) + 1, name, 0, length);
+    }
+    return decodeString(key).equals(name);
+  }
+
+  /** Returns the raw JSON text of a token, as it appears in the source. */
+  String text(int token) {
+    return mSource.substring(start(token), end(token));
+  }
+
+  String decodeString(int token) {
+    final int start = start(token) + 1;
+    final int end = end(token) - 1;
+    if (kind(token) == STRING) {
+      return mSource.substring(start, end);
+    }
+    final StringBuilder builder = new StringBuilder(end - start);
+    for (int i = start; i < end; i++) {
+      final char c = mSource.charAt(i);
+      if (c != '\\') {
+        builder.append(c);
+        continue;
+      }
+      final char escaped = mSource.charAt(++i);
+      switch (escaped) {
+        case 'b':
+          builder.append('\b');
+          break;
+        case 'f':
+          builder.append('\f');
+          break;
+        case 'n':
+          builder.append('\n');
+          break;
+        case 'r':
+          builder.append('\r');
+          break;
+        case 't':
+          builder.append('\t');
+          break;
+        case 'u':
+          builder.append((char) Integer.parseInt(mSource.substring(i + 1, i + 5), 16));
+          i += 4;
+          break;
+        default:
+          builder.append(escaped);
+          break;
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Decodes a scalar token into the same boxed value org.json would have produced for it. Must not
+   * be called for containers.
+   */
+  Object decodeScalar(int token) {
+    switch (kind(token)) {
+      case STRING:
+      case ESCAPED_STRING:
+        return decodeString(token);
+      case TRUE:
+        return Boolean.TRUE;
+      case FALSE:
+        return Boolean.FALSE;
+      case NULL:
+        return JSONObject.NULL;
+      default:
+        return decodeNumber(text(token));
+    }
+  }
+
+  private static Object decodeNumber(String literal) {
+    if (literal.indexOf('.') == -1) {
+      try {
+        final long value = Long.parseLong(literal);
+        if (value <= Integer.MAX_VALUE && value >= Integer.MIN_VALUE) {
+          return (int) value;
+        }
+        return value;
+      } catch (NumberFormatException e) {
+        // Exponents and integers beyond the range of a long; parse as a double below.
+      }
+    }
+    return Double.valueOf(literal);
+  }
+
+  private int tokenize() throws MalformedJsonException {
+    int[] stack = new int[INITIAL_DEPTH];
+    int depth = 0;
+    int pos = skipWhitespace(mSource, 0);
+
+    while (true) {
+      if (depth > 0) {
+        final int parent = stack[depth - 1];
+        final char c = charAt(pos);
+        if (c == (kind(parent) == OBJECT ? '}' : ']')) {
+          pos++;
+          mTokens[parent + END] = pos;
+          mTokens[parent + NEXT] = mSize;
+          if (--depth == 0) {
+            return pos;
+          }
+          pos = skipWhitespace(mSource, pos);
+          continue;
+        }
+        if (count(parent) > 0) {
+          if (c != ',') {
+            throw new MalformedJsonException();
+          }
+          pos = skipWhitespace(mSource, pos + 1);
+        }
+        mTokens[parent + COUNT]++;
+        if (kind(parent) == OBJECT) {
+          if (charAt(pos) != '"') {
+            throw new MalformedJsonException();
+          }
+          pos = skipWhitespace(mSource, readString(pos));
+          if (charAt(pos) != ':') {
+            throw new MalformedJsonException();
+          }
+          pos = skipWhitespace(mSource, pos + 1);
+        }
+      }
+
+      final char c = charAt(pos);
+      if (c == '{' || c == '[') {
+        if (depth == stack.length) {
+          final int[] grown = new int[stack.length * 2];
+          System.arraycopy(stack, 0, grown, 0, depth);
+          stack = grown;
+        }
+        stack[depth++] = add(c == '{' ? OBJECT : ARRAY, pos, -1);
+        pos = skipWhitespace(mSource, pos + 1);
+        continue;
+      }
+
+      if (c == '"') {
+        pos = readString(pos);
+      } else if (c == 't') {
+        pos = readLiteral(pos, "true", TRUE);
+      } else if (c == 'f') {
+        pos = readLiteral(pos, "false", FALSE);
+      } else if (c == 'n') {
+        pos = readLiteral(pos, "null", NULL);
+      } else {
+        pos = readNumber(pos);
+      }
+
+      if (depth == 0) {
+        return pos;
+      }
+      pos = skipWhitespace(mSource, pos);
+    }
+  }
+
+  private int readString(int start) throws MalformedJsonException {
+    int pos = start + 1;
+    boolean escaped = false;
+    while (true) {
+      final char c = charAt(pos);
+      if (c == '"') {
+        break;
+      }
+      if (c == '\\') {
+        escaped = true;
+        final char next = charAt(pos + 1);
+        if (next == 'u') {
+          for (int i = pos + 2; i < pos + 6; i++) {
+            if (Character.digit(charAt(i), 16) == -1) {
+              throw new MalformedJsonException();
+            }
+          }
+          pos += 6;
+          continue;
+        }
+        if ("\"\\/bfnrt".indexOf(next) == -1) {
+          throw new MalformedJsonException();
+        }
+        pos += 2;
+        continue;
+      }
+      pos++;
+    }
+    add(escaped ? ESCAPED_STRING : STRING, start, pos + 1);
+    return pos + 1;
+  }
+
+  private int readLiteral(int start, String literal, int kind) throws MalformedJsonException {
+    if (!mSource.startsWith(literal, start)) {
+      throw new MalformedJsonException();
+    }
+    final int end = start + literal.length();
+    add(kind, start, end);
+    return end;
+  }
+
+  private int readNumber(int start) throws MalformedJsonException {
+    int pos = start;
+    if (charAt(pos) == '-') {
+      pos++;
+    }
+    if (charAt(pos) == '0') {
+      pos++;
+    } else {
+      pos = readDigits(pos);
+    }
+    if (pos < mSource.length() && mSource.charAt(pos) == '.') {
+      pos = readDigits(pos + 1);
+    }
+    if (pos < mSource.length() && (mSource.charAt(pos) == 'e' || mSource.charAt(pos) == 'E')) {
+      pos++;
+      if (charAt(pos) == '+' || charAt(pos) == '-') {
+        pos++;
+      }
+      pos = readDigits(pos);
+      checkFinite(start, pos);
+    } else if (pos - start > MAX_EXACT_DIGITS) {
+      checkFinite(start, pos);
+    }
+    add(NUMBER, start, pos);
+    return pos;
+  }
+
+  /**
+   * org.json refuses to store infinite numbers in objects, so leave such documents to the eager
+   * parser to keep the error behaviour unchanged.
+   */
+  private void checkFinite(int start, int end) throws MalformedJsonException {
+    if (Double.isInfinite(Double.parseDouble(mSource.substring(start, end)))) {
+      throw new MalformedJsonException();
+    }
+  }
+
+  private int readDigits(int start) throws MalformedJsonException {
+    int pos = start;
+    while (pos < mSource.length() && isDigit(mSource.charAt(pos))) {
+      pos++;
+    }
+    if (pos == start) {
+      throw new MalformedJsonException();
+    }
+    return pos;
+  }
+
+  private int add(int kind, int start, int end) {
+    if (mSize + SLOTS > mTokens.length) {
+      final int[] grown = new int[mTokens.length * 2];
+      System.arraycopy(mTokens, 0, grown, 0, mSize);
+      mTokens = grown;
+    }
+    final int token = mSize;
+    mTokens[token + KIND] = kind;
+    mTokens[token + START] = start;
+    mTokens[token + END] = end;
+    mTokens[token + NEXT] = token + SLOTS;
+    mTokens[token + COUNT] = 0;
+    mSize += SLOTS;
+    return token;
+  }
+
+  private char charAt(int pos) throws MalformedJsonException {
+    if (pos >= mSource.length()) {
+      throw new MalformedJsonException();
+    }
+    return mSource.charAt(pos);
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static int skipWhitespace(String source, int start) {
+    int pos = start;
+    while (pos < source.length()) {
+      final char c = source.charAt(pos);
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+        break;
+      }
+      pos++;
+    }
+    return pos;
+  }
+
+  private static final class MalformedJsonException extends Exception {
+  }
+}
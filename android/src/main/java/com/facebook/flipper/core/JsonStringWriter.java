@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+import java.util.ArrayDeque;
+
+/**
+ * Encoding helpers for the streaming builders. Output is byte-for-byte what org.json would produce
+ * for the same values, so streamed objects compare equal to objects built from a JSONObject.
+ *
+ * <p>Buffers are pooled: a builder acquires one when it is created and hands it back when it is
+ * built, so steady-state encoding does not allocate beyond the resulting String.
+ */
+final class JsonStringWriter {
+
+  private static final int MAX_POOLED_BUFFERS = 4;
+  private static final int INITIAL_CAPACITY = 256;
+  private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private static final ArrayDeque<StringBuilder> sPool = new ArrayDeque<>(MAX_POOLED_BUFFERS);
+
+  private JsonStringWriter() {}
+
+  static StringBuilder acquire() {
+    synchronized (sPool) {
+      final StringBuilder buffer = sPool.poll();
+      if (buffer != null) {
+        return buffer;
+      }
+    }
+    return new StringBuilder(INITIAL_CAPACITY);
+  }
+
+  /** Returns the buffer to the pool, unless it grew too large to be worth keeping around. */
+  static void release(StringBuilder buffer) {
+    if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+      return;
+    }
+    buffer.setLength(0);
+    synchronized (sPool) {
+      if (sPool.size() < MAX_POOLED_BUFFERS) {
+        sPool.push(buffer);
+      }
+    }
+  }
+
+  static void writeString(StringBuilder out, String value) {
+    out.append('"');
+    for (int i = 0, length = value.length(); i < length; i++) {
+      final char c = value.charAt(i);
+      switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+          out.append('\\').append(c);
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        case '\b':
+          out.append("\\b");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\f':
+          out.append("\\f");
+          break;
+        default:
+          if (c <= 0x1F) {
+            out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+          } else {
+            out.append(c);
+          }
+          break;
+      }
+    }
+    out.append('"');
+  }
+
+  static void writeDouble(StringBuilder out, double value) {
+    checkFinite(value);
+    final long longValue = (long) value;
+    if (isNegativeZero(value)) {
+      out.append("-0");
+    } else if (value == (double) longValue) {
+      out.append(longValue);
+    } else {
+      out.append(value);
+    }
+  }
+
+  /** Unlike doubles, org.json writes a negative zero float as "0". */
+  static void writeFloat(StringBuilder out, float value) {
+    checkFinite(value);
+    final long longValue = (long) value;
+    if ((double) value == (double) longValue) {
+      out.append(longValue);
+    } else {
+      out.append(value);
+    }
+  }
+
+  private static boolean isNegativeZero(double value) {
+    return value == 0 && Double.doubleToRawLongBits(value) != 0;
+  }
+
+  private static void checkFinite(double value) {
+    if (Double.isInfinite(value)) {
+      throw new RuntimeException("Forbidden numeric value: " + value);
+    }
+  }
+}
@@ -7,9 +7,13 @@
 
 package com.facebook.flipper.plugins.common;
 
+import android.util.Base64;
 import com.facebook.flipper.core.FlipperConnection;
 import com.facebook.flipper.core.FlipperObject;
 import com.facebook.flipper.core.FlipperPlugin;
+import com.facebook.flipper.core.FlipperSendQueuePolicy;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -18,16 +22,85 @@ import javax.annotation.Nullable;
  *
  * <p>In order to send data to the {@link FlipperConnection}, use {@link #send(String,
  * FlipperObject)} instead of {@link FlipperConnection#send(String, FlipperObject)}.
+ *
+ * <p>Sending is typically done from threads of the app such as the network threads, so it avoids
+ * waiting on other threads: the buffer takes no lock, and events buffered while connected are sent
+ * from a background thread rather than by whichever thread sends next. Only a journal, if set,
+ * takes a lock of its own while appending. The buffer keeps the most recent events within a budget
+ * of events and characters of encoded JSON, and counts those it drops.
+ *
+ * <p>Events that supersede earlier ones, such as the latest state of something, can be sent with a
+ * coalescing key using {@link #send(String, FlipperObject, String)}. Only the latest event per
+ * method and key is then kept while disconnected or while the connection is backed up.
+ *
+ * <p>Events holding binary payloads are sent with an {@link EventBuilder}, so that the payloads are
+ * sent as attachments of the connection when the event goes straight to it, and embedded as base64
+ * when it is buffered. References to attachments only hold for the connection they were sent on,
+ * so buffered and journaled events never contain them.
  */
 public abstract class BufferingFlipperPlugin implements FlipperPlugin {
 
   private static final int BUFFER_SIZE = 500;
 
-  private @Nullable RingBuffer<CachedFlipperEvent> mEventQueue;
-  private @Nullable FlipperConnection mConnection;
+  public static final long DEFAULT_BUFFER_CHARS = 4 * 1024 * 1024;
+
+  /** Bytes of journaled events replayed at once, then every {@link #DRAIN_INTERVAL_MS}. */
+  private static final int DRAIN_SLICE_BYTES = 256 * 1024;
+
+  private static final long DRAIN_INTERVAL_MS = 50;
+
+  private static final BlobEncoder BASE64_ENCODER =
+      new BlobEncoder() {
+        @Override
+        public @Nullable String encode(@Nullable byte[] blob) {
+          return blob != null ? Base64.encodeToString(blob, Base64.DEFAULT) : null;
+        }
+      };
+
+  private final RingBuffer<CachedFlipperEvent> mEventQueue;
+  private volatile @Nullable FlipperConnection mConnection;
+  private volatile @Nullable EventJournal mJournal;
+  private boolean mJournalDrainScheduled = false;
+  private final AtomicBoolean mBufferDrainScheduled = new AtomicBoolean();
   private @Nullable MockResponseConnectionListener
       mMockResponseConnectionListenerConnectionListener;
 
+  public BufferingFlipperPlugin() {
+    this(DEFAULT_BUFFER_CHARS);
+  }
+
+  /** @param bufferChars how many characters of events to keep at most while disconnected. */
+  protected BufferingFlipperPlugin(long bufferChars) {
+    mEventQueue = new RingBuffer<>(BUFFER_SIZE, bufferChars);
+  }
+
+  private final Runnable mSendBufferedEventsRunnable =
+      new Runnable() {
+        @Override
+        public void run() {
+          mBufferDrainScheduled.set(false);
+          sendBufferedEvents();
+        }
+      };
+
+  private final Runnable mDrainJournalRunnable =
+      new Runnable() {
+        @Override
+        public void run() {
+          drainJournal();
+        }
+      };
+
+  /**
+   * Keeps events in the given journal rather than in memory while disconnected, so that many more
+   * of them can be kept and they survive the process dying. Once connected, the journal is replayed
+   * gradually from a background thread, with new events queued behind it.
+   */
+  public synchronized void setJournal(@Nullable EventJournal journal) {
+    mJournal = journal;
+    sendBufferedEvents();
+  }
+
   public synchronized void setConnectionListener(@Nonnull MockResponseConnectionListener listener) {
     this.mMockResponseConnectionListenerConnectionListener = listener;
   }
@@ -39,6 +112,8 @@ public abstract class BufferingFlipperPlugin implements FlipperPlugin {
   @Override
   public synchronized void onConnect(FlipperConnection connection) {
     mConnection = connection;
+    // Only affects events sent with a coalescing key; the others are queued as usual.
+    connection.setSendQueuePolicy(FlipperSendQueuePolicy.COALESCING);
 
     sendBufferedEvents();
 
@@ -61,44 +136,185 @@ public abstract class BufferingFlipperPlugin implements FlipperPlugin {
     return true;
   }
 
-  public synchronized FlipperConnection getConnection() {
+  public FlipperConnection getConnection() {
     return mConnection;
   }
 
-  public synchronized boolean isConnected() {
+  public boolean isConnected() {
     return mConnection != null;
   }
 
-  public synchronized void send(String method, FlipperObject flipperObject) {
-    if (mEventQueue == null) {
-      mEventQueue = new RingBuffer<>(BUFFER_SIZE);
+  /**
+   * Whether the desktop displays events for the given method and attributes, as {@link
+   * FlipperConnection#isSubscribed(String, Map)}. Everything is subscribed while disconnected, as
+   * buffered events are sent to whichever desktop connects next.
+   */
+  public boolean isSubscribed(String method, @Nullable Map<String, String> attributes) {
+    final FlipperConnection connection = mConnection;
+    return connection == null || connection.isSubscribed(method, attributes);
+  }
+
+  /** Events dropped from the buffer to stay within its budget. */
+  public long getDroppedEventCount() {
+    final EventJournal journal = mJournal;
+    return mEventQueue.getDroppedItems() + (journal != null ? journal.getDroppedEvents() : 0);
+  }
+
+  public long getDroppedEventChars() {
+    return mEventQueue.getDroppedSize();
+  }
+
+  /** Events not kept because a later one with the same coalescing key replaced them. */
+  public long getCoalescedEventCount() {
+    final EventJournal journal = mJournal;
+    return mEventQueue.getCoalescedItems() + (journal != null ? journal.getCoalescedEvents() : 0);
+  }
+
+  public void send(String method, FlipperObject flipperObject) {
+    send(method, flipperObject, null);
+  }
+
+  /**
+   * Sends an event that supersedes the previous ones sent for the same method with the same
+   * coalescing key, if given: of those not sent yet, only the latest is kept.
+   */
+  public void send(String method, FlipperObject flipperObject, @Nullable String coalescingKey) {
+    final FlipperConnection connection = getDirectConnection();
+    if (connection != null) {
+      sendDirectly(connection, method, flipperObject, coalescingKey);
+    } else {
+      buffer(method, flipperObject, coalescingKey);
+    }
+  }
+
+  public void send(String method, EventBuilder builder) {
+    send(method, builder, null);
+  }
+
+  /**
+   * Sends an event whose params hold binary payloads, built once it is known whether the event is
+   * sent straight to the connection.
+   */
+  public void send(String method, EventBuilder builder, @Nullable String coalescingKey) {
+    final FlipperConnection connection = getDirectConnection();
+    if (connection != null) {
+      final BlobEncoder attachments =
+          new BlobEncoder() {
+            @Override
+            public @Nullable String encode(@Nullable byte[] blob) {
+              return blob != null ? connection.attachBlob(blob) : null;
+            }
+          };
+      sendDirectly(connection, method, builder.build(attachments), coalescingKey);
+    } else {
+      buffer(method, builder.build(BASE64_ENCODER), coalescingKey);
+    }
+  }
+
+  /**
+   * Returns the connection if events go straight to it, which they don't while events are still
+   * buffered, so that those sent by a thread stay in order.
+   */
+  private @Nullable FlipperConnection getDirectConnection() {
+    final FlipperConnection connection = mConnection;
+    final EventJournal journal = mJournal;
+    if (connection != null
+        && mEventQueue.isEmpty()
+        && (journal == null || journal.isEmpty())) {
+      return connection;
     }
-    if (mConnection != null) {
-      mConnection.send(method, flipperObject);
+    return null;
+  }
+
+  private static void sendDirectly(
+      FlipperConnection connection,
+      String method,
+      FlipperObject flipperObject,
+      @Nullable String coalescingKey) {
+    if (coalescingKey != null) {
+      connection.trySend(method, flipperObject, coalescingKey);
     } else {
-      mEventQueue.enqueue(new CachedFlipperEvent(method, flipperObject));
+      connection.send(method, flipperObject);
+    }
+  }
+
+  private void buffer(String method, FlipperObject flipperObject, @Nullable String coalescingKey) {
+    // Buffered events are kept encoded: that is what their size is measured in, and the objects
+    // they were built from can be collected.
+    final String params = flipperObject == null ? "{}" : flipperObject.toJsonString();
+    // Keys only replace events of the same method, as on the connection.
+    final String key = coalescingKey != null ? method + '\u0000' + coalescingKey : null;
+    final EventJournal journal = mJournal;
+    if (journal != null) {
+      journal.append(method, params, key);
+    } else {
+      mEventQueue.enqueue(
+          new CachedFlipperEvent(method, params), method.length() + params.length(), key);
+    }
+    if (mConnection != null && mBufferDrainScheduled.compareAndSet(false, true)) {
+      EventJournal.getHandler().post(mSendBufferedEventsRunnable);
     }
   }
 
   private synchronized void sendBufferedEvents() {
-    if (mEventQueue != null && mConnection != null) {
-      for (CachedFlipperEvent cachedFlipperEvent : mEventQueue.asList()) {
-        mConnection.send(cachedFlipperEvent.method, cachedFlipperEvent.flipperObject);
-      }
-      mEventQueue.clear();
+    final FlipperConnection connection = mConnection;
+    if (connection == null) {
+      return;
+    }
+    RingBuffer.Entry<CachedFlipperEvent> entry;
+    while ((entry = mEventQueue.peek()) != null) {
+      connection.send(entry.item.method, entry.item.params);
+      mEventQueue.remove(entry);
+    }
+    final EventJournal journal = mJournal;
+    if (journal != null && !journal.isEmpty() && !mJournalDrainScheduled) {
+      mJournalDrainScheduled = true;
+      EventJournal.getHandler().post(mDrainJournalRunnable);
+    }
+  }
+
+  /** Replays a slice of the journal, leaving the connection to other traffic in between. */
+  private synchronized void drainJournal() {
+    mJournalDrainScheduled = false;
+    final FlipperConnection connection = mConnection;
+    final EventJournal journal = mJournal;
+    if (connection == null || journal == null) {
+      return;
+    }
+    int sent = 0;
+    EventJournal.Record record;
+    while (sent < DRAIN_SLICE_BYTES && (record = journal.peek()) != null) {
+      connection.send(record.method, record.params);
+      journal.remove(record);
+      sent += record.size;
+    }
+    if (!journal.isEmpty()) {
+      mJournalDrainScheduled = true;
+      EventJournal.getHandler().postDelayed(mDrainJournalRunnable, DRAIN_INTERVAL_MS);
     }
   }
 
   private static class CachedFlipperEvent {
     final String method;
-    final FlipperObject flipperObject;
+    final String params;
 
-    private CachedFlipperEvent(String method, FlipperObject flipperObject) {
+    private CachedFlipperEvent(String method, String params) {
       this.method = method;
-      this.flipperObject = flipperObject;
+      this.params = params;
     }
   }
 
+  /** Builds the params of an event holding binary payloads. */
+  public interface EventBuilder {
+    FlipperObject build(BlobEncoder blobs);
+  }
+
+  /** Encodes the binary payloads of an event, as attachments or base64. */
+  public interface BlobEncoder {
+    @Nullable
+    String encode(@Nullable byte[] blob);
+  }
+
   public interface MockResponseConnectionListener {
     void onConnect(FlipperConnection connection);
 
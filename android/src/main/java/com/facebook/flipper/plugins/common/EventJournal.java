@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.plugins.common;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * An append-only log of events on disk, for {@link BufferingFlipperPlugin} to keep events in while
+ * the desktop is not connected without holding them in memory. Events survive the process dying,
+ * so that those of a previous run, such as the traffic of an app launch, are replayed once the
+ * desktop connects.
+ *
+ * <p>The log is split in memory-mapped segment files of a fixed size. Once the log grows past its
+ * size cap, the oldest segment is deleted with the events it holds. Each record is the length of
+ * the method, of the params and of the coalescing key as ints, then the method, the key and the
+ * params in UTF-8. The method length is written last and is never 0, so a record the process died
+ * writing reads as the end of the log.
+ *
+ * <p>An event appended with a coalescing key supersedes those before it with the same key, which
+ * are skipped when the journal is read. They still take up room in the log until their segment is
+ * read or dropped.
+ *
+ * <p>Events are read back with {@link #peek} then {@link #remove}, and the journal starts over once
+ * all were read. They are delivered at least once: those of a segment being replayed when the
+ * process died are replayed again.
+ */
+public final class EventJournal {
+
+  public static final int DEFAULT_SEGMENT_BYTES = 4 * 1024 * 1024;
+
+  private static final String TAG = "EventJournal";
+  private static final String SEGMENT_SUFFIX = ".journal";
+  private static final int HEADER_SIZE = 12;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static @Nullable Handler sHandler;
+
+  static final class Record {
+    final String method;
+    final String params;
+    final @Nullable String key;
+    final int size;
+
+    Record(String method, String params, @Nullable String key, int size) {
+      this.method = method;
+      this.params = params;
+      this.key = key;
+      this.size = size;
+    }
+  }
+
+  private static final class Segment {
+    final long sequence;
+    final File file;
+    final MappedByteBuffer buffer;
+    int end;
+
+    Segment(long sequence, File file, MappedByteBuffer buffer) {
+      this.sequence = sequence;
+      this.file = file;
+      this.buffer = buffer;
+    }
+  }
+
+  private final File mDirectory;
+  private final long mMaxBytes;
+  private final int mSegmentBytes;
+  private final ArrayDeque<Segment> mSegments = new ArrayDeque<>();
+  /** Where the latest event with each coalescing key is, as the segment sequence and offset. */
+  private final Map<String, Long> mLatestByKey = new HashMap<>();
+  private int mReadOffset = 0;
+  private @Nullable Record mPeeked;
+  private long mDroppedEvents = 0;
+  private long mCoalescedEvents = 0;
+
+  public EventJournal(File directory, long maxBytes) throws IOException {
+    this(directory, maxBytes, DEFAULT_SEGMENT_BYTES);
+  }
+
+  /**
+   * Opens the journal in the given directory, which only it may use, picking up the events left
+   * in it by a previous run.
+   */
+  public EventJournal(File directory, long maxBytes, int segmentBytes) throws IOException {
+    if (maxBytes < segmentBytes) {
+      throw new IllegalArgumentException("The journal must hold at least one segment");
+    }
+    mDirectory = directory;
+    mMaxBytes = maxBytes;
+    mSegmentBytes = segmentBytes;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create " + directory);
+    }
+    for (long sequence : findSegments(directory)) {
+      final Segment segment = map(sequence);
+      segment.end = index(segment);
+      mSegments.add(segment);
+    }
+    if (mSegments.isEmpty()) {
+      mSegments.add(map(0));
+    }
+  }
+
+  synchronized void append(String method, String params) {
+    append(method, params, null);
+  }
+
+  /**
+   * Appends an event, superseding those with the same coalescing key if one is given, and dropping
+   * the oldest segment if the journal grows past its size cap. The event is dropped if it can't be
+   * written.
+   */
+  synchronized void append(String method, String params, @Nullable String key) {
+    final byte[] methodBytes = method.getBytes(UTF_8);
+    final byte[] paramsBytes = params.getBytes(UTF_8);
+    final byte[] keyBytes = key != null ? key.getBytes(UTF_8) : new byte[0];
+    final int size = HEADER_SIZE + methodBytes.length + keyBytes.length + paramsBytes.length;
+    if (methodBytes.length == 0 || size > mSegmentBytes) {
+      mDroppedEvents++;
+      return;
+    }
+
+    Segment segment = mSegments.getLast();
+    if (segment.end + size > mSegmentBytes) {
+      try {
+        segment = map(segment.sequence + 1);
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to add a journal segment", e);
+        mDroppedEvents++;
+        return;
+      }
+      mSegments.add(segment);
+      while ((long) mSegments.size() * mSegmentBytes > mMaxBytes) {
+        dropOldestSegment();
+      }
+    }
+
+    final MappedByteBuffer buffer = segment.buffer;
+    final int offset = segment.end;
+    buffer.position(offset + HEADER_SIZE);
+    buffer.put(methodBytes);
+    buffer.put(keyBytes);
+    buffer.put(paramsBytes);
+    // Records left from before the journal was last emptied must not read as following this one.
+    if (offset + size + HEADER_SIZE <= mSegmentBytes) {
+      buffer.putInt(offset + size, 0);
+    }
+    buffer.putInt(offset + 4, paramsBytes.length);
+    buffer.putInt(offset + 8, keyBytes.length);
+    // Written last: until then, the record reads as the end of the log.
+    buffer.putInt(offset, methodBytes.length);
+    segment.end = offset + size;
+    if (keyBytes.length > 0) {
+      mLatestByKey.put(key, position(segment, offset));
+    }
+  }
+
+  /** Returns the oldest event without removing it, or null if the journal is empty. */
+  @Nullable
+  synchronized Record peek() {
+    if (mPeeked != null) {
+      return mPeeked;
+    }
+    while (true) {
+      final Segment segment = mSegments.getFirst();
+      if (mReadOffset < segment.end) {
+        final Record record = read(segment.buffer, mReadOffset);
+        if (record.key != null && !isLatest(record.key, segment, mReadOffset)) {
+          mReadOffset += record.size;
+          mCoalescedEvents++;
+          continue;
+        }
+        mPeeked = record;
+        return mPeeked;
+      }
+      if (mSegments.size() == 1) {
+        return null;
+      }
+      // Fully read, and no longer written to.
+      mSegments.removeFirst();
+      segment.file.delete();
+      mReadOffset = 0;
+    }
+  }
+
+  /** Removes the event returned by {@link #peek}, unless it was dropped in the meantime. */
+  synchronized void remove(Record record) {
+    if (mPeeked == record) {
+      // Unless a later event with the same key was appended since the peek.
+      if (record.key != null && isLatest(record.key, mSegments.getFirst(), mReadOffset)) {
+        mLatestByKey.remove(record.key);
+      }
+      mReadOffset += record.size;
+      mPeeked = null;
+    }
+    if (isEmpty()) {
+      // Start over, so that the events that were read aren't replayed after a restart.
+      final Segment segment = mSegments.getFirst();
+      segment.buffer.putInt(0, 0);
+      segment.end = 0;
+      mReadOffset = 0;
+      mLatestByKey.clear();
+    }
+  }
+
+  synchronized boolean isEmpty() {
+    return mReadOffset >= mSegments.getFirst().end && mSegments.size() == 1;
+  }
+
+  /** Events dropped because the journal grew past its size cap, or that were too large for it. */
+  public synchronized long getDroppedEvents() {
+    return mDroppedEvents;
+  }
+
+  /** Events skipped because a later one with the same coalescing key superseded them. */
+  public synchronized long getCoalescedEvents() {
+    return mCoalescedEvents;
+  }
+
+  /** The thread journals are replayed from, and buffered events sent from. */
+  static synchronized Handler getHandler() {
+    if (sHandler == null) {
+      final HandlerThread thread =
+          new HandlerThread("FlipperJournalThread", Process.THREAD_PRIORITY_BACKGROUND);
+      thread.start();
+      sHandler = new Handler(thread.getLooper());
+    }
+    return sHandler;
+  }
+
+  private void dropOldestSegment() {
+    final Segment oldest = mSegments.removeFirst();
+    int offset = mReadOffset;
+    while (offset < oldest.end) {
+      final String key = readKey(oldest.buffer, offset);
+      if (key == null) {
+        mDroppedEvents++;
+      } else if (isLatest(key, oldest, offset)) {
+        mLatestByKey.remove(key);
+        mDroppedEvents++;
+      }
+      offset += recordSize(oldest.buffer, offset);
+    }
+    oldest.file.delete();
+    mReadOffset = 0;
+    mPeeked = null;
+  }
+
+  private Segment map(long sequence) throws IOException {
+    final File file = new File(mDirectory, sequence + SEGMENT_SUFFIX);
+    final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      if (randomAccessFile.length() != mSegmentBytes) {
+        randomAccessFile.setLength(mSegmentBytes);
+      }
+      // The mapping stays valid once the file is closed.
+      return new Segment(
+          sequence,
+          file,
+          randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mSegmentBytes));
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  private static List<Long> findSegments(File directory) {
+    final List<Long> sequences = new ArrayList<>();
+    final String[] names = directory.list();
+    if (names != null) {
+      for (String name : names) {
+        if (!name.endsWith(SEGMENT_SUFFIX)) {
+          continue;
+        }
+        try {
+          sequences.add(
+              Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+        } catch (NumberFormatException e) {
+          // Not ours.
+        }
+      }
+    }
+    Collections.sort(sequences);
+    return sequences;
+  }
+
+  /** Returns where the records of a segment end, noting the coalescing keys along the way. */
+  private int index(Segment segment) {
+    final MappedByteBuffer buffer = segment.buffer;
+    int offset = 0;
+    while (offset + HEADER_SIZE <= buffer.capacity()) {
+      final int methodLength = buffer.getInt(offset);
+      final int paramsLength = buffer.getInt(offset + 4);
+      final int keyLength = buffer.getInt(offset + 8);
+      final long size = (long) HEADER_SIZE + methodLength + paramsLength + keyLength;
+      if (methodLength <= 0
+          || paramsLength < 0
+          || keyLength < 0
+          || offset + size > buffer.capacity()) {
+        break;
+      }
+      final String key = readKey(buffer, offset);
+      if (key != null) {
+        mLatestByKey.put(key, position(segment, offset));
+      }
+      offset += (int) size;
+    }
+    return offset;
+  }
+
+  private boolean isLatest(String key, Segment segment, int offset) {
+    final Long latest = mLatestByKey.get(key);
+    return latest != null && latest == position(segment, offset);
+  }
+
+  private static long position(Segment segment, int offset) {
+    return (segment.sequence << 32) | offset;
+  }
+
+  private static int recordSize(MappedByteBuffer buffer, int offset) {
+    return HEADER_SIZE
+        + buffer.getInt(offset)
+        + buffer.getInt(offset + 4)
+        + buffer.getInt(offset + 8);
+  }
+
+  @Nullable
+  private static String readKey(MappedByteBuffer buffer, int offset) {
+    final int keyLength = buffer.getInt(offset + 8);
+    if (keyLength == 0) {
+      return null;
+    }
+    final byte[] bytes = new byte[keyLength];
+    buffer.position(offset + HEADER_SIZE + buffer.getInt(offset));
+    buffer.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  private static Record read(MappedByteBuffer buffer, int offset) {
+    final int methodLength = buffer.getInt(offset);
+    final int paramsLength = buffer.getInt(offset + 4);
+    final int keyLength = buffer.getInt(offset + 8);
+    final byte[] bytes = new byte[methodLength + keyLength + paramsLength];
+    buffer.position(offset + HEADER_SIZE);
+    buffer.get(bytes);
+    return new Record(
+        new String(bytes, 0, methodLength, UTF_8),
+        new String(bytes, methodLength + keyLength, paramsLength, UTF_8),
+        keyLength > 0 ? new String(bytes, methodLength, keyLength, UTF_8) : null,
+        HEADER_SIZE + bytes.length);
+  }
+}
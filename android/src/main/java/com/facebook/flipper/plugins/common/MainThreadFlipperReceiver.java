@@ -25,6 +25,9 @@ public abstract class MainThreadFlipperReceiver implements FlipperReceiver {
         new Runnable() {
           @Override
           public void run() {
+            if (responder.getCancellationToken().isCancelled()) {
+              return;
+            }
             try {
               onReceiveOnMainThread(params, responder);
             } catch (Exception ex) {
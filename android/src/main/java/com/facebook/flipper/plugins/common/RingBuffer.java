@@ -7,29 +7,156 @@
 
 package com.facebook.flipper.plugins.common;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
 
+/**
+ * Keeps the most recent items within a budget of count and size, dropping the oldest ones to make
+ * room. Items are enqueued without locking from any number of threads, and consumed by one thread
+ * at a time with {@link #peek} then {@link #remove}, so that an item stays in the buffer until it
+ * was fully handled.
+ *
+ * <p>An item enqueued with a coalescing key replaces the one still buffered with the same key, so
+ * that only the latest one is kept. It takes the place of the newest item, not that of the item it
+ * replaces.
+ */
 final class RingBuffer<T> {
-  final int mBufferSize;
-  final List<T> mBuffer = new LinkedList<>();
 
-  RingBuffer(int bufferSize) {
-    mBufferSize = bufferSize;
+  static final class Entry<T> {
+    final T item;
+    final int size;
+    final @Nullable String key;
+    /** Set by whichever of removing, dropping or replacing the entry gets to it first. */
+    final AtomicBoolean released = new AtomicBoolean();
+
+    Entry(T item, int size, @Nullable String key) {
+      this.item = item;
+      this.size = size;
+      this.key = key;
+    }
+  }
+
+  private final int mMaxItems;
+  private final long mMaxSize;
+  private final ConcurrentLinkedQueue<Entry<T>> mQueue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger mCount = new AtomicInteger();
+  private final AtomicLong mSize = new AtomicLong();
+  private final AtomicLong mDroppedItems = new AtomicLong();
+  private final AtomicLong mDroppedSize = new AtomicLong();
+  private final AtomicLong mCoalescedItems = new AtomicLong();
+  private final ConcurrentHashMap<String, Entry<T>> mLatestByKey = new ConcurrentHashMap<>();
+
+  RingBuffer(int maxItems, long maxSize) {
+    mMaxItems = maxItems;
+    mMaxSize = maxSize;
+  }
+
+  /** Adds an item of the given size, dropping the oldest items if over budget. */
+  void enqueue(T item, int size) {
+    enqueue(item, size, null);
   }
 
-  void enqueue(T item) {
-    if (mBuffer.size() >= mBufferSize) {
-      mBuffer.remove(0);
+  /**
+   * Adds an item of the given size, replacing the buffered item with the same coalescing key if
+   * any, and dropping the oldest items if over budget.
+   */
+  void enqueue(T item, int size, @Nullable String key) {
+    if (size > mMaxSize) {
+      // It would push everything else out, and then itself.
+      recordDropped(size);
+      return;
     }
-    mBuffer.add(item);
+    final Entry<T> entry = new Entry<>(item, size, key);
+    mQueue.offer(entry);
+    mCount.incrementAndGet();
+    mSize.addAndGet(size);
+    if (key != null) {
+      final Entry<T> replaced = mLatestByKey.put(key, entry);
+      if (replaced != null && release(replaced)) {
+        mQueue.remove(replaced);
+        mCoalescedItems.incrementAndGet();
+      }
+    }
+    while (mCount.get() > mMaxItems || mSize.get() > mMaxSize) {
+      final Entry<T> oldest = mQueue.poll();
+      if (oldest == null) {
+        break;
+      }
+      if (release(oldest)) {
+        recordDropped(oldest.size);
+      }
+    }
+  }
+
+  /** Returns the oldest item without removing it, or null if the buffer is empty. */
+  @Nullable
+  Entry<T> peek() {
+    Entry<T> entry;
+    while ((entry = mQueue.peek()) != null && entry.released.get()) {
+      // Replaced, and about to be taken out by the thread that replaced it.
+      mQueue.remove(entry);
+    }
+    return entry;
+  }
+
+  /** Removes an entry returned by {@link #peek}, unless it was dropped in the meantime. */
+  void remove(Entry<T> entry) {
+    release(entry);
+    mQueue.remove(entry);
+  }
+
+  boolean isEmpty() {
+    return mQueue.isEmpty();
   }
 
   void clear() {
-    mBuffer.clear();
+    Entry<T> entry;
+    while ((entry = mQueue.poll()) != null) {
+      release(entry);
+    }
+  }
+
+  int getCount() {
+    return mCount.get();
+  }
+
+  long getSize() {
+    return mSize.get();
+  }
+
+  /** Items dropped to stay within budget since the buffer was created. */
+  long getDroppedItems() {
+    return mDroppedItems.get();
+  }
+
+  long getDroppedSize() {
+    return mDroppedSize.get();
+  }
+
+  /** Items replaced by a newer one with the same coalescing key. */
+  long getCoalescedItems() {
+    return mCoalescedItems.get();
+  }
+
+  /** Takes the entry out of the counts, unless that was done already. */
+  private boolean release(Entry<T> entry) {
+    if (!entry.released.compareAndSet(false, true)) {
+      return false;
+    }
+    mCount.decrementAndGet();
+    mSize.addAndGet(-entry.size);
+    if (entry.key != null) {
+      mLatestByKey.remove(entry.key, entry);
+    }
+    return true;
   }
 
-  List<T> asList() {
-    return mBuffer;
+  private void recordDropped(int size) {
+    mDroppedItems.incrementAndGet();
+    mDroppedSize.addAndGet(size);
   }
 }
@@ -10,6 +10,10 @@ package com.facebook.flipper.plugins.databases;
 /**
  * Interface to describe a Database object. The DatabaseDescriptor#name() is visible and displayed
  * to the user
+ *
+ * <p>Implementations must implement equals and hashCode, for the descriptors a driver returns for
+ * the same database every time it lists them to be equal. Databases keep their id and cached table
+ * names across lists by them, and get new ones on every list otherwise.
  */
 public interface DatabaseDescriptor {
   String name();
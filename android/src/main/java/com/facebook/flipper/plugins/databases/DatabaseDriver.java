@@ -9,9 +9,13 @@ package com.facebook.flipper.plugins.databases;
 
 import android.content.Context;
 import androidx.annotation.StringDef;
+import com.facebook.flipper.core.FlipperCancellationToken;
+import java.io.Closeable;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.Collection;
 import java.util.List;
+import javax.annotation.Nullable;
 
 /**
  * Abstract class allowing to implement different drivers interfacing with Databases.
@@ -31,10 +35,38 @@ public abstract class DatabaseDriver<DESCRIPTOR extends DatabaseDescriptor> {
     return mContext;
   }
 
+  /** Called when the desktop disconnects, to release what was held for its requests. */
+  public void onDisconnect() {}
+
+  /**
+   * Starts telling the listener which tables change, for the desktop to refresh those it shows,
+   * until called with null. Drivers that can't tell can leave this as is, the desktop then only
+   * sees changes once it requests the data again.
+   */
+  public void setChangeListener(@Nullable DatabaseChangeListener<DESCRIPTOR> listener) {}
+
+  /** Told by a driver which tables of its databases changed. May be called from any thread. */
+  public interface DatabaseChangeListener<DESCRIPTOR extends DatabaseDescriptor> {
+    void onTablesChanged(DESCRIPTOR databaseDescriptor, Collection<String> tables);
+  }
+
   public abstract List<DESCRIPTOR> getDatabases();
 
   public abstract List<String> getTableNames(DESCRIPTOR databaseDescriptor);
 
+  /**
+   * Returns something that changes whenever the tables of the database may have, for its table
+   * names to be kept from one database list to the next until it does. Returns null if the driver
+   * can't tell, for them to be listed every time.
+   *
+   * <p>Drivers that return a version must allow it and {@link #getTableNames} to be called for
+   * different databases at the same time, as databases are checked in parallel.
+   */
+  @Nullable
+  public String getSchemaVersion(DESCRIPTOR databaseDescriptor) {
+    return null;
+  }
+
   public abstract DatabaseGetTableDataResponse getTableData(
       DESCRIPTOR databaseDescriptor,
       String table,
@@ -52,6 +84,56 @@ public abstract class DatabaseDriver<DESCRIPTOR extends DatabaseDescriptor> {
   public abstract DatabaseExecuteSqlResponse executeSQL(
       DESCRIPTOR databaseDescriptor, String query);
 
+  /**
+   * Like {@link #getTableData(DatabaseDescriptor, String, String, boolean, int, int)}, but may stop
+   * early once the desktop cancelled the request. Drivers that can't interrupt their queries can
+   * leave this as is.
+   */
+  public DatabaseGetTableDataResponse getTableData(
+      DESCRIPTOR databaseDescriptor,
+      String table,
+      String order,
+      boolean reverse,
+      int start,
+      int count,
+      FlipperCancellationToken cancellationToken) {
+    return getTableData(databaseDescriptor, table, order, reverse, start, count);
+  }
+
+  /**
+   * Like {@link #executeSQL(DatabaseDescriptor, String)}, but may stop early once the desktop
+   * cancelled the request. Drivers that can't interrupt their queries can leave this as is.
+   */
+  public DatabaseExecuteSqlResponse executeSQL(
+      DESCRIPTOR databaseDescriptor, String query, FlipperCancellationToken cancellationToken) {
+    return executeSQL(databaseDescriptor, query);
+  }
+
+  /**
+   * Runs a query returning rows, for its result to be read a row at a time rather than all at once
+   * as with {@link #executeSQL}, so that large results can be sent in batches. Returns null if the
+   * query doesn't return rows, or if the driver can't read them that way, for the query to go
+   * through {@link #executeSQL} instead.
+   */
+  @Nullable
+  public DatabaseRowCursor openSelect(
+      DESCRIPTOR databaseDescriptor, String query, FlipperCancellationToken cancellationToken) {
+    return null;
+  }
+
+  /** The rows of a query, read one at a time. Must be closed once done with. */
+  public interface DatabaseRowCursor extends Closeable {
+
+    List<String> getColumns();
+
+    /** Returns the next row, or null past the last one. */
+    @Nullable
+    List<Object> nextRow();
+
+    @Override
+    void close();
+  }
+
   public static class DatabaseGetTableDataResponse {
 
     public final List<String> columns;
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.plugins.databases;
+
+import android.os.Process;
+import com.facebook.flipper.plugins.databases.DatabasesManager.DatabaseDescriptorHolder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * The table names of the databases, kept from one database list to the next for as long as their
+ * driver says their schema didn't change, so that listing dozens of databases doesn't query each of
+ * them every time. Databases keep the same id across lists too, for as long as they are listed.
+ * Both rely on {@link DatabaseDescriptor} implementing equals and hashCode.
+ *
+ * <p>Databases whose driver tells their schema version are checked, and listed again if changed, in
+ * parallel. Those of other drivers are listed every time, one after the other.
+ */
+final class DatabaseSchemaCache {
+
+  private static final int POOL_SIZE = 4;
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private static @Nullable ThreadPoolExecutor sPool;
+
+  private static final class Key {
+    final DatabaseDriver<?> driver;
+    final DatabaseDescriptor descriptor;
+
+    Key(DatabaseDriver<?> driver, DatabaseDescriptor descriptor) {
+      this.driver = driver;
+      this.descriptor = descriptor;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) o;
+      return driver == other.driver && descriptor.equals(other.descriptor);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(driver) + descriptor.hashCode();
+    }
+  }
+
+  private static final class Entry {
+    @Nullable String schemaVersion;
+    /** Sorted, or null if not listed yet. */
+    @Nullable List<String> tableNames;
+  }
+
+  private final Map<Key, Integer> mIds = new HashMap<>();
+  private final Map<Key, Entry> mEntries = new HashMap<>();
+  private int mNextId = 1;
+
+  /**
+   * Returns the databases of the drivers, with their table names. Must not be called for two lists
+   * at the same time.
+   */
+  List<DatabaseDescriptorHolder> list(List<DatabaseDriver> databaseDriverList)
+      throws InterruptedException {
+    final List<Key> keys = new ArrayList<>();
+    for (DatabaseDriver<?> databaseDriver : databaseDriverList) {
+      for (DatabaseDescriptor databaseDescriptor : databaseDriver.getDatabases()) {
+        keys.add(new Key(databaseDriver, databaseDescriptor));
+      }
+    }
+
+    final Map<Key, Entry> entries = new HashMap<>();
+    final List<Future<Boolean>> checks = new ArrayList<>(keys.size());
+    for (final Key key : keys) {
+      Entry entry = mEntries.get(key);
+      if (entry == null) {
+        entry = new Entry();
+      }
+      entries.put(key, entry);
+      final Entry checked = entry;
+      checks.add(
+          getPool()
+              .submit(
+                  new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                      final String schemaVersion = getSchemaVersion(key);
+                      if (schemaVersion == null) {
+                        return false;
+                      }
+                      if (!schemaVersion.equals(checked.schemaVersion)
+                          || checked.tableNames == null) {
+                        checked.tableNames = getTableNames(key);
+                        checked.schemaVersion = schemaVersion;
+                      }
+                      return true;
+                    }
+                  }));
+    }
+
+    final List<DatabaseDescriptorHolder> holders = new ArrayList<>(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      final Key key = keys.get(i);
+      final Entry entry = entries.get(key);
+      boolean checked;
+      try {
+        checked = checks.get(i).get();
+      } catch (ExecutionException e) {
+        checked = false;
+      }
+      if (!checked) {
+        entry.schemaVersion = null;
+        entry.tableNames = getTableNames(key);
+      }
+      holders.add(
+          new DatabaseDescriptorHolder(getId(key), key.driver, key.descriptor, entry.tableNames));
+    }
+
+    mEntries.clear();
+    mEntries.putAll(entries);
+    retainIds(entries.keySet());
+    return holders;
+  }
+
+  /** Returns the id of a database listed before, or null if it wasn't. */
+  synchronized @Nullable Integer findId(DatabaseDriver<?> driver, DatabaseDescriptor descriptor) {
+    return mIds.get(new Key(driver, descriptor));
+  }
+
+  /** Forgets the ids of databases no longer listed. */
+  private synchronized void retainIds(Set<Key> keys) {
+    mIds.keySet().retainAll(keys);
+  }
+
+  private synchronized int getId(Key key) {
+    Integer id = mIds.get(key);
+    if (id == null) {
+      id = mNextId++;
+      mIds.put(key, id);
+    }
+    return id;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static @Nullable String getSchemaVersion(Key key) {
+    return ((DatabaseDriver<DatabaseDescriptor>) key.driver).getSchemaVersion(key.descriptor);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<String> getTableNames(Key key) {
+    final List<String> tableNames =
+        new ArrayList<>(
+            ((DatabaseDriver<DatabaseDescriptor>) key.driver).getTableNames(key.descriptor));
+    Collections.sort(tableNames);
+    return Collections.unmodifiableList(tableNames);
+  }
+
+  private static synchronized ThreadPoolExecutor getPool() {
+    if (sPool == null) {
+      sPool =
+          new ThreadPoolExecutor(
+              POOL_SIZE,
+              POOL_SIZE,
+              KEEP_ALIVE_SECONDS,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<Runnable>(),
+              new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                  return new Thread(
+                      new Runnable() {
+                        @Override
+                        public void run() {
+                          Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                          runnable.run();
+                        }
+                      },
+                      "FlipperDatabasesSchemaThread-" + mCount.incrementAndGet());
+                }
+              });
+      sPool.allowCoreThreadTimeOut(true);
+    }
+    return sPool;
+  }
+}
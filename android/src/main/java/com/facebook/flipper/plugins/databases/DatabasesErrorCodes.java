@@ -14,4 +14,7 @@ public class DatabasesErrorCodes {
   public static final int ERROR_DATABASE_INVALID = 2;
   public static final String ERROR_DATABASE_INVALID_MESSAGE = "Could not access database";
   public static final int ERROR_SQL_EXECUTION_EXCEPTION = 3;
+  public static final int ERROR_QUERY_CLOSED = 4;
+  public static final String ERROR_QUERY_CLOSED_MESSAGE =
+      "The query was closed, run it again to read the rest of its rows";
 }
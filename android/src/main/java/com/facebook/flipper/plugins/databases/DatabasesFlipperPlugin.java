@@ -32,6 +32,15 @@ public class DatabasesFlipperPlugin implements FlipperPlugin {
     databasesManager = new DatabasesManager(databaseDriverList);
   }
 
+  /**
+   * Caps the rows sent for a query or table page, so that a query over a large table can't run the
+   * app out of memory. Rows past either limit are left out and the result is marked as truncated.
+   * Defaults to 100,000 rows and 16 MB.
+   */
+  public void setResultLimits(int maxRows, long maxBytes) {
+    databasesManager.setResultLimits(maxRows, maxBytes);
+  }
+
   @Override
   public String getId() {
     return ID;
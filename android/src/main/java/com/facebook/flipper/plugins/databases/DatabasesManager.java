@@ -10,15 +10,20 @@ package com.facebook.flipper.plugins.databases;
 import android.util.SparseArray;
 import com.facebook.flipper.core.FlipperArray;
 import com.facebook.flipper.core.FlipperConnection;
+import com.facebook.flipper.core.FlipperExecutionPolicy;
 import com.facebook.flipper.core.FlipperObject;
 import com.facebook.flipper.core.FlipperReceiver;
 import com.facebook.flipper.core.FlipperResponder;
+import com.facebook.flipper.core.FlipperSendQueuePolicy;
 import com.facebook.flipper.plugins.databases.DatabaseDriver.DatabaseExecuteSqlResponse;
 import com.facebook.flipper.plugins.databases.DatabaseDriver.DatabaseGetTableDataResponse;
 import com.facebook.flipper.plugins.databases.DatabaseDriver.DatabaseGetTableInfoResponse;
 import com.facebook.flipper.plugins.databases.DatabaseDriver.DatabaseGetTableStructureResponse;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import javax.annotation.Nullable;
@@ -30,10 +35,21 @@ public class DatabasesManager {
   private static final String GET_TABLE_STRUCTURE_COMMAND = "getTableStructure";
   private static final String GET_TABLE_INFO_COMMAND = "getTableInfo";
   private static final String EXECUTE_COMMAND = "execute";
+  private static final String EXECUTE_CONTINUE_COMMAND = "executeContinue";
+  private static final String TABLE_CHANGED_EVENT = "tableChanged";
+
+  /**
+   * Queries can take a while, so they run off Flipper's callback thread. They share the database
+   * list built by {@link #DATABASE_LIST_COMMAND}, so they run one at a time and in order.
+   */
+  private static final FlipperExecutionPolicy DATABASE_POLICY =
+      FlipperExecutionPolicy.serial("databases");
 
   private final List<DatabaseDriver> mDatabaseDriverList;
   private final SparseArray<DatabaseDescriptorHolder> mDatabaseDescriptorHolderSparseArray;
   private final Set<DatabaseDescriptorHolder> mDatabaseDescriptorHolderSet;
+  private final OpenQueries mOpenQueries = new OpenQueries();
+  private final DatabaseSchemaCache mDatabaseSchemaCache = new DatabaseSchemaCache();
 
   private FlipperConnection mConnection;
 
@@ -50,10 +66,23 @@ public class DatabasesManager {
             });
   }
 
+  @SuppressWarnings("unchecked")
   public void setConnection(@Nullable FlipperConnection connection) {
     this.mConnection = connection;
     if (connection != null) {
+      // For tableChanged messages still waiting to be sent to be replaced by later ones.
+      connection.setSendQueuePolicy(FlipperSendQueuePolicy.COALESCING);
       listenForCommands(connection);
+      for (DatabaseDriver<?> databaseDriver : mDatabaseDriverList) {
+        ((DatabaseDriver<DatabaseDescriptor>) databaseDriver)
+            .setChangeListener(new TableChangeListener(databaseDriver));
+      }
+    } else {
+      mOpenQueries.closeAll();
+      for (DatabaseDriver<?> databaseDriver : mDatabaseDriverList) {
+        databaseDriver.setChangeListener(null);
+        databaseDriver.onDisconnect();
+      }
     }
   }
 
@@ -61,31 +90,33 @@ public class DatabasesManager {
     return mConnection != null;
   }
 
+  /** See {@link DatabasesFlipperPlugin#setResultLimits}. */
+  public void setResultLimits(int maxRows, long maxBytes) {
+    mOpenQueries.setLimits(maxRows, maxBytes);
+  }
+
   private void listenForCommands(FlipperConnection connection) {
     connection.receive(
         DATABASE_LIST_COMMAND,
         new FlipperReceiver() {
           @Override
-          public void onReceive(FlipperObject params, FlipperResponder responder) {
-            int databaseId = 1;
+          public void onReceive(FlipperObject params, FlipperResponder responder)
+              throws InterruptedException {
+            List<DatabaseDescriptorHolder> databaseDescriptorHolderList =
+                mDatabaseSchemaCache.list(mDatabaseDriverList);
             mDatabaseDescriptorHolderSparseArray.clear();
             mDatabaseDescriptorHolderSet.clear();
-            for (DatabaseDriver<?> databaseDriver : mDatabaseDriverList) {
-              List<? extends DatabaseDescriptor> databaseDescriptorList =
-                  databaseDriver.getDatabases();
-              for (DatabaseDescriptor databaseDescriptor : databaseDescriptorList) {
-                int id = databaseId++;
-                DatabaseDescriptorHolder databaseDescriptorHolder =
-                    new DatabaseDescriptorHolder(id, databaseDriver, databaseDescriptor);
-                mDatabaseDescriptorHolderSparseArray.put(id, databaseDescriptorHolder);
-                mDatabaseDescriptorHolderSet.add(databaseDescriptorHolder);
-              }
+            for (DatabaseDescriptorHolder databaseDescriptorHolder : databaseDescriptorHolderList) {
+              mDatabaseDescriptorHolderSparseArray.put(
+                  databaseDescriptorHolder.id, databaseDescriptorHolder);
+              mDatabaseDescriptorHolderSet.add(databaseDescriptorHolder);
             }
             FlipperArray result =
                 ObjectMapper.databaseListToFlipperArray(mDatabaseDescriptorHolderSet);
             responder.success(result);
           }
-        });
+        },
+        DATABASE_POLICY);
     connection.receive(
         GET_TABLE_DATA_COMMAND,
         new FlipperReceiver() {
@@ -115,10 +146,11 @@ public class DatabasesManager {
                           getTableDataRequest.order,
                           getTableDataRequest.reverse,
                           getTableDataRequest.start,
-                          getTableDataRequest.count);
+                          Math.min(getTableDataRequest.count, mOpenQueries.getMaxRows()),
+                          responder.getCancellationToken());
                   responder.success(
                       ObjectMapper.databaseGetTableDataReponseToFlipperObject(
-                          databaseGetTableDataResponse));
+                          databaseGetTableDataResponse, mOpenQueries.getMaxBytes()));
                 } catch (Exception e) {
                   responder.error(
                       ObjectMapper.toErrorFlipperObject(
@@ -127,7 +159,8 @@ public class DatabasesManager {
               }
             }
           }
-        });
+        },
+        DATABASE_POLICY);
     connection.receive(
         GET_TABLE_STRUCTURE_COMMAND,
         new FlipperReceiver() {
@@ -165,7 +198,8 @@ public class DatabasesManager {
               }
             }
           }
-        });
+        },
+        DATABASE_POLICY);
     connection.receive(
         GET_TABLE_INFO_COMMAND,
         new FlipperReceiver() {
@@ -202,7 +236,8 @@ public class DatabasesManager {
               }
             }
           }
-        });
+        },
+        DATABASE_POLICY);
     connection.receive(
         EXECUTE_COMMAND,
         new FlipperReceiver() {
@@ -225,9 +260,20 @@ public class DatabasesManager {
                         DatabasesErrorCodes.ERROR_DATABASE_INVALID_MESSAGE));
               } else {
                 try {
+                  DatabaseDriver.DatabaseRowCursor cursor =
+                      databaseDescriptorHolder.databaseDriver.openSelect(
+                          databaseDescriptorHolder.databaseDescriptor,
+                          executeSqlRequest.value,
+                          responder.getCancellationToken());
+                  if (cursor != null) {
+                    responder.success(mOpenQueries.start(cursor, executeSqlRequest.batched));
+                    return;
+                  }
                   DatabaseExecuteSqlResponse databaseExecuteSqlResponse =
                       databaseDescriptorHolder.databaseDriver.executeSQL(
-                          databaseDescriptorHolder.databaseDescriptor, executeSqlRequest.value);
+                          databaseDescriptorHolder.databaseDescriptor,
+                          executeSqlRequest.value,
+                          responder.getCancellationToken());
                   responder.success(
                       ObjectMapper.databaseExecuteSqlResponseToFlipperObject(
                           databaseExecuteSqlResponse));
@@ -239,7 +285,66 @@ public class DatabasesManager {
               }
             }
           }
-        });
+        },
+        DATABASE_POLICY);
+    connection.receive(
+        EXECUTE_CONTINUE_COMMAND,
+        new FlipperReceiver() {
+          @Override
+          public void onReceive(FlipperObject params, FlipperResponder responder) {
+            try {
+              FlipperObject response = mOpenQueries.next(params.getInt("continuation"));
+              if (response == null) {
+                responder.error(
+                    ObjectMapper.toErrorFlipperObject(
+                        DatabasesErrorCodes.ERROR_QUERY_CLOSED,
+                        DatabasesErrorCodes.ERROR_QUERY_CLOSED_MESSAGE));
+              } else {
+                responder.success(response);
+              }
+            } catch (Exception e) {
+              responder.error(
+                  ObjectMapper.toErrorFlipperObject(
+                      DatabasesErrorCodes.ERROR_SQL_EXECUTION_EXCEPTION, e.getMessage()));
+            }
+          }
+        },
+        DATABASE_POLICY);
+  }
+
+  /**
+   * Sends a message for each table that changed, for the desktop to refresh it if shown. Messages
+   * still waiting to be sent for the same table are replaced.
+   */
+  private class TableChangeListener
+      implements DatabaseDriver.DatabaseChangeListener<DatabaseDescriptor> {
+
+    private final DatabaseDriver<?> mDatabaseDriver;
+
+    TableChangeListener(DatabaseDriver<?> databaseDriver) {
+      mDatabaseDriver = databaseDriver;
+    }
+
+    @Override
+    public void onTablesChanged(DatabaseDescriptor databaseDescriptor, Collection<String> tables) {
+      FlipperConnection connection = mConnection;
+      Integer id = mDatabaseSchemaCache.findId(mDatabaseDriver, databaseDescriptor);
+      if (connection == null || id == null) {
+        return;
+      }
+      int databaseId = id;
+      for (String table : tables) {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("databaseId", String.valueOf(databaseId));
+        attributes.put("table", table);
+        if (connection.isSubscribed(TABLE_CHANGED_EVENT, attributes)) {
+          connection.trySend(
+              TABLE_CHANGED_EVENT,
+              new FlipperObject.Builder().put("databaseId", databaseId).put("table", table).build(),
+              databaseId + "/" + table);
+        }
+      }
+    }
   }
 
   static class DatabaseDescriptorHolder {
@@ -247,12 +352,23 @@ public class DatabasesManager {
     public final int id;
     public final DatabaseDriver databaseDriver;
     public final DatabaseDescriptor databaseDescriptor;
+    /** The sorted table names, or null for them to be listed when needed. */
+    @Nullable public final List<String> tableNames;
 
     public DatabaseDescriptorHolder(
         int id, DatabaseDriver databaseDriver, DatabaseDescriptor databaseDescriptor) {
+      this(id, databaseDriver, databaseDescriptor, null);
+    }
+
+    public DatabaseDescriptorHolder(
+        int id,
+        DatabaseDriver databaseDriver,
+        DatabaseDescriptor databaseDescriptor,
+        @Nullable List<String> tableNames) {
       this.id = id;
       this.databaseDriver = databaseDriver;
       this.databaseDescriptor = databaseDescriptor;
+      this.tableNames = tableNames;
     }
   }
 
@@ -260,10 +376,13 @@ public class DatabasesManager {
 
     public final int databaseId;
     public final String value;
+    /** Whether the desktop asked for the rows in batches, and follows continuations. */
+    public final boolean batched;
 
-    ExecuteSqlRequest(int databaseId, String value) {
+    ExecuteSqlRequest(int databaseId, String value, boolean batched) {
       this.databaseId = databaseId;
       this.value = value;
+      this.batched = batched;
     }
   }
 
@@ -37,10 +37,13 @@ public class ObjectMapper {
 
     for (DatabaseDescriptorHolder databaseDescriptorHolder : databaseDescriptorHolderList) {
 
-      List<String> tableNameList =
-          databaseDescriptorHolder.databaseDriver.getTableNames(
-              databaseDescriptorHolder.databaseDescriptor);
-      Collections.sort(tableNameList);
+      List<String> tableNameList = databaseDescriptorHolder.tableNames;
+      if (tableNameList == null) {
+        tableNameList =
+            databaseDescriptorHolder.databaseDriver.getTableNames(
+                databaseDescriptorHolder.databaseDescriptor);
+        Collections.sort(tableNameList);
+      }
       FlipperArray.Builder tableBuilder = new Builder();
       for (String tablename : tableNameList) {
         tableBuilder.put(tablename);
@@ -95,35 +98,85 @@ public class ObjectMapper {
     if (databaseId <= 0 || TextUtils.isEmpty(value)) {
       return null;
     }
-    return new ExecuteSqlRequest(databaseId, value);
+    return new ExecuteSqlRequest(databaseId, value, params.getBoolean("batched"));
   }
 
   public static FlipperObject databaseGetTableDataReponseToFlipperObject(
       DatabaseGetTableDataResponse databaseGetTableDataResponse) {
+    return databaseGetTableDataReponseToFlipperObject(
+        databaseGetTableDataResponse, Long.MAX_VALUE);
+  }
+
+  /**
+   * Like {@link #databaseGetTableDataReponseToFlipperObject(DatabaseGetTableDataResponse)}, but
+   * leaves out the rows past roughly the given number of bytes, always keeping the first one. The
+   * count says how many rows were kept, for the desktop to ask for the rest as the next page.
+   */
+  public static FlipperObject databaseGetTableDataReponseToFlipperObject(
+      DatabaseGetTableDataResponse databaseGetTableDataResponse, long maxBytes) {
 
     FlipperArray.Builder columnBuilder = new FlipperArray.Builder();
     for (String columnName : databaseGetTableDataResponse.columns) {
       columnBuilder.put(columnName);
     }
 
-    FlipperArray.Builder rowBuilder = new FlipperArray.Builder();
+    FlipperArray.StreamingBuilder rowBuilder = new FlipperArray.StreamingBuilder();
+    int count = 0;
+    long bytes = 0;
     for (List<Object> row : databaseGetTableDataResponse.values) {
-      FlipperArray.Builder valueBuilder = new FlipperArray.Builder();
-      for (Object item : row) {
-        valueBuilder.put(objectAndTypeToFlipperObject(item));
+      if (count > 0 && bytes >= maxBytes) {
+        break;
       }
-      rowBuilder.put(valueBuilder.build());
+      bytes += putRow(rowBuilder, row);
+      count++;
     }
 
     return new FlipperObject.Builder()
         .put("columns", columnBuilder.build())
         .put("values", rowBuilder.build())
         .put("start", databaseGetTableDataResponse.start)
-        .put("count", databaseGetTableDataResponse.count)
+        .put("count", count)
         .put("total", databaseGetTableDataResponse.total)
         .build();
   }
 
+  /**
+   * Encodes a row of a query result straight into the rows being built, and returns roughly how
+   * many bytes its values take.
+   */
+  static long putRow(FlipperArray.StreamingBuilder rows, List<Object> row) {
+    FlipperArray.StreamingBuilder valueBuilder = new FlipperArray.StreamingBuilder();
+    long bytes = 0;
+    for (Object item : row) {
+      FlipperObject.StreamingBuilder value = new FlipperObject.StreamingBuilder();
+      if (item == null) {
+        value.put("type", "null");
+        bytes += 4;
+      } else if (item instanceof Long) {
+        value.put("type", "integer").put("value", (long) (Long) item);
+        bytes += 8;
+      } else if (item instanceof Double) {
+        value.put("type", "float").put("value", (double) (Double) item);
+        bytes += 8;
+      } else if (item instanceof String) {
+        value.put("type", "string").put("value", (String) item);
+        bytes += ((String) item).length();
+      } else if (item instanceof byte[]) {
+        String blob = blobToString((byte[]) item);
+        value.put("type", "blob").put("value", blob);
+        bytes += blob.length();
+      } else if (item instanceof Boolean) {
+        value.put("type", "boolean").put("value", (boolean) (Boolean) item);
+        bytes += 4;
+      } else {
+        throw new IllegalArgumentException("type of Object is invalid");
+      }
+      valueBuilder.put(value);
+    }
+    rows.put(valueBuilder);
+    return bytes;
+  }
+
   public static FlipperObject databaseGetTableStructureResponseToFlipperObject(
       DatabaseGetTableStructureResponse databaseGetTableStructureResponse) {
 
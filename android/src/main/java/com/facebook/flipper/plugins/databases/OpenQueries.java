@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.plugins.databases;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import com.facebook.flipper.core.FlipperArray;
+import com.facebook.flipper.core.FlipperObject;
+import com.facebook.flipper.plugins.databases.DatabaseDriver.DatabaseRowCursor;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Sends the rows of queries, up to a row and byte limit. Rows past either limit are not read at
+ * all, the response saying the result was truncated instead.
+ *
+ * <p>Desktops that ask for it get the rows in batches, rather than all in one response. Each
+ * response then holds a batch of rows, and a continuation for the desktop to ask for the next one
+ * if there may be more. Queries are kept open until their last batch was sent. Those the desktop
+ * stopped asking for are closed after a while, or once too many are open.
+ */
+final class OpenQueries {
+
+  static final int DEFAULT_MAX_ROWS = 100 * 1000;
+  static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+  static final int BATCH_ROWS = 500;
+  static final long BATCH_BYTES = 512 * 1024;
+
+  private static final int MAX_OPEN = 4;
+  private static final long IDLE_TIMEOUT_MS = 60 * 1000;
+
+  private static @Nullable Handler sHandler;
+
+  private static final class OpenQuery {
+    final int id;
+    final DatabaseRowCursor cursor;
+    int rows;
+    long bytes;
+    long lastUsedMs;
+
+    OpenQuery(int id, DatabaseRowCursor cursor) {
+      this.id = id;
+      this.cursor = cursor;
+    }
+  }
+
+  /** In order of opening, oldest first. */
+  private final LinkedHashMap<Integer, OpenQuery> mQueries = new LinkedHashMap<>();
+
+  private int mNextId = 1;
+  private boolean mIdleCheckScheduled = false;
+  private volatile int mMaxRows = DEFAULT_MAX_ROWS;
+  private volatile long mMaxBytes = DEFAULT_MAX_BYTES;
+
+  private final Runnable mCloseIdleRunnable =
+      new Runnable() {
+        @Override
+        public void run() {
+          synchronized (OpenQueries.this) {
+            mIdleCheckScheduled = false;
+          }
+          closeIdle(SystemClock.uptimeMillis());
+        }
+      };
+
+  void setLimits(int maxRows, long maxBytes) {
+    if (maxRows <= 0 || maxBytes <= 0) {
+      throw new IllegalArgumentException("Result limits must be positive");
+    }
+    mMaxRows = maxRows;
+    mMaxBytes = maxBytes;
+  }
+
+  int getMaxRows() {
+    return mMaxRows;
+  }
+
+  long getMaxBytes() {
+    return mMaxBytes;
+  }
+
+  /**
+   * Returns the response with the columns and rows of a query just opened, only the first batch of
+   * them if batched.
+   */
+  FlipperObject start(DatabaseRowCursor cursor, boolean batched) {
+    final OpenQuery query;
+    synchronized (this) {
+      query = new OpenQuery(mNextId++, cursor);
+    }
+    final FlipperArray.Builder columns = new FlipperArray.Builder();
+    for (String column : cursor.getColumns()) {
+      columns.put(column);
+    }
+    final FlipperObject.Builder response =
+        new FlipperObject.Builder().put("type", "select").put("columns", columns.build());
+    if (batched) {
+      readBatch(query, response, BATCH_ROWS, BATCH_BYTES);
+    } else {
+      readBatch(query, response, Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+    return response.build();
+  }
+
+  /**
+   * Returns the response with the next batch of rows of a query, or null if the continuation is
+   * for a query that was closed.
+   */
+  @Nullable
+  FlipperObject next(int continuation) {
+    final OpenQuery query;
+    synchronized (this) {
+      query = mQueries.remove(continuation);
+    }
+    if (query == null) {
+      return null;
+    }
+    final FlipperObject.Builder response = new FlipperObject.Builder();
+    readBatch(query, response, BATCH_ROWS, BATCH_BYTES);
+    return response.build();
+  }
+
+  /** Closes all queries, once the desktop that could continue them is gone. */
+  void closeAll() {
+    final List<OpenQuery> queries;
+    synchronized (this) {
+      queries = new ArrayList<>(mQueries.values());
+      mQueries.clear();
+    }
+    for (OpenQuery query : queries) {
+      query.cursor.close();
+    }
+  }
+
+  synchronized int size() {
+    return mQueries.size();
+  }
+
+  /**
+   * Reads rows into the response until the batch is full, and keeps the query open if there may be
+   * more. The query is closed if reading fails.
+   */
+  private void readBatch(
+      OpenQuery query, FlipperObject.Builder response, int batchMaxRows, long batchMaxBytes) {
+    final FlipperArray.StreamingBuilder values = new FlipperArray.StreamingBuilder();
+    final int maxRows = mMaxRows;
+    final long maxBytes = mMaxBytes;
+    int batchRows = 0;
+    long batchBytes = 0;
+    boolean done = false;
+    boolean truncated = false;
+    try {
+      while (batchRows < batchMaxRows && batchBytes < batchMaxBytes) {
+        final List<Object> row = query.cursor.nextRow();
+        if (row == null) {
+          done = true;
+          break;
+        }
+        // Only said to be truncated if there is a row past the limit.
+        if (query.rows >= maxRows || query.bytes >= maxBytes) {
+          done = true;
+          truncated = true;
+          break;
+        }
+        final long bytes = ObjectMapper.putRow(values, row);
+        query.rows++;
+        query.bytes += bytes;
+        batchRows++;
+        batchBytes += bytes;
+      }
+    } catch (RuntimeException e) {
+      query.cursor.close();
+      throw e;
+    }
+
+    response.put("values", values.build()).put("truncated", truncated);
+    if (done) {
+      query.cursor.close();
+      return;
+    }
+    response.put("continuation", query.id);
+    final List<OpenQuery> evicted = new ArrayList<>();
+    synchronized (this) {
+      query.lastUsedMs = SystemClock.uptimeMillis();
+      mQueries.put(query.id, query);
+      final Iterator<OpenQuery> iterator = mQueries.values().iterator();
+      for (int excess = mQueries.size() - MAX_OPEN; excess > 0; excess--) {
+        evicted.add(iterator.next());
+        iterator.remove();
+      }
+      scheduleIdleCheck();
+    }
+    for (OpenQuery open : evicted) {
+      open.cursor.close();
+    }
+  }
+
+  /** Closes the queries the desktop didn't continue since the idle timeout. */
+  void closeIdle(long nowMs) {
+    final List<OpenQuery> idle = new ArrayList<>();
+    synchronized (this) {
+      final Iterator<OpenQuery> iterator = mQueries.values().iterator();
+      while (iterator.hasNext()) {
+        final OpenQuery query = iterator.next();
+        if (nowMs - query.lastUsedMs >= IDLE_TIMEOUT_MS) {
+          iterator.remove();
+          idle.add(query);
+        }
+      }
+      scheduleIdleCheck();
+    }
+    for (OpenQuery query : idle) {
+      query.cursor.close();
+    }
+  }
+
+  private void scheduleIdleCheck() {
+    if (mIdleCheckScheduled || mQueries.isEmpty()) {
+      return;
+    }
+    mIdleCheckScheduled = true;
+    getHandler().postDelayed(mCloseIdleRunnable, IDLE_TIMEOUT_MS);
+  }
+
+  private static synchronized Handler getHandler() {
+    if (sHandler == null) {
+      final HandlerThread thread =
+          new HandlerThread("FlipperDatabasesQueryThread", Process.THREAD_PRIORITY_BACKGROUND);
+      thread.start();
+      sHandler = new Handler(thread.getLooper());
+    }
+    return sHandler;
+  }
+}
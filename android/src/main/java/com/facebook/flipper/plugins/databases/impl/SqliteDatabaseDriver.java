@@ -10,24 +10,29 @@ package com.facebook.flipper.plugins.databases.impl;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteException;
+import android.os.Build;
+import android.os.CancellationSignal;
 import android.text.TextUtils;
 import android.util.Log;
 import androidx.annotation.Nullable;
+import androidx.sqlite.db.SimpleSQLiteQuery;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 import androidx.sqlite.db.SupportSQLiteStatement;
+import com.facebook.flipper.core.FlipperCancellationToken;
 import com.facebook.flipper.plugins.databases.DatabaseDescriptor;
 import com.facebook.flipper.plugins.databases.DatabaseDriver;
 import com.facebook.flipper.plugins.databases.impl.SqliteDatabaseDriver.SqliteDatabaseDescriptor;
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 public class SqliteDatabaseDriver extends DatabaseDriver<SqliteDatabaseDescriptor> {
 
@@ -35,9 +40,18 @@ public class SqliteDatabaseDriver extends DatabaseDriver<SqliteDatabaseDescripto
   private static final String[] UNINTERESTING_FILENAME_SUFFIXES =
       new String[] {"-journal", "-shm", "-uid", "-wal"};
   private static final String TAG = "SqliteDatabaseDriver";
+  private static final Pattern WITHOUT_ROWID =
+      Pattern.compile("\\bWITHOUT\\s+ROWID\\b[^)]*$", Pattern.CASE_INSENSITIVE);
+  /** How far apart two modification times of a file can be and still read the same. */
+  private static final long MODIFICATION_TIME_GRANULARITY_MS = 2000;
 
   private final SqliteDatabaseProvider sqliteDatabaseProvider;
-  private final SqliteDatabaseConnectionProvider sqliteDatabaseConnectionProvider;
+  private final SqliteDatabasePool databasePool;
+  private final SqliteTableCache tableCache = new SqliteTableCache();
+  /** The schema version of each database, with the state of its files when it was read. */
+  private final Map<File, SchemaVersion> schemaVersions = new HashMap<>();
+  private final SqliteDatabaseWatcher watcher;
+  private volatile @Nullable DatabaseChangeListener<SqliteDatabaseDescriptor> changeListener;
 
   public SqliteDatabaseDriver(final Context context) {
     this(context, new DefaultSqliteDatabaseProvider(context));
@@ -54,7 +68,51 @@ public class SqliteDatabaseDriver extends DatabaseDriver<SqliteDatabaseDescripto
       final SqliteDatabaseConnectionProvider sqliteDatabaseConnectionProvider) {
     super(context);
     this.sqliteDatabaseProvider = sqliteDatabaseProvider;
-    this.sqliteDatabaseConnectionProvider = sqliteDatabaseConnectionProvider;
+    this.databasePool = new SqliteDatabasePool(sqliteDatabaseConnectionProvider);
+    this.watcher =
+        new SqliteDatabaseWatcher(
+            databasePool,
+            new SqliteDatabaseWatcher.Listener() {
+              @Override
+              public void onTablesChanged(File databaseFile, Set<String> tables) {
+                DatabaseChangeListener<SqliteDatabaseDescriptor> listener = changeListener;
+                if (listener != null) {
+                  listener.onTablesChanged(new SqliteDatabaseDescriptor(databaseFile), tables);
+                }
+              }
+            });
+  }
+
+  /** Databases are kept open between requests, until the desktop disconnects. */
+  @Override
+  public void onDisconnect() {
+    databasePool.closeAll();
+  }
+
+  /**
+   * The files of the databases listed are watched for the app writing to them. Changes are told
+   * for the tables the desktop read last, as SQLite doesn't say which ones a write touched, unless
+   * the app tells through {@link #notifyTablesChanged}.
+   */
+  @Override
+  public void setChangeListener(
+      @Nullable DatabaseChangeListener<SqliteDatabaseDescriptor> listener) {
+    changeListener = listener;
+    if (listener == null) {
+      watcher.stop();
+    } else {
+      watcher.start();
+    }
+  }
+
+  /**
+   * Tells the desktop that tables of a database changed, for apps that know which ones their writes
+   * touched, such as from an observer of Room's invalidation tracker.
+   */
+  public void notifyTablesChanged(File databaseFile, Collection<String> tables) {
+    if (changeListener != null) {
+      watcher.notifyChanged(databaseFile, tables);
+    }
   }
 
   @Override
@@ -63,8 +121,12 @@ public class SqliteDatabaseDriver extends DatabaseDriver<SqliteDatabaseDescripto
     List<File> potentialDatabaseFiles = sqliteDatabaseProvider.getDatabaseFiles();
     Collections.sort(potentialDatabaseFiles);
     Iterable<File> tidiedList = tidyDatabaseList(potentialDatabaseFiles);
+    final boolean watching = changeListener != null;
     for (File database : tidiedList) {
       databases.add(new SqliteDatabaseDescriptor(database));
+      if (watching) {
+        watcher.watch(database);
+      }
     }
     return databases;
   }
@@ -72,8 +134,7 @@ public class SqliteDatabaseDriver extends DatabaseDriver<SqliteDatabaseDescripto
   @Override
   public List<String> getTableNames(SqliteDatabaseDescriptor databaseDescriptor) {
     try {
-      SupportSQLiteDatabase database =
-          sqliteDatabaseConnectionProvider.openDatabase(databaseDescriptor.file);
+      SupportSQLiteDatabase database = databasePool.acquire(databaseDescriptor.file);
       try {
         Cursor cursor =
             database.query(
@@ -89,7 +150,7 @@ public class SqliteDatabaseDriver extends DatabaseDriver<SqliteDatabaseDescripto
           cursor.close();
         }
       } finally {
-        close(database);
+        databasePool.release(database);
       }
     } catch (SQLiteException ex) {
       Log.e(TAG, "Temporary SQLite exception caught and ignored.", ex);
@@ -97,13 +158,80 @@ public class SqliteDatabaseDriver extends DatabaseDriver<SqliteDatabaseDescripto
     }
   }
 
+  /**
+   * The database is only opened to read its schema version if its file or write-ahead log changed
+   * since the version was last read, as databases are listed every time the desktop refreshes.
+   */
+  @Override
+  public @Nullable String getSchemaVersion(SqliteDatabaseDescriptor databaseDescriptor) {
+    final File file = databaseDescriptor.file;
+    final File wal = new File(file.getPath() + "-wal");
+    final long length = file.length();
+    final long lastModified = file.lastModified();
+    final long walLength = wal.length();
+    final long walLastModified = wal.lastModified();
+    synchronized (schemaVersions) {
+      final SchemaVersion known = schemaVersions.get(file);
+      // Files changed again within the granularity of their modification time since the version was
+      // read may look unchanged, so the version is read again until they are older than that.
+      if (known != null
+          && known.length == length
+          && known.lastModified == lastModified
+          && known.walLength == walLength
+          && known.walLastModified == walLastModified
+          && Math.max(lastModified, walLastModified)
+              < known.readAtMs - MODIFICATION_TIME_GRANULARITY_MS) {
+        return known.version;
+      }
+    }
+
+    final long readAtMs = System.currentTimeMillis();
+    final String version;
+    try {
+      SupportSQLiteDatabase database = databasePool.acquire(file);
+      try {
+        Cursor cursor = database.query("PRAGMA schema_version");
+        try {
+          if (!cursor.moveToFirst()) {
+            return null;
+          }
+          version = cursor.getString(0);
+        } finally {
+          cursor.close();
+        }
+      } finally {
+        databasePool.release(database);
+      }
+    } catch (SQLiteException ex) {
+      Log.e(TAG, "Temporary SQLite exception caught and ignored.", ex);
+      return null;
+    }
+    synchronized (schemaVersions) {
+      schemaVersions.put(
+          file,
+          new SchemaVersion(length, lastModified, walLength, walLastModified, readAtMs, version));
+    }
+    return version;
+  }
+
   @Override
   public DatabaseExecuteSqlResponse executeSQL(
       SqliteDatabaseDescriptor databaseDescriptor, String query) {
-    SupportSQLiteDatabase database =
-        sqliteDatabaseConnectionProvider.openDatabase(databaseDescriptor.file);
+    return executeSQL(databaseDescriptor, query, FlipperCancellationToken.NONE);
+  }
+
+  @Override
+  public DatabaseExecuteSqlResponse executeSQL(
+      SqliteDatabaseDescriptor databaseDescriptor,
+      String query,
+      FlipperCancellationToken cancellationToken) {
+    SupportSQLiteDatabase database = databasePool.acquire(databaseDescriptor.file);
     try {
       String firstWordUpperCase = getFirstWord(query).toUpperCase();
+      if (!isReadOnly(query)) {
+        // Writes through this connection don't change its data version.
+        invalidate(databaseDescriptor.file);
+      }
       switch (firstWordUpperCase) {
         case "UPDATE":
         case "DELETE":
@@ -113,13 +241,76 @@ public class SqliteDatabaseDriver extends DatabaseDriver<SqliteDatabaseDescripto
         case "SELECT":
         case "PRAGMA":
         case "EXPLAIN":
-          return executeSelect(database, query);
+          return executeSelect(database, query, cancellationToken);
         default:
           return executeRawQuery(database, query);
       }
     } finally {
-      close(database);
+      databasePool.release(database);
+      if (changeListener != null && !isReadOnly(query)) {
+        watcher.notifyChanged(databaseDescriptor.file, null);
+      }
+    }
+  }
+
+  /**
+   * The database stays taken from the pool until the rows were read, and the cursor only holds a
+   * window of them at a time.
+   */
+  @Override
+  public @Nullable DatabaseRowCursor openSelect(
+      SqliteDatabaseDescriptor databaseDescriptor,
+      String query,
+      FlipperCancellationToken cancellationToken) {
+    String firstWordUpperCase = getFirstWord(query).toUpperCase();
+    switch (firstWordUpperCase) {
+      case "SELECT":
+      case "EXPLAIN":
+        break;
+      case "PRAGMA":
+        invalidate(databaseDescriptor.file);
+        break;
+      default:
+        return null;
+    }
+    final SupportSQLiteDatabase database = databasePool.acquire(databaseDescriptor.file);
+    final Cursor cursor;
+    try {
+      cursor = query(database, query, null, cancellationToken);
+    } catch (RuntimeException e) {
+      databasePool.release(database);
+      throw e;
     }
+    return new DatabaseRowCursor() {
+      private final int numColumns = cursor.getColumnCount();
+      private boolean closed = false;
+
+      @Override
+      public List<String> getColumns() {
+        return Arrays.asList(cursor.getColumnNames());
+      }
+
+      @Override
+      public @Nullable List<Object> nextRow() {
+        if (!cursor.moveToNext()) {
+          return null;
+        }
+        List<Object> values = new ArrayList<>(numColumns);
+        for (int column = 0; column < numColumns; column++) {
+          values.add(getObjectFromColumnIndex(cursor, column));
+        }
+        return values;
+      }
+
+      @Override
+      public void close() {
+        if (!closed) {
+          closed = true;
+          cursor.close();
+          databasePool.release(database);
+        }
+      }
+    };
   }
 
   @Override
@@ -130,9 +321,33 @@ public class SqliteDatabaseDriver extends DatabaseDriver<SqliteDatabaseDescripto
       boolean reverse,
       int start,
       int count) {
-    SupportSQLiteDatabase database =
-        sqliteDatabaseConnectionProvider.openDatabase(databaseDescriptor.file);
+    return getTableData(
+        databaseDescriptor, table, order, reverse, start, count, FlipperCancellationToken.NONE);
+  }
+
+  @Override
+  public DatabaseGetTableDataResponse getTableData(
+      SqliteDatabaseDescriptor databaseDescriptor,
+      String table,
+      @Nullable String order,
+      boolean reverse,
+      int start,
+      int count,
+      FlipperCancellationToken cancellationToken) {
+    if (changeListener != null) {
+      watcher.onTableRead(databaseDescriptor.file, table);
+    }
+    SupportSQLiteDatabase database = databasePool.acquire(databaseDescriptor.file);
     try {
+      final SqliteTableCache.Entry entry =
+          tableCache.get(database, databaseDescriptor.file, table, queryDataVersion(database));
+      if (entry.count < 0 || entry.dataVersion < 0) {
+        entry.count = queryNumEntries(database, table, cancellationToken);
+      }
+      if (order == null && hasRowid(database, table, entry)) {
+        return getTableDataByRowid(database, table, start, count, entry, cancellationToken);
+      }
+
       String orderBy = order != null ? order + (reverse ? " DESC" : " ASC") : null;
       String query;
       if (orderBy != null) {
@@ -141,26 +356,77 @@ public class SqliteDatabaseDriver extends DatabaseDriver<SqliteDatabaseDescripto
         query = "SELECT * from " + table + " LIMIT ?, ?";
       }
 
-      Cursor cursor = database.query(query, new Object[] {start, count});
-      long total = queryNumEntries(database, table);
+      Cursor cursor = query(database, query, new Object[] {start, count}, cancellationToken);
       try {
         String[] columnNames = cursor.getColumnNames();
         List<List<Object>> rows = cursorToList(cursor);
         return new DatabaseGetTableDataResponse(
-            Arrays.asList(columnNames), rows, start, rows.size(), total);
+            Arrays.asList(columnNames), rows, start, rows.size(), entry.count);
       } finally {
         cursor.close();
       }
     } finally {
-      close(database);
+      databasePool.release(database);
+    }
+  }
+
+  /**
+   * Reads a page of a table in rowid order, which is the order of a plain scan of the table. When
+   * the page follows the last one read, it starts after the last rowid read rather than skipping
+   * over the rows of all the pages before it.
+   */
+  private DatabaseGetTableDataResponse getTableDataByRowid(
+      SupportSQLiteDatabase database,
+      String table,
+      int start,
+      int count,
+      SqliteTableCache.Entry entry,
+      FlipperCancellationToken cancellationToken) {
+    Cursor cursor;
+    if (start > 0 && start == entry.nextStart) {
+      cursor =
+          query(
+              database,
+              "SELECT rowid, * from " + table + " WHERE rowid > ? ORDER BY rowid LIMIT ?",
+              new Object[] {entry.lastRowid, count},
+              cancellationToken);
+    } else {
+      cursor =
+          query(
+              database,
+              "SELECT rowid, * from " + table + " ORDER BY rowid LIMIT ?, ?",
+              new Object[] {start, count},
+              cancellationToken);
+    }
+    try {
+      String[] columnNames = cursor.getColumnNames();
+      List<List<Object>> rows = new ArrayList<>();
+      final int numColumns = cursor.getColumnCount();
+      while (cursor.moveToNext()) {
+        // The rowid leads each row, only to remember where the page ends.
+        entry.lastRowid = cursor.getLong(0);
+        List<Object> values = new ArrayList<>();
+        for (int column = 1; column < numColumns; column++) {
+          values.add(getObjectFromColumnIndex(cursor, column));
+        }
+        rows.add(values);
+      }
+      entry.nextStart = rows.isEmpty() ? -1 : start + rows.size();
+      return new DatabaseGetTableDataResponse(
+          Arrays.asList(columnNames).subList(1, columnNames.length),
+          rows,
+          start,
+          rows.size(),
+          entry.count);
+    } finally {
+      cursor.close();
     }
   }
 
   @Override
   public DatabaseGetTableStructureResponse getTableStructure(
       SqliteDatabaseDescriptor databaseDescriptor, String table) {
-    SupportSQLiteDatabase database =
-        sqliteDatabaseConnectionProvider.openDatabase(databaseDescriptor.file);
+    SupportSQLiteDatabase database = databasePool.acquire(databaseDescriptor.file);
     try {
       Cursor structureCursor = database.query("PRAGMA table_info(" + table + ")");
       Cursor foreignKeysCursor = database.query("PRAGMA foreign_key_list(" + table + ")");
@@ -235,15 +501,14 @@ public class SqliteDatabaseDriver extends DatabaseDriver<SqliteDatabaseDescripto
         indexesCursor.close();
       }
     } finally {
-      close(database);
+      databasePool.release(database);
     }
   }
 
   @Override
   public DatabaseGetTableInfoResponse getTableInfo(
       SqliteDatabaseDescriptor databaseDescriptor, String table) {
-    SupportSQLiteDatabase database =
-        sqliteDatabaseConnectionProvider.openDatabase(databaseDescriptor.file);
+    SupportSQLiteDatabase database = databasePool.acquire(databaseDescriptor.file);
     try {
 
       Cursor definitionCursor =
@@ -259,7 +524,7 @@ public class SqliteDatabaseDriver extends DatabaseDriver<SqliteDatabaseDescripto
         definitionCursor.close();
       }
     } finally {
-      close(database);
+      databasePool.release(database);
     }
   }
 
@@ -306,8 +571,8 @@ public class SqliteDatabaseDriver extends DatabaseDriver<SqliteDatabaseDescripto
   }
 
   private static DatabaseExecuteSqlResponse executeSelect(
-      SupportSQLiteDatabase database, String query) {
-    Cursor cursor = database.query(query);
+      SupportSQLiteDatabase database, String query, FlipperCancellationToken cancellationToken) {
+    Cursor cursor = query(database, query, null, cancellationToken);
     try {
       String[] columnNames = cursor.getColumnNames();
       List<List<Object>> rows = cursorToList(cursor);
@@ -352,21 +617,103 @@ public class SqliteDatabaseDriver extends DatabaseDriver<SqliteDatabaseDescripto
     }
   }
 
-  private long queryNumEntries(SupportSQLiteDatabase database, String table) {
-    Cursor cursor = database.query("SELECT COUNT(*) FROM " + table);
+  /**
+   * Cursors are filled lazily as they are read, so the cancellation signal stays linked to the
+   * token for as long as the request lasts rather than just while the query is prepared.
+   */
+  private static Cursor query(
+      SupportSQLiteDatabase database,
+      String query,
+      @Nullable Object[] bindArgs,
+      FlipperCancellationToken cancellationToken) {
+    if (cancellationToken == FlipperCancellationToken.NONE
+        || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+      return bindArgs == null ? database.query(query) : database.query(query, bindArgs);
+    }
+    final CancellationSignal signal = new CancellationSignal();
+    cancellationToken.addOnCancelListener(
+        new FlipperCancellationToken.OnCancelListener() {
+          @Override
+          public void onCancel() {
+            signal.cancel();
+          }
+        });
+    return database.query(new SimpleSQLiteQuery(query, bindArgs), signal);
+  }
+
+  private static boolean isReadOnly(String query) {
+    String firstWordUpperCase = getFirstWord(query).toUpperCase();
+    return firstWordUpperCase.equals("SELECT") || firstWordUpperCase.equals("EXPLAIN");
+  }
+
+  /** Forgets what is known about a database, after writing to it. */
+  private void invalidate(File file) {
+    tableCache.invalidate(file);
+    synchronized (schemaVersions) {
+      schemaVersions.remove(file);
+    }
+  }
+
+  /** Changes whenever another connection writes to the database, or -1 if not supported. */
+  private static long queryDataVersion(SupportSQLiteDatabase database) {
+    Cursor cursor = database.query("PRAGMA data_version");
     try {
-      cursor.moveToFirst();
-      return cursor.getLong(0);
+      // SQLite versions that don't know the pragma return no rows.
+      return cursor.moveToFirst() ? cursor.getLong(0) : -1;
     } finally {
       cursor.close();
     }
   }
 
-  private void close(SupportSQLiteDatabase database) {
+  /**
+   * Whether the table can be read by rowid: views and tables without rowid can't, nor tables with
+   * a column named rowid, which would shadow it.
+   */
+  private static boolean hasRowid(
+      SupportSQLiteDatabase database, String table, SqliteTableCache.Entry entry) {
+    if (entry.hasRowid != null) {
+      return entry.hasRowid;
+    }
+    boolean hasRowid = false;
+    Cursor definitionCursor =
+        database.query(
+            "SELECT type, sql FROM " + SCHEMA_TABLE + " WHERE name=?", new String[] {table});
+    try {
+      if (definitionCursor.moveToFirst()) {
+        String sql = definitionCursor.getString(1);
+        hasRowid =
+            "table".equals(definitionCursor.getString(0))
+                && sql != null
+                && !WITHOUT_ROWID.matcher(sql).find();
+      }
+    } finally {
+      definitionCursor.close();
+    }
+    if (hasRowid) {
+      Cursor structureCursor = database.query("PRAGMA table_info(" + table + ")");
+      try {
+        final int nameColumn = structureCursor.getColumnIndex("name");
+        while (structureCursor.moveToNext()) {
+          if ("rowid".equalsIgnoreCase(structureCursor.getString(nameColumn))) {
+            hasRowid = false;
+          }
+        }
+      } finally {
+        structureCursor.close();
+      }
+    }
+    entry.hasRowid = hasRowid;
+    return hasRowid;
+  }
+
+  private long queryNumEntries(
+      SupportSQLiteDatabase database, String table, FlipperCancellationToken cancellationToken) {
+    Cursor cursor = query(database, "SELECT COUNT(*) FROM " + table, null, cancellationToken);
     try {
-      database.close();
-    } catch (IOException e) {
-      Log.e(TAG, "Failed to close SQLite database", e);
+      cursor.moveToFirst();
+      return cursor.getLong(0);
+    } finally {
+      cursor.close();
     }
   }
 
@@ -382,5 +729,40 @@ public class SqliteDatabaseDriver extends DatabaseDriver<SqliteDatabaseDescripto
     public String name() {
       return file.getName();
     }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof SqliteDatabaseDescriptor
+          && file.equals(((SqliteDatabaseDescriptor) o).file);
+    }
+
+    @Override
+    public int hashCode() {
+      return file.hashCode();
+    }
+  }
+
+  private static final class SchemaVersion {
+    final long length;
+    final long lastModified;
+    final long walLength;
+    final long walLastModified;
+    final long readAtMs;
+    final String version;
+
+    SchemaVersion(
+        long length,
+        long lastModified,
+        long walLength,
+        long walLastModified,
+        long readAtMs,
+        String version) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.walLength = walLength;
+      this.walLastModified = walLastModified;
+      this.readAtMs = readAtMs;
+      this.version = version;
+    }
   }
 }
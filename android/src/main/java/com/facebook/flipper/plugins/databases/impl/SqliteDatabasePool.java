@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.plugins.databases.impl;
+
+import android.database.sqlite.SQLiteException;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps databases open between requests, as the desktop typically sends many in a row for the same
+ * database, such as when paging through a table, and opening one re-reads its schema each time.
+ *
+ * <p>At most a few databases are kept open, the least recently used being closed to make room, and
+ * those not used for a while are closed. A database whose file was deleted or replaced since it was
+ * opened is opened again. Databases in use are only closed once released.
+ *
+ * <p>Databases are opened outside the pool's lock, so that opening one doesn't hold up acquiring
+ * others. Those acquiring a database that is being opened wait for it instead of opening it again.
+ */
+final class SqliteDatabasePool {
+
+  static final int DEFAULT_MAX_SIZE = 4;
+  static final long DEFAULT_IDLE_TIMEOUT_MS = 30 * 1000;
+
+  private static final String TAG = "SqliteDatabasePool";
+
+  private static Handler sHandler;
+
+  private static final class PooledDatabase {
+    final File file;
+    final SupportSQLiteDatabase database;
+    final long inode;
+    int users;
+    long lastUsedMs;
+    boolean closeOnRelease;
+
+    PooledDatabase(File file, SupportSQLiteDatabase database, long inode) {
+      this.file = file;
+      this.database = database;
+      this.inode = inode;
+    }
+  }
+
+  private final SqliteDatabaseConnectionProvider mConnectionProvider;
+  private final int mMaxSize;
+  private final long mIdleTimeoutMs;
+  /** In order of use, least recent first. */
+  private final LinkedHashMap<File, PooledDatabase> mDatabases =
+      new LinkedHashMap<>(8, 0.75f, true);
+  /** Databases taken out of the pool while in use, to close once released. */
+  private final List<PooledDatabase> mRetired = new ArrayList<>();
+  /** Files of the databases being opened. */
+  private final Set<File> mOpening = new HashSet<>();
+  private boolean mEvictionScheduled = false;
+
+  private final Runnable mEvictRunnable =
+      new Runnable() {
+        @Override
+        public void run() {
+          synchronized (SqliteDatabasePool.this) {
+            mEvictionScheduled = false;
+            evictIdle(SystemClock.uptimeMillis());
+            scheduleEviction();
+          }
+        }
+      };
+
+  SqliteDatabasePool(SqliteDatabaseConnectionProvider connectionProvider) {
+    this(connectionProvider, DEFAULT_MAX_SIZE, DEFAULT_IDLE_TIMEOUT_MS);
+  }
+
+  SqliteDatabasePool(
+      SqliteDatabaseConnectionProvider connectionProvider, int maxSize, long idleTimeoutMs) {
+    mConnectionProvider = connectionProvider;
+    mMaxSize = maxSize;
+    mIdleTimeoutMs = idleTimeoutMs;
+  }
+
+  /** Returns the open database for the file, which must be given back with {@link #release}. */
+  SupportSQLiteDatabase acquire(File file) throws SQLiteException {
+    synchronized (this) {
+      boolean interrupted = false;
+      try {
+        while (true) {
+          final PooledDatabase pooled = getPooled(file);
+          if (pooled != null) {
+            pooled.users++;
+            return pooled.database;
+          }
+          if (mOpening.add(file)) {
+            break;
+          }
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    PooledDatabase pooled = null;
+    try {
+      pooled = new PooledDatabase(file, mConnectionProvider.openDatabase(file), inodeOf(file));
+    } finally {
+      synchronized (this) {
+        mOpening.remove(file);
+        if (pooled != null) {
+          pooled.users++;
+          mDatabases.put(file, pooled);
+          trim();
+        }
+        // Those waiting for it open it themselves if it failed to open.
+        notifyAll();
+      }
+    }
+    return pooled.database;
+  }
+
+  synchronized void release(SupportSQLiteDatabase database) {
+    final PooledDatabase pooled = find(database);
+    if (pooled == null) {
+      return;
+    }
+    pooled.users--;
+    pooled.lastUsedMs = SystemClock.uptimeMillis();
+    if (pooled.users == 0) {
+      if (pooled.closeOnRelease) {
+        mRetired.remove(pooled);
+        close(pooled);
+      } else {
+        trim();
+        scheduleEviction();
+      }
+    }
+  }
+
+  /** Closes all databases, those in use once released. */
+  synchronized void closeAll() {
+    for (PooledDatabase pooled : mDatabases.values()) {
+      retire(pooled);
+    }
+    mDatabases.clear();
+  }
+
+  /** Closes the databases that weren't used since the idle timeout. */
+  synchronized void evictIdle(long nowMs) {
+    final Iterator<PooledDatabase> iterator = mDatabases.values().iterator();
+    while (iterator.hasNext()) {
+      final PooledDatabase pooled = iterator.next();
+      if (pooled.users == 0 && nowMs - pooled.lastUsedMs >= mIdleTimeoutMs) {
+        iterator.remove();
+        close(pooled);
+      }
+    }
+  }
+
+  synchronized int size() {
+    return mDatabases.size();
+  }
+
+  /** Closes the least recently used databases not in use while over the size limit. */
+  private void trim() {
+    final Iterator<PooledDatabase> iterator = mDatabases.values().iterator();
+    int excess = mDatabases.size() - mMaxSize;
+    while (excess > 0 && iterator.hasNext()) {
+      final PooledDatabase pooled = iterator.next();
+      if (pooled.users == 0) {
+        iterator.remove();
+        close(pooled);
+        excess--;
+      }
+    }
+  }
+
+  /** Returns the database for the file if pooled, and retires it if its file was replaced. */
+  private @Nullable PooledDatabase getPooled(File file) {
+    final PooledDatabase pooled = mDatabases.get(file);
+    if (pooled != null && !isSameFile(pooled)) {
+      mDatabases.remove(file);
+      retire(pooled);
+      return null;
+    }
+    return pooled;
+  }
+
+  private void scheduleEviction() {
+    if (mEvictionScheduled || mDatabases.isEmpty()) {
+      return;
+    }
+    mEvictionScheduled = true;
+    getHandler().postDelayed(mEvictRunnable, mIdleTimeoutMs);
+  }
+
+  private void retire(PooledDatabase pooled) {
+    if (pooled.users == 0) {
+      close(pooled);
+    } else {
+      pooled.closeOnRelease = true;
+      mRetired.add(pooled);
+    }
+  }
+
+  private PooledDatabase find(SupportSQLiteDatabase database) {
+    for (PooledDatabase pooled : mDatabases.values()) {
+      if (pooled.database == database) {
+        return pooled;
+      }
+    }
+    for (PooledDatabase pooled : mRetired) {
+      if (pooled.database == database) {
+        return pooled;
+      }
+    }
+    return null;
+  }
+
+  private static void close(PooledDatabase pooled) {
+    try {
+      pooled.database.close();
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to close SQLite database", e);
+    }
+  }
+
+  private static boolean isSameFile(PooledDatabase pooled) {
+    if (!pooled.file.exists()) {
+      return false;
+    }
+    // Without an inode, a file replaced in place can't be told from the original. Neither can one
+    // deleted and created again right away, if it got the same inode back.
+    return pooled.inode == 0 || inodeOf(pooled.file) == pooled.inode;
+  }
+
+  private static long inodeOf(File file) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+      return 0;
+    }
+    try {
+      return Os.stat(file.getPath()).st_ino;
+    } catch (ErrnoException e) {
+      return 0;
+    }
+  }
+
+  /** The thread databases are closed on, and other background work of the driver runs. */
+  static synchronized Handler getHandler() {
+    if (sHandler == null) {
+      final HandlerThread thread =
+          new HandlerThread("FlipperDatabasesThread", Process.THREAD_PRIORITY_BACKGROUND);
+      thread.start();
+      sHandler = new Handler(thread.getLooper());
+    }
+    return sHandler;
+  }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.plugins.databases.impl;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import android.os.FileObserver;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tells which tables of the databases changed, for the desktop to refresh those it shows rather
+ * than poll them all.
+ *
+ * <p>Writes made by the app are seen through their database file and write-ahead log changing, and
+ * confirmed by the data version of the database, which checkpoints and other writes that don't
+ * change any data leave alone. SQLite doesn't say which tables a write touched, so the tables the
+ * desktop read last are taken to have changed, unless told otherwise through {@link
+ * #notifyChanged}. Changes are coalesced over {@link #DEBOUNCE_MS}.
+ *
+ * <p>Each connection counts data versions of its own, so the connections of the databases the
+ * desktop reads are kept from the pool until it stops watching, for the pool not to close them
+ * while idle. Only the few databases read last are watched.
+ */
+final class SqliteDatabaseWatcher {
+
+  static final long DEBOUNCE_MS = 300;
+
+  private static final String TAG = "SqliteDatabaseWatcher";
+  private static final String WAL_SUFFIX = "-wal";
+  private static final int MAX_VIEWED_DATABASES = 4;
+  private static final int MAX_READ_TABLES = 16;
+  /**
+   * Not {@link FileObserver#CLOSE_WRITE}, which SQLite causes whenever a connection is closed, as
+   * it opens database files for writing even to read them.
+   */
+  private static final int EVENTS = FileObserver.MODIFY | FileObserver.MOVED_TO;
+
+  interface Listener {
+    void onTablesChanged(File databaseFile, Set<String> tables);
+  }
+
+  /** A database the desktop read tables of. */
+  private static final class Viewed {
+    final SupportSQLiteDatabase database;
+    /** Most recently read last. */
+    final Set<String> tables = new LinkedHashSet<>();
+    /** The data version last read on the connection, or -1 if not supported. */
+    long dataVersion;
+
+    Viewed(SupportSQLiteDatabase database, long dataVersion) {
+      this.database = database;
+      this.dataVersion = dataVersion;
+    }
+  }
+
+  private final SqliteDatabasePool mDatabasePool;
+  private final Listener mListener;
+
+  /** One observer per directory, as the write-ahead log comes and goes next to its database. */
+  private final Map<File, FileObserver> mObservers = new HashMap<>();
+  /** The databases watched, by the name of their files. */
+  private final Map<File, Map<String, File>> mWatched = new HashMap<>();
+  /** In order of reading, least recent first. */
+  private final LinkedHashMap<File, Viewed> mViewed = new LinkedHashMap<>(8, 0.75f, true);
+  /** Databases whose files changed, for their data version to be checked. */
+  private final Set<File> mChangedFiles = new LinkedHashSet<>();
+  /** Tables known to have changed. */
+  private final Map<File, Set<String>> mChangedTables = new LinkedHashMap<>();
+  private boolean mStarted = false;
+  private boolean mFlushScheduled = false;
+
+  private final Runnable mFlushRunnable =
+      new Runnable() {
+        @Override
+        public void run() {
+          flush();
+        }
+      };
+
+  SqliteDatabaseWatcher(SqliteDatabasePool databasePool, Listener listener) {
+    mDatabasePool = databasePool;
+    mListener = listener;
+  }
+
+  /** Starts taking note of the databases and tables to watch, until {@link #stop}. */
+  synchronized void start() {
+    mStarted = true;
+  }
+
+  /** Starts watching the files of a database. */
+  synchronized void watch(File databaseFile) {
+    final File directory = databaseFile.getParentFile();
+    if (!mStarted || directory == null) {
+      return;
+    }
+    Map<String, File> databases = mWatched.get(directory);
+    if (databases == null) {
+      databases = new HashMap<>();
+      mWatched.put(directory, databases);
+    }
+    databases.put(databaseFile.getName(), databaseFile);
+    if (!mObservers.containsKey(directory)) {
+      final FileObserver observer = new DirectoryObserver(directory);
+      mObservers.put(directory, observer);
+      observer.startWatching();
+    }
+  }
+
+  /** Remembers that the desktop read a table, for it to be told when the database changes. */
+  void onTableRead(File databaseFile, String table) {
+    synchronized (this) {
+      final Viewed viewed = mViewed.get(databaseFile);
+      if (!mStarted || viewed != null) {
+        if (viewed != null) {
+          addTable(viewed, table);
+        }
+        return;
+      }
+    }
+
+    // Taken from the pool outside the lock, as it may have to open the database.
+    SupportSQLiteDatabase database;
+    final long dataVersion;
+    try {
+      database = mDatabasePool.acquire(databaseFile);
+    } catch (SQLiteException e) {
+      Log.e(TAG, "Failed to open " + databaseFile, e);
+      return;
+    }
+    try {
+      dataVersion = queryDataVersion(database);
+    } catch (SQLiteException e) {
+      Log.e(TAG, "Failed to read the data version of " + databaseFile, e);
+      mDatabasePool.release(database);
+      return;
+    }
+
+    final List<SupportSQLiteDatabase> released = new ArrayList<>();
+    synchronized (this) {
+      Viewed viewed = mViewed.get(databaseFile);
+      if (mStarted && viewed == null) {
+        viewed = new Viewed(database, dataVersion);
+        mViewed.put(databaseFile, viewed);
+        database = null;
+        final Iterator<Viewed> iterator = mViewed.values().iterator();
+        for (int excess = mViewed.size() - MAX_VIEWED_DATABASES; excess > 0; excess--) {
+          released.add(iterator.next().database);
+          iterator.remove();
+        }
+      }
+      if (viewed != null) {
+        addTable(viewed, table);
+      }
+    }
+    if (database != null) {
+      released.add(database);
+    }
+    for (SupportSQLiteDatabase unused : released) {
+      mDatabasePool.release(unused);
+    }
+  }
+
+  /**
+   * Tells that tables of a database changed, or that any may have if null, such as after writing to
+   * it through the pool's connection, whose data version doesn't change for its own writes.
+   */
+  synchronized void notifyChanged(File databaseFile, @Nullable Collection<String> tables) {
+    Set<String> changed = mChangedTables.get(databaseFile);
+    if (changed == null) {
+      changed = new LinkedHashSet<>();
+      mChangedTables.put(databaseFile, changed);
+    }
+    if (tables != null) {
+      changed.addAll(tables);
+    } else {
+      final Viewed viewed = mViewed.get(databaseFile);
+      if (viewed != null) {
+        changed.addAll(viewed.tables);
+      }
+    }
+    scheduleFlush();
+  }
+
+  /** Stops watching all databases and forgets what was read. */
+  void stop() {
+    final List<Viewed> viewed;
+    synchronized (this) {
+      mStarted = false;
+      for (FileObserver observer : mObservers.values()) {
+        observer.stopWatching();
+      }
+      mObservers.clear();
+      mWatched.clear();
+      viewed = new ArrayList<>(mViewed.values());
+      mViewed.clear();
+      mChangedFiles.clear();
+      mChangedTables.clear();
+      SqliteDatabasePool.getHandler().removeCallbacks(mFlushRunnable);
+      mFlushScheduled = false;
+    }
+    for (Viewed database : viewed) {
+      mDatabasePool.release(database.database);
+    }
+  }
+
+  /** Tells the listener about the changes seen since the last flush. */
+  void flush() {
+    final List<File> changedFiles;
+    synchronized (this) {
+      mFlushScheduled = false;
+      changedFiles = new ArrayList<>(mChangedFiles);
+      mChangedFiles.clear();
+    }
+    // Read outside the lock, as reading may wait for the app's own writes.
+    for (File databaseFile : changedFiles) {
+      if (hasDataChanged(databaseFile)) {
+        notifyChanged(databaseFile, null);
+      }
+    }
+
+    final Map<File, Set<String>> changedTables;
+    synchronized (this) {
+      SqliteDatabasePool.getHandler().removeCallbacks(mFlushRunnable);
+      mFlushScheduled = false;
+      changedTables = new LinkedHashMap<>(mChangedTables);
+      mChangedTables.clear();
+      // Files that changed while their data versions were read are checked on the next flush.
+      if (!mChangedFiles.isEmpty()) {
+        scheduleFlush();
+      }
+    }
+    for (Map.Entry<File, Set<String>> entry : changedTables.entrySet()) {
+      if (!entry.getValue().isEmpty()) {
+        mListener.onTablesChanged(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /** Tells that a file of a watched directory changed, as if seen by its observer. */
+  synchronized void onFileChanged(File directory, @Nullable String name) {
+    final Map<String, File> databases = mWatched.get(directory);
+    if (name == null || databases == null) {
+      return;
+    }
+    if (name.endsWith(WAL_SUFFIX)) {
+      name = name.substring(0, name.length() - WAL_SUFFIX.length());
+    }
+    final File databaseFile = databases.get(name);
+    if (databaseFile != null && mViewed.containsKey(databaseFile)) {
+      mChangedFiles.add(databaseFile);
+      scheduleFlush();
+    }
+  }
+
+  private static void addTable(Viewed viewed, String table) {
+    viewed.tables.remove(table);
+    viewed.tables.add(table);
+    if (viewed.tables.size() > MAX_READ_TABLES) {
+      final Iterator<String> iterator = viewed.tables.iterator();
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  /** Whether another connection wrote to the database since it was last checked. */
+  private boolean hasDataChanged(File databaseFile) {
+    final Viewed viewed;
+    synchronized (this) {
+      viewed = mViewed.get(databaseFile);
+    }
+    if (viewed == null) {
+      return false;
+    }
+    final long dataVersion;
+    try {
+      dataVersion = queryDataVersion(viewed.database);
+    } catch (SQLiteException | IllegalStateException e) {
+      // Also thrown if the connection was given back to the pool and closed meanwhile.
+      Log.e(TAG, "Failed to read the data version of " + databaseFile, e);
+      return false;
+    }
+    synchronized (this) {
+      if (dataVersion < 0) {
+        // Not supported, so any change to the files counts.
+        return true;
+      }
+      final boolean changed = dataVersion != viewed.dataVersion;
+      viewed.dataVersion = dataVersion;
+      return changed;
+    }
+  }
+
+  private static long queryDataVersion(SupportSQLiteDatabase database) {
+    final Cursor cursor = database.query("PRAGMA data_version");
+    try {
+      return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  private void scheduleFlush() {
+    if (!mFlushScheduled) {
+      mFlushScheduled = true;
+      SqliteDatabasePool.getHandler().postDelayed(mFlushRunnable, DEBOUNCE_MS);
+    }
+  }
+
+  private final class DirectoryObserver extends FileObserver {
+    private final File mDirectory;
+
+    DirectoryObserver(File directory) {
+      super(directory.getPath(), EVENTS);
+      mDirectory = directory;
+    }
+
+    @Override
+    public void onEvent(int event, @Nullable String path) {
+      onFileChanged(mDirectory, path);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.plugins.databases.impl;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What is known about the tables the desktop pages through, so that each page doesn't have to
+ * count the rows of the table again, nor skip over the rows of all the pages before it.
+ *
+ * <p>Entries are valid for as long as the database isn't written to, which {@code PRAGMA
+ * data_version} tells for writes made through other connections. Writes made through the same
+ * connection don't change it, so the driver invalidates the database's entries after those.
+ */
+final class SqliteTableCache {
+
+  private static final int MAX_ENTRIES = 64;
+
+  static final class Entry {
+    final SupportSQLiteDatabase database;
+    final long dataVersion;
+    /** Whether pages can be read by rowid, or null if not checked yet. */
+    Boolean hasRowid;
+    /** The row count, or -1 if not counted yet. */
+    long count = -1;
+    /** Where the page after the last one read starts, or -1 if none was read by rowid. */
+    int nextStart = -1;
+    /** The rowid of the last row read. */
+    long lastRowid;
+
+    Entry(SupportSQLiteDatabase database, long dataVersion) {
+      this.database = database;
+      this.dataVersion = dataVersion;
+    }
+  }
+
+  private final LinkedHashMap<String, Entry> mEntries =
+      new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+
+  /**
+   * Returns the entry of the table, empty if the database was written to or opened again since it
+   * was last used. Where the data version isn't supported, it is negative and the row count can't
+   * be trusted.
+   */
+  synchronized Entry get(
+      SupportSQLiteDatabase database, File file, String table, long dataVersion) {
+    final String key = file.getPath() + '\u0000' + table;
+    Entry entry = mEntries.get(key);
+    if (entry == null || entry.database != database || entry.dataVersion != dataVersion) {
+      entry = new Entry(database, dataVersion);
+      mEntries.put(key, entry);
+    }
+    return entry;
+  }
+
+  /** Forgets the entries of a database, after writing to it. */
+  synchronized void invalidate(File file) {
+    final String prefix = file.getPath() + '\u0000';
+    final Iterator<String> keys = mEntries.keySet().iterator();
+    while (keys.hasNext()) {
+      if (keys.next().startsWith(prefix)) {
+        keys.remove();
+      }
+    }
+  }
+}
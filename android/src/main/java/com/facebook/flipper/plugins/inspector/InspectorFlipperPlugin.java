@@ -18,12 +18,14 @@ import android.view.ViewGroup;
 import android.view.accessibility.AccessibilityEvent;
 import com.facebook.flipper.core.ErrorReportingRunnable;
 import com.facebook.flipper.core.FlipperArray;
+import com.facebook.flipper.core.FlipperCancellationToken;
 import com.facebook.flipper.core.FlipperConnection;
 import com.facebook.flipper.core.FlipperDynamic;
 import com.facebook.flipper.core.FlipperObject;
 import com.facebook.flipper.core.FlipperPlugin;
 import com.facebook.flipper.core.FlipperReceiver;
 import com.facebook.flipper.core.FlipperResponder;
+import com.facebook.flipper.core.FlipperSendQueuePolicy;
 import com.facebook.flipper.plugins.common.MainThreadFlipperReceiver;
 import com.facebook.flipper.plugins.inspector.descriptors.ApplicationDescriptor;
 import java.io.ByteArrayOutputStream;
@@ -31,6 +33,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import javax.annotation.Nullable;
 
 public class InspectorFlipperPlugin implements FlipperPlugin {
@@ -141,6 +144,7 @@ public class InspectorFlipperPlugin implements FlipperPlugin {
   public void onConnect(FlipperConnection connection) throws Exception {
     mConnection = connection;
     mDescriptorMapping.onConnect(connection);
+    connection.setSendQueuePolicy(FlipperSendQueuePolicy.COALESCING);
 
     connection.receive("getRoot", mGetRoot);
     connection.receive("getAllNodes", mGetAllNodes);
@@ -228,9 +232,14 @@ public class InspectorFlipperPlugin implements FlipperPlugin {
           final FlipperObject.Builder result = new FlipperObject.Builder();
           final FlipperObject.Builder AXResults = new FlipperObject.Builder();
 
+          final FlipperCancellationToken token = responder.getCancellationToken();
           String rootID = trackObject(mApplication);
-          populateAllAXNodes(rootID, AXResults);
-          populateAllNodes(rootID, result);
+          try {
+            populateAllAXNodes(rootID, AXResults, token);
+            populateAllNodes(rootID, result, token);
+          } catch (CancellationException e) {
+            return;
+          }
           final FlipperObject output =
               new FlipperObject.Builder()
                   .put(
@@ -273,21 +282,27 @@ public class InspectorFlipperPlugin implements FlipperPlugin {
         }
       };
 
-  void populateAllNodes(String rootNode, FlipperObject.Builder builder) throws Exception {
+  void populateAllNodes(
+      String rootNode, FlipperObject.Builder builder, FlipperCancellationToken token)
+      throws Exception {
+    throwIfCancelled(token);
     FlipperObject object = getNode(rootNode);
     builder.put(rootNode, object);
     FlipperArray children = object.getArray("children");
     for (int i = 0, count = children.length(); i < count; ++i) {
-      populateAllNodes(children.getString(i), builder);
+      populateAllNodes(children.getString(i), builder, token);
     }
   }
 
-  void populateAllAXNodes(String rootNode, FlipperObject.Builder builder) throws Exception {
+  void populateAllAXNodes(
+      String rootNode, FlipperObject.Builder builder, FlipperCancellationToken token)
+      throws Exception {
+    throwIfCancelled(token);
     FlipperObject object = getAXNode(rootNode);
     builder.put(rootNode, object);
     FlipperArray children = object.getArray("children");
     for (int i = 0, count = children.length(); i < count; ++i) {
-      populateAllAXNodes(children.getString(i), builder);
+      populateAllAXNodes(children.getString(i), builder, token);
     }
   }
 
@@ -443,10 +458,14 @@ public class InspectorFlipperPlugin implements FlipperPlugin {
               ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
               bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteArrayOutputStream);
               byte[] byteArray = byteArrayOutputStream.toByteArray();
-              final String base64 = Base64.encodeToString(byteArray, Base64.DEFAULT);
+              final FlipperConnection connection = mConnection;
+              final String snapshot =
+                  connection != null
+                      ? connection.attachBlob(byteArray)
+                      : Base64.encodeToString(byteArray, Base64.DEFAULT);
 
               responder.success(
-                  new FlipperObject.Builder().put("id", nodeId).put("snapshot", base64).build());
+                  new FlipperObject.Builder().put("id", nodeId).put("snapshot", snapshot).build());
             } else {
               throw new Exception("An error occurred whilst trying to encode snapshot");
             }
@@ -525,8 +544,17 @@ public class InspectorFlipperPlugin implements FlipperPlugin {
           final String query = params.getString("query");
           final boolean axEnabled = params.getBoolean("axEnabled");
 
-          final SearchResultNode matchTree =
-              searchTree(query.toLowerCase(), mApplication, axEnabled);
+          final SearchResultNode matchTree;
+          try {
+            matchTree =
+                searchTree(
+                    query.toLowerCase(),
+                    mApplication,
+                    axEnabled,
+                    responder.getCancellationToken());
+          } catch (CancellationException e) {
+            return;
+          }
           final FlipperObject results = matchTree == null ? null : matchTree.toFlipperObject();
           final FlipperObject response =
               new FlipperObject.Builder().put("results", results).put("query", query).build();
@@ -621,22 +649,39 @@ public class InspectorFlipperPlugin implements FlipperPlugin {
     }
   }
 
+  private static void throwIfCancelled(FlipperCancellationToken token) {
+    if (token.isCancelled()) {
+      throw new CancellationException();
+    }
+  }
+
   private boolean hasAXNode(FlipperObject node) {
     FlipperObject extraInfo = node.getObject("extraInfo");
     return extraInfo != null && extraInfo.getBoolean("linkedNode");
   }
 
   public SearchResultNode searchTree(String query, Object obj, boolean axEnabled) throws Exception {
+    return searchTree(query, obj, axEnabled, FlipperCancellationToken.NONE);
+  }
+
+  /**
+   * Like {@link #searchTree(String, Object, boolean)}, but throws a {@link CancellationException}
+   * as soon as the token is cancelled rather than walking the rest of the hierarchy.
+   */
+  public SearchResultNode searchTree(
+      String query, Object obj, boolean axEnabled, FlipperCancellationToken token)
+      throws Exception {
     if (obj == null) {
       return null;
     }
+    throwIfCancelled(token);
     final NodeDescriptor descriptor = descriptorForObject(obj);
     List<SearchResultNode> childTrees = null;
     boolean isMatch = descriptor.matches(query, obj);
 
     for (int i = 0; i < descriptor.getChildCount(obj); i++) {
       Object child = descriptor.getChildAt(obj, i);
-      SearchResultNode childNode = searchTree(query, child, axEnabled);
+      SearchResultNode childNode = searchTree(query, child, axEnabled, token);
       if (childNode != null) {
         if (childTrees == null) {
           childTrees = new ArrayList<>();
@@ -59,12 +59,20 @@ public abstract class NodeDescriptor<T> {
       new ErrorReportingRunnable(mConnection) {
         @Override
         protected void runOrThrow() throws Exception {
-          FlipperArray array =
-              new FlipperArray.Builder()
-                  .put(new FlipperObject.Builder().put("id", getId(node)).build())
+          final String id = getId(node);
+          // The desktop can subscribe to the nodes it shows, such as those the user expanded.
+          if (!mConnection.isSubscribed("invalidate", Collections.singletonMap("id", id))) {
+            return;
+          }
+          FlipperObject params =
+              new FlipperObject.StreamingBuilder()
+                  .put(
+                      "nodes",
+                      new FlipperArray.StreamingBuilder()
+                          .put(new FlipperObject.StreamingBuilder().put("id", id)))
                   .build();
-          FlipperObject params = new FlipperObject.Builder().put("nodes", array).build();
-          mConnection.send("invalidate", params);
+          // The desktop re-queries the node either way, so one waiting invalidation is enough.
+          mConnection.trySend("invalidate", params, id);
         }
       }.run();
     }
@@ -80,11 +88,13 @@ public abstract class NodeDescriptor<T> {
       new ErrorReportingRunnable(mConnection) {
         @Override
         protected void runOrThrow() throws Exception {
-          FlipperArray array =
-              new FlipperArray.Builder()
-                  .put(new FlipperObject.Builder().put("id", getId(node)).build())
+          FlipperObject params =
+              new FlipperObject.StreamingBuilder()
+                  .put(
+                      "nodes",
+                      new FlipperArray.StreamingBuilder()
+                          .put(new FlipperObject.StreamingBuilder().put("id", getId(node))))
                   .build();
-          FlipperObject params = new FlipperObject.Builder().put("nodes", array).build();
           mConnection.send("invalidateAX", params);
         }
       }.run();
@@ -14,10 +14,12 @@ import android.content.SharedPreferences;
 import android.os.Build;
 import android.preference.PreferenceManager;
 import com.facebook.flipper.core.FlipperConnection;
+import com.facebook.flipper.core.FlipperExecutionPolicy;
 import com.facebook.flipper.core.FlipperObject;
 import com.facebook.flipper.core.FlipperPlugin;
 import com.facebook.flipper.core.FlipperReceiver;
 import com.facebook.flipper.core.FlipperResponder;
+import com.facebook.flipper.core.FlipperSendQueuePolicy;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.util.ArrayList;
@@ -31,6 +33,14 @@ public class SharedPreferencesFlipperPlugin implements FlipperPlugin {
 
   private static final String SHARED_PREFS_DIR = "shared_prefs";
   private static final String XML_SUFFIX = ".xml";
+
+  /**
+   * Preferences are read from disk on first use, so calls run off Flipper's callback thread. Edits
+   * are applied in the order they arrived, so they run one at a time.
+   */
+  private static final FlipperExecutionPolicy PREFERENCES_POLICY =
+      FlipperExecutionPolicy.serial("sharedpreferences");
+
   private FlipperConnection mConnection;
   private final Map<SharedPreferences, SharedPreferencesDescriptor> mSharedPreferences;
   private final SharedPreferences.OnSharedPreferenceChangeListener
@@ -46,7 +56,8 @@ public class SharedPreferencesFlipperPlugin implements FlipperPlugin {
               if (descriptor == null) {
                 return;
               }
-              mConnection.send(
+              // A later change of the same preference replaces this one if it is still queued.
+              mConnection.trySend(
                   "sharedPreferencesChange",
                   new FlipperObject.Builder()
                       .put("preferences", descriptor.name)
@@ -54,7 +65,8 @@ public class SharedPreferencesFlipperPlugin implements FlipperPlugin {
                       .put("deleted", !sharedPreferences.contains(key))
                       .put("time", System.currentTimeMillis())
                       .put("value", sharedPreferences.getAll().get(key))
-                      .build());
+                      .build(),
+                  descriptor.name + '/' + key);
             }
           };
 
@@ -175,6 +187,7 @@ public class SharedPreferencesFlipperPlugin implements FlipperPlugin {
   @Override
   public void onConnect(FlipperConnection connection) {
     mConnection = connection;
+    connection.setSendQueuePolicy(FlipperSendQueuePolicy.COALESCING);
 
     connection.receive(
         "getAllSharedPreferences",
@@ -188,7 +201,8 @@ public class SharedPreferencesFlipperPlugin implements FlipperPlugin {
             }
             responder.success(builder.build());
           }
-        });
+        },
+        PREFERENCES_POLICY);
 
     connection.receive(
         "getSharedPreferences",
@@ -200,7 +214,8 @@ public class SharedPreferencesFlipperPlugin implements FlipperPlugin {
               responder.success(getFlipperObjectFor(name));
             }
           }
-        });
+        },
+        PREFERENCES_POLICY);
 
     connection.receive(
         "setSharedPreference",
@@ -232,7 +247,8 @@ public class SharedPreferencesFlipperPlugin implements FlipperPlugin {
 
             responder.success(getFlipperObjectFor(sharedPreferencesName));
           }
-        });
+        },
+        PREFERENCES_POLICY);
 
     connection.receive(
         "deleteSharedPreference",
@@ -248,7 +264,8 @@ public class SharedPreferencesFlipperPlugin implements FlipperPlugin {
             editor.apply();
             responder.success(getFlipperObjectFor(sharedPreferencesName));
           }
-        });
+        },
+        PREFERENCES_POLICY);
   }
 
   @Override
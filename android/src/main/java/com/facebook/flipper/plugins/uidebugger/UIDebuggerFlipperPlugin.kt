@@ -39,6 +39,20 @@ class UIDebuggerFlipperPlugin(val context: UIDContext) : FlipperPlugin {
 
   @Throws(Exception::class)
   override fun onConnect(connection: FlipperConnection) {
+    MetadataRegister.reset()
+    setUp(connection, sendInitEvent = true)
+  }
+
+  /**
+   * The desktop still has the init event and the metadata sent on the previous connection, so only
+   * metadata registered since is sent.
+   */
+  @Throws(Exception::class)
+  override fun onResume(connection: FlipperConnection) {
+    setUp(connection, sendInitEvent = false)
+  }
+
+  private fun setUp(connection: FlipperConnection, sendInitEvent: Boolean) {
     this.context.connectionRef.connection = connection
     this.context.bitmapPool.makeReady()
 
@@ -130,14 +144,16 @@ class UIDebuggerFlipperPlugin(val context: UIDContext) : FlipperPlugin {
       }
     }
 
-    connection.send(
-        InitEvent.name,
-        INIT_EVENT_JSON.encodeToString(
-            InitEvent.serializer(),
-            InitEvent(
-                ApplicationRefDescriptor.getId(context.applicationRef),
-                context.frameworkEventMetadata,
-                context.customActionGroups)))
+    if (sendInitEvent) {
+      connection.send(
+          InitEvent.name,
+          INIT_EVENT_JSON.encodeToString(
+              InitEvent.serializer(),
+              InitEvent(
+                  ApplicationRefDescriptor.getId(context.applicationRef),
+                  context.frameworkEventMetadata,
+                  context.customActionGroups)))
+    }
 
     connection.send(
         MetadataUpdateEvent.name,
@@ -155,8 +171,6 @@ class UIDebuggerFlipperPlugin(val context: UIDContext) : FlipperPlugin {
   override fun onDisconnect() {
     this.context.connectionRef.connection = null
 
-    MetadataRegister.reset()
-
     context.decorViewTracker.stop()
     context.updateQueue.stop()
 
@@ -9,8 +9,6 @@ package com.facebook.flipper.plugins.uidebugger.core
 
 import android.annotation.SuppressLint
 import android.graphics.Bitmap
-import android.util.Base64
-import android.util.Base64OutputStream
 import android.util.Log
 import com.facebook.flipper.plugins.uidebugger.LogTag
 import com.facebook.flipper.plugins.uidebugger.descriptors.Id
@@ -111,10 +109,13 @@ class UpdateQueue(val context: UIDContext) {
 
     var snapshot: Snapshot? = null
     if (update.snapshotBitmap != null) {
-      val stream = ByteArrayOutputStream()
-      val base64Stream = Base64OutputStream(stream, Base64.DEFAULT)
-      update.snapshotBitmap.bitmap.compress(Bitmap.CompressFormat.PNG, 100, base64Stream)
-      snapshot = Snapshot(update.snapshotNode, stream.toString())
+      val connection = context.connectionRef.connection
+      if (connection != null) {
+        val stream = ByteArrayOutputStream()
+        update.snapshotBitmap.bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream)
+        // sent as a binary attachment when the desktop supports it, base64 encoded otherwise
+        snapshot = Snapshot(update.snapshotNode, connection.attachBlob(stream.toByteArray()))
+      }
       update.snapshotBitmap.readyForReuse()
     }
 
@@ -8,6 +8,7 @@
 package com.facebook.flipper.testing;
 
 import com.facebook.flipper.core.FlipperArray;
+import com.facebook.flipper.core.FlipperCancellationToken;
 import com.facebook.flipper.core.FlipperObject;
 import com.facebook.flipper.core.FlipperResponder;
 import java.util.LinkedList;
@@ -16,6 +17,7 @@ import java.util.List;
 public class FlipperResponderMock implements FlipperResponder {
   public final List<Object> successes = new LinkedList<>();
   public final List<FlipperObject> errors = new LinkedList<>();
+  public final FlipperCancellationToken cancellationToken = new FlipperCancellationToken();
 
   @Override
   public void success(FlipperObject response) {
@@ -36,4 +38,9 @@ public class FlipperResponderMock implements FlipperResponder {
   public void error(FlipperObject response) {
     errors.add(response);
   }
+
+  @Override
+  public FlipperCancellationToken getCancellationToken() {
+    return cancellationToken;
+  }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.flipper.core.FlipperConnectionStats;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class ConnectionProbeTest {
+
+  private static final long SECOND = 1000000000L;
+
+  private static class FakeLink implements ConnectionProbe.Link {
+    long mBufferedBytes = 0;
+
+    @Override
+    public long getBufferedBytes() {
+      return mBufferedBytes;
+    }
+
+    @Override
+    public void sendPing(ByteBuffer payload) {}
+  }
+
+  @Test
+  public void throughputIsOnlyMeasuredWhileDataIsWaiting() throws Exception {
+    final FakeLink link = new FakeLink();
+    final AtomicLong queued = new AtomicLong();
+    final ConnectionProbe probe = new ConnectionProbe(link, queued);
+    probe.sample(SECOND);
+
+    // Everything queued went out: the link was idle.
+    queued.addAndGet(1000);
+    probe.sample(2 * SECOND);
+    FlipperConnectionStats stats = probe.snapshot();
+    assertEquals(1000, stats.getSendRate());
+    assertEquals(0, stats.getThroughput());
+
+    // 5000 bytes queued, 4000 left waiting.
+    queued.addAndGet(5000);
+    link.mBufferedBytes = 4000;
+    probe.sample(3 * SECOND);
+
+    // 2000 more queued, 3000 left waiting: 3000 written while data was waiting all along.
+    queued.addAndGet(2000);
+    link.mBufferedBytes = 3000;
+    probe.sample(4 * SECOND);
+    stats = probe.snapshot();
+    assertEquals(3000, stats.getSendRate());
+    assertEquals(3000, stats.getThroughput());
+    assertEquals(5000, stats.getBytesSent());
+    assertEquals(3000, stats.getBufferedBytes());
+    assertEquals(4000, stats.getPeakBufferedBytes());
+  }
+
+  @Test
+  public void pongsCarryingTheSendTimeAreTimed() throws Exception {
+    final ConnectionProbe probe = new ConnectionProbe(new FakeLink(), new AtomicLong());
+    final ByteBuffer payload = ByteBuffer.allocate(8);
+    payload.putLong(SECOND);
+    payload.flip();
+    probe.onPong(payload, SECOND + 5000000);
+    // Pongs to the WebSocket client's own pings are empty.
+    probe.onPong(ByteBuffer.allocate(0), 2 * SECOND);
+
+    final FlipperConnectionStats stats = probe.snapshot();
+    assertEquals(5000000, stats.getRoundTripNanos());
+    assertEquals(5000000, stats.getSmoothedRoundTripNanos());
+    assertEquals(1, stats.getRoundTripTimes().getCount());
+  }
+}
@@ -8,6 +8,7 @@
 package com.facebook.flipper.android;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -41,4 +42,17 @@ public class FlipperPropsTest {
     int value = FlipperProps.extractIntFromPropValue("", 0, 1234);
     assertEquals(value, 1234);
   }
+
+  @Test
+  public void shouldParseLocalSocketPrefix() throws Exception {
+    String prefix = FlipperProps.extractLocalSocketPrefix("localabstract:flipper");
+    assertEquals(prefix, "flipper");
+  }
+
+  @Test
+  public void shouldFallbackToTcpForOtherTransports() throws Exception {
+    assertNull(FlipperProps.extractLocalSocketPrefix(""));
+    assertNull(FlipperProps.extractLocalSocketPrefix("tcp"));
+    assertNull(FlipperProps.extractLocalSocketPrefix("localabstract:"));
+  }
 }
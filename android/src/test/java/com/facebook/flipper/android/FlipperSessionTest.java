@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class FlipperSessionTest {
+
+  @Test
+  public void onlyPluginsConnectedBeforeResumeWithinTheWindow() throws Exception {
+    final String id = FlipperSession.getId();
+
+    // A desktop that doesn't know the session.
+    assertFalse(FlipperSession.onOpen("", 1000));
+    assertFalse(FlipperSession.shouldResume("Inspector"));
+    FlipperSession.onClose(2000);
+
+    // The desktop kept the session: plugins connected before resume, new ones connect.
+    assertTrue(FlipperSession.onOpen(id, 3000));
+    assertTrue(FlipperSession.shouldResume("Inspector"));
+    assertFalse(FlipperSession.shouldResume("Network"));
+
+    // A connection without plugins, as for the certificate exchange, doesn't end the session.
+    FlipperSession.onClose(4000);
+    assertFalse(FlipperSession.onOpen("", 5000));
+    FlipperSession.onClose(6000);
+
+    // Both plugins were connected on the last connection with plugins.
+    assertTrue(FlipperSession.onOpen(id, 7000));
+    assertTrue(FlipperSession.shouldResume("Network"));
+    FlipperSession.onClose(8000);
+
+    // Too late, even if the desktop would resume.
+    assertFalse(FlipperSession.onOpen(id, 8000 + FlipperSession.RESUME_WINDOW_MS + 1));
+    assertFalse(FlipperSession.shouldResume("Inspector"));
+  }
+
+  @Test
+  public void doesNotResumeAfterMessagesWereLost() throws Exception {
+    final String id = FlipperSession.getId();
+    final long start = 10 * FlipperSession.RESUME_WINDOW_MS;
+
+    FlipperSession.onOpen("", start);
+    FlipperSession.shouldResume("Inspector");
+    FlipperSession.onClose(start + 1000);
+    // Sent after the connection dropped.
+    FlipperSession.onMessageLost();
+
+    // Not even after a connection without plugins.
+    assertFalse(FlipperSession.onOpen("", start + 2000));
+    FlipperSession.onClose(start + 3000);
+    assertFalse(FlipperSession.onOpen(id, start + 4000));
+    assertFalse(FlipperSession.shouldResume("Inspector"));
+    FlipperSession.onClose(start + 5000);
+
+    // Nothing was lost on the connection that started over.
+    assertTrue(FlipperSession.onOpen(id, start + 6000));
+    assertTrue(FlipperSession.shouldResume("Inspector"));
+  }
+}
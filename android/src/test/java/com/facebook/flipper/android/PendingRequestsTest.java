@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class PendingRequestsTest {
+
+  @Test
+  public void requestIdsAreFoundWithoutParsing() throws Exception {
+    assertEquals(
+        12,
+        PendingRequests.findRequestId(
+            "{\"id\":12,\"method\":\"execute\",\"params\":{\"api\":\"Databases\"}}"));
+    assertEquals(
+        7,
+        PendingRequests.findRequestId(
+            "{ \"params\" : {\"id\": 3, \"method\": \"init\"}, "
+                + "\"method\" : \"execute\", \"id\" : 7 }"));
+  }
+
+  @Test
+  public void onlyMembersOfTheOutermostObjectAreLookedAt() throws Exception {
+    assertEquals(
+        -1, PendingRequests.findRequestId("{\"method\":\"init\",\"params\":{\"id\":3}}"));
+    assertEquals(
+        -1,
+        PendingRequests.findRequestId(
+            "{\"method\":\"init\",\"params\":{\"method\":\"execute\",\"id\":3}}"));
+    assertEquals(
+        -1,
+        PendingRequests.findRequestId(
+            "{\"method\":\"execute\",\"params\":{\"note\":\"\\\"id\\\":3\"}}"));
+  }
+
+  @Test
+  public void onlyMessagesThatMayBeCancellationsAreParsed() throws Exception {
+    assertTrue(PendingRequests.mayBeCancellation("{\"method\":\"cancel\",\"params\":{\"id\":1}}"));
+    assertFalse(PendingRequests.mayBeCancellation("{\"id\":1,\"method\":\"execute\"}"));
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.net.SocketFactory;
+import org.java_websocket.WebSocket;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Runs {@link StreamSocket} against a peer on the loopback interface, standing in for the local
+ * socket the device connects to, so the adapter can be tested without a device.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StreamSocketTest {
+
+  /** Connects to a TCP port, as the local socket connector would to its socket name. */
+  private static class TcpConnector implements StreamSocket.Connector {
+    private final int mPort;
+    private final Socket mSocket = new Socket();
+
+    TcpConnector(int port) {
+      mPort = port;
+    }
+
+    @Override
+    public void connect(int timeoutMs) throws IOException {
+      mSocket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), mPort), timeoutMs);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return mSocket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+      return mSocket.getOutputStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+      mSocket.close();
+    }
+  }
+
+  @Test
+  public void bytesRoundTripThroughThePeer() throws Exception {
+    try (ServerSocket peer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      final StreamSocket socket = new StreamSocket(new TcpConnector(peer.getLocalPort()));
+      assertFalse(socket.isConnected());
+      socket.connect(null);
+      assertTrue(socket.isConnected());
+
+      try (Socket accepted = peer.accept()) {
+        socket.getOutputStream().write(new byte[] {1, 2, 3});
+        final byte[] received = new byte[3];
+        assertEquals(3, accepted.getInputStream().read(received));
+        accepted.getOutputStream().write(received);
+        assertEquals(1, socket.getInputStream().read());
+      }
+
+      socket.close();
+      assertTrue(socket.isClosed());
+    }
+  }
+
+  @Test(expected = SocketException.class)
+  public void streamsAreUnavailableBeforeConnecting() throws Exception {
+    new StreamSocket(new TcpConnector(0)).getInputStream();
+  }
+
+  @Test
+  public void webSocketRunsOverStreamSocket() throws Exception {
+    final BlockingQueue<String> echoed = new ArrayBlockingQueue<>(1);
+    final WebSocketServer peer =
+        new WebSocketServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)) {
+          @Override
+          public void onOpen(WebSocket conn, ClientHandshake handshake) {}
+
+          @Override
+          public void onClose(WebSocket conn, int code, String reason, boolean remote) {}
+
+          @Override
+          public void onMessage(WebSocket conn, String message) {
+            conn.send(message);
+          }
+
+          @Override
+          public void onError(WebSocket conn, Exception ex) {}
+
+          @Override
+          public void onStart() {}
+        };
+    peer.setReuseAddr(true);
+    peer.start();
+    try {
+      while (peer.getPort() == 0) {
+        Thread.sleep(10);
+      }
+      final int port = peer.getPort();
+      final WebSocketClient client =
+          new WebSocketClient(new URI("ws://localhost:" + port)) {
+            @Override
+            public void onOpen(ServerHandshake handshake) {
+              send("hello");
+            }
+
+            @Override
+            public void onMessage(String message) {
+              echoed.offer(message);
+            }
+
+            @Override
+            public void onClose(int code, String reason, boolean remote) {}
+
+            @Override
+            public void onError(Exception ex) {}
+          };
+      client.setSocketFactory(
+          new SocketFactory() {
+            @Override
+            public Socket createSocket() {
+              return new StreamSocket(new TcpConnector(port));
+            }
+
+            @Override
+            public Socket createSocket(String host, int p) {
+              throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Socket createSocket(
+                String host, int p, InetAddress localAddress, int localPort) {
+              throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Socket createSocket(InetAddress host, int p) {
+              throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Socket createSocket(
+                InetAddress host, int p, InetAddress localAddress, int localPort) {
+              throw new UnsupportedOperationException();
+            }
+          });
+      assertTrue(client.connectBlocking(5, TimeUnit.SECONDS));
+      assertEquals("hello", echoed.poll(5, TimeUnit.SECONDS));
+      client.closeBlocking();
+    } finally {
+      peer.stop();
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.android;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.flipper.core.FlipperObject;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class SubscriptionsTest {
+
+  @After
+  public void tearDown() {
+    Subscriptions.clear();
+  }
+
+  private static Map<String, String> request(String method, String url) {
+    final Map<String, String> attributes = new HashMap<>();
+    attributes.put("method", method);
+    attributes.put("url", url);
+    return attributes;
+  }
+
+  @Test
+  public void everythingIsSubscribedWithoutFilters() throws Exception {
+    assertTrue(Subscriptions.isSubscribed("Network", "newRequest", request("GET", "https://a/")));
+    assertTrue(Subscriptions.isSubscribed("Network", "newResponse", null));
+  }
+
+  @Test
+  public void messagesMustMatchTheFiltersOfTheirMethod() throws Exception {
+    assertTrue(
+        Subscriptions.onMessage(
+            new FlipperObject(
+                "{\"method\":\"subscribe\",\"params\":{\"plugin\":\"Network\",\"filters\":["
+                    + "{\"method\":\"newRequest\",\"prefix\":{\"url\":\"https://api/\"},"
+                    + "\"equals\":{\"method\":\"GET\"}},"
+                    + "{\"method\":\"newRequest\",\"equals\":{\"method\":\"POST\"}},"
+                    + "{\"method\":\"*\"}]}}")));
+
+    assertTrue(
+        Subscriptions.isSubscribed("Network", "newRequest", request("GET", "https://api/x")));
+    assertFalse(
+        Subscriptions.isSubscribed("Network", "newRequest", request("GET", "https://cdn/x")));
+    assertTrue(
+        Subscriptions.isSubscribed("Network", "newRequest", request("POST", "https://cdn/x")));
+    // Attributes that aren't passed aren't checked.
+    assertTrue(
+        Subscriptions.isSubscribed(
+            "Network", "newRequest", Collections.singletonMap("url", "https://api/x")));
+    // Methods without filters of their own go by those for any method.
+    assertTrue(Subscriptions.isSubscribed("Network", "newResponse", null));
+    // Other plugins are unaffected.
+    assertTrue(Subscriptions.isSubscribed("Inspector", "invalidate", null));
+  }
+
+  @Test
+  public void methodsWithoutMatchingFiltersAreNotSubscribed() throws Exception {
+    Subscriptions.onMessage(
+        new FlipperObject(
+            "{\"method\":\"subscribe\",\"params\":{\"plugin\":\"Inspector\",\"filters\":["
+                + "{\"method\":\"invalidate\",\"equals\":{\"id\":\"1\"}}]}}"));
+
+    assertTrue(
+        Subscriptions.isSubscribed("Inspector", "invalidate", Collections.singletonMap("id", "1")));
+    assertFalse(
+        Subscriptions.isSubscribed("Inspector", "invalidate", Collections.singletonMap("id", "2")));
+    assertFalse(Subscriptions.isSubscribed("Inspector", "select", null));
+
+    // Null filters subscribe to everything again.
+    Subscriptions.onMessage(
+        new FlipperObject(
+            "{\"method\":\"subscribe\",\"params\":{\"plugin\":\"Inspector\",\"filters\":null}}"));
+    assertTrue(Subscriptions.isSubscribed("Inspector", "select", null));
+  }
+
+  @Test
+  public void otherMessagesAreLeftToBeDispatched() throws Exception {
+    assertFalse(
+        Subscriptions.onMessage(
+            new FlipperObject("{\"method\":\"execute\",\"params\":{\"api\":\"Network\"}}")));
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class FlipperHistogramTest {
+
+  @Test
+  public void percentilesStayWithinBucketPrecision() {
+    final FlipperHistogram histogram = new FlipperHistogram();
+    for (long value = 1; value <= 100000; value++) {
+      histogram.record(value * 1000);
+    }
+
+    assertEquals(100000, histogram.getCount());
+    assertEquals(1000, histogram.getMin());
+    assertEquals(100000000, histogram.getMax());
+    assertEquals(50000500, histogram.getMean(), 1);
+    for (double percentile : new double[] {1, 50, 90, 99, 99.9}) {
+      final double expected = percentile * 1000000;
+      final long actual = histogram.getValueAtPercentile(percentile);
+      assertTrue(percentile + ": " + actual, Math.abs(actual - expected) / expected < 0.125);
+    }
+  }
+
+  @Test
+  public void copiesAreIndependent() {
+    final FlipperHistogram histogram = new FlipperHistogram();
+    histogram.record(5);
+    final FlipperHistogram copy = histogram.copy();
+    histogram.record(Long.MAX_VALUE);
+
+    assertEquals(1, copy.getCount());
+    assertEquals(5, copy.getValueAtPercentile(100));
+    assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void emptyHistogramReportsZero() {
+    final FlipperHistogram histogram = new FlipperHistogram();
+
+    assertEquals(0, histogram.getMin());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+    assertEquals(0, histogram.getMean(), 0);
+  }
+}
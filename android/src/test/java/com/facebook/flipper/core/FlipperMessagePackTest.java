@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class FlipperMessagePackTest {
+
+  @Test
+  public void roundTripsMessages() throws Exception {
+    final String message =
+        "{\"id\":7,\"method\":\"execute\",\"params\":{\"api\":\"Network\","
+            + "\"text\":\"a\\\"b/\\u00e9\\ud83d\\ude00\\n\",\"small\":-5,\"int\":-70000,"
+            + "\"big\":12345678901,\"pi\":3.5,\"yes\":true,\"no\":false,\"nil\":null,"
+            + "\"list\":[1,[],{}]}}";
+
+    final byte[] encoded = FlipperMessagePack.fromJson(message);
+    final String decoded = FlipperMessagePack.toJson(ByteBuffer.wrap(encoded));
+
+    assertEquals(new JSONObject(message).toString(), decoded);
+  }
+
+  @Test
+  public void encodesCompactly() {
+    assertArrayEquals(
+        new byte[] {
+          (byte) 0x82, (byte) 0xa1, 'a', 0x01, (byte) 0xa1, 'b', (byte) 0x91, (byte) 0xc0
+        },
+        FlipperMessagePack.fromJson("{\"a\":1,\"b\":[null]}"));
+  }
+
+  @Test
+  public void encodesLongStrings() {
+    final StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 70000; i++) {
+      text.append((char) ('a' + i % 26));
+    }
+    final String message = "[\"" + text + "\"]";
+
+    assertEquals(
+        message, FlipperMessagePack.toJson(ByteBuffer.wrap(FlipperMessagePack.fromJson(message))));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsLenientJson() {
+    FlipperMessagePack.fromJson("{'a': 1}");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTruncatedInput() {
+    FlipperMessagePack.toJson(ByteBuffer.wrap(new byte[] {(byte) 0x82, (byte) 0xa1, 'a'}));
+  }
+}
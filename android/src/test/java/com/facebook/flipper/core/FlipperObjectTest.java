@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class FlipperObjectTest {
+
+  private static final String MESSAGE =
+      "{\"id\":7,\"name\":\"a\\\"b\\u00e9\\n\",\"big\":12345678901,\"pi\":3.5,\"exp\":1e3,"
+          + "\"yes\":true,\"no\":false,\"nil\":null,\"num\":\"42\","
+          + "\"nested\":{\"ids\":[1,\"2\",[3],{\"x\":-0.5}],\"empty\":{}},\"list\":[]}";
+
+  @Test
+  public void lazyObjectReadsLikeEagerObject() throws Exception {
+    final FlipperObject lazy = new FlipperObject(MESSAGE);
+    final FlipperObject eager = new FlipperObject(new JSONObject(MESSAGE));
+
+    for (String key :
+        new String[] {
+          "id", "name", "big", "pi", "exp", "yes", "no", "nil", "num", "nested", "list", "missing"
+        }) {
+      assertEquals(key, eager.getString(key), lazy.getString(key));
+      assertEquals(key, eager.getInt(key), lazy.getInt(key));
+      assertEquals(key, eager.getLong(key), lazy.getLong(key));
+      assertEquals(key, eager.getDouble(key), lazy.getDouble(key), 0);
+      assertEquals(key, eager.getBoolean(key), lazy.getBoolean(key));
+      assertEquals(key, eager.contains(key), lazy.contains(key));
+      assertEquals(key, String.valueOf(eager.get(key)), String.valueOf(lazy.get(key)));
+    }
+    assertEquals(eager, lazy);
+    assertEquals(eager.toJsonString(), lazy.toJsonString());
+  }
+
+  @Test
+  public void lazyArrayReadsLikeEagerArray() throws Exception {
+    final FlipperArray lazy = new FlipperObject(MESSAGE).getObject("nested").getArray("ids");
+    final FlipperArray eager =
+        new FlipperArray(new JSONObject(MESSAGE).getJSONObject("nested").getJSONArray("ids"));
+
+    assertEquals(eager.length(), lazy.length());
+    for (int i = -1; i <= eager.length(); i++) {
+      assertEquals(eager.getString(i), lazy.getString(i));
+      assertEquals(eager.getInt(i), lazy.getInt(i));
+    }
+    assertEquals(-0.5, lazy.getObject(3).getDouble("x"), 0);
+    assertEquals(3, lazy.getArray(2).getInt(0));
+    assertEquals(eager, lazy);
+  }
+
+  @Test
+  public void lazyValuesCanBeAddedToBuilders() throws Exception {
+    final FlipperObject lazy = new FlipperObject(MESSAGE);
+    final FlipperObject built =
+        new FlipperObject.Builder()
+            .put("nested", lazy.getObject("nested"))
+            .put("ids", lazy.getObject("nested").getArray("ids"))
+            .build();
+
+    assertEquals(
+        new JSONObject(MESSAGE).getJSONObject("nested").toString(),
+        built.getObject("nested").toJsonString());
+    assertEquals(4, built.getArray("ids").length());
+  }
+
+  @Test
+  public void missingAndNullValuesKeepEagerSemantics() {
+    final FlipperObject lazy = new FlipperObject(MESSAGE);
+
+    assertNull(lazy.getString("nil"));
+    assertNull(lazy.getString("missing"));
+    assertTrue(lazy.contains("nil"));
+    assertFalse(lazy.contains("missing"));
+    assertEquals(0, lazy.getObject("missing").json().length());
+    assertTrue(Double.isNaN(lazy.getDouble("missing")));
+  }
+
+  @Test
+  public void lenientInputFallsBackToOrgJson() throws Exception {
+    final String lenient = "{'a': 1, b: [1, 2]}";
+    assertEquals(
+        new JSONObject(lenient).toString(), new FlipperObject(lenient).toJsonString());
+    assertEquals(new JSONArray("[1,]").length(), new FlipperArray("[1,]").length());
+  }
+
+  @Test
+  public void streamingBuilderEncodesLikeBuilder() {
+    final String text = "quote\" slash/ back\\ tab\t nl\n ctl\u0001 \u00e9";
+    final FlipperObject built =
+        new FlipperObject.Builder()
+            .put("int", 1)
+            .put("long", 12345678901L)
+            .put("float", 1.1f)
+            .put("double", 2.0)
+            .put("negativeZero", -0.0)
+            .put("nan", Double.NaN)
+            .put("bool", true)
+            .put("text", text)
+            .put("missing", (String) null)
+            .put("object", new FlipperObject.Builder().put("a", 1))
+            .put("array", new FlipperArray.Builder().put("x").put((String) null).put(3.5))
+            .build();
+    final FlipperObject streamed =
+        new FlipperObject.StreamingBuilder()
+            .put("int", 1)
+            .put("long", 12345678901L)
+            .put("float", 1.1f)
+            .put("double", 2.0)
+            .put("negativeZero", -0.0)
+            .put("nan", Double.NaN)
+            .put("bool", true)
+            .put("text", text)
+            .put("missing", (String) null)
+            .put("object", new FlipperObject.StreamingBuilder().put("a", 1))
+            .put("array", new FlipperArray.StreamingBuilder().put("x").put((String) null).put(3.5))
+            .build();
+
+    assertEquals(built.toJsonString(), streamed.toJsonString());
+    assertEquals(text, streamed.getString("text"));
+    assertEquals(3.5, streamed.getArray("array").getDouble(2), 0);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void streamingBuilderCanOnlyBeBuiltOnce() {
+    final FlipperObject.StreamingBuilder builder = new FlipperObject.StreamingBuilder();
+    builder.build();
+    builder.put("a", 1);
+  }
+
+  @Test
+  public void encodedLengthIsThatOfTheSourceText() {
+    final FlipperObject obj = new FlipperObject("{\"a\": {\"b\":  1}}");
+
+    // Encoding it again would drop the whitespace.
+    assertEquals("{\"b\":  1}".length(), obj.getObject("a").encodedLength());
+    assertEquals(
+        "{\"b\":1}".length(), new FlipperObject.Builder().put("b", 1).build().encodedLength());
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void invalidInputThrows() {
+    new FlipperObject("[1, 2]");
+  }
+}
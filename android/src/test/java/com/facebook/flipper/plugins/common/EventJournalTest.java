@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.plugins.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class EventJournalTest {
+
+  @Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+  private static String next(EventJournal journal) {
+    final EventJournal.Record record = journal.peek();
+    if (record == null) {
+      return null;
+    }
+    journal.remove(record);
+    return record.method + " " + record.params;
+  }
+
+  @Test
+  public void eventsAreReplayedInOrderAfterARestart() throws Exception {
+    final File directory = mFolder.newFolder();
+    final EventJournal journal = new EventJournal(directory, 1024, 64);
+    for (int i = 0; i < 5; i++) {
+      journal.append("newRequest", "{\"id\":" + i + "}");
+    }
+
+    final EventJournal reopened = new EventJournal(directory, 1024, 64);
+    for (int i = 0; i < 5; i++) {
+      assertEquals("newRequest {\"id\":" + i + "}", next(reopened));
+    }
+    assertNull(next(reopened));
+    assertTrue(reopened.isEmpty());
+
+    // Read events are not replayed again, and new ones don't bring them back.
+    reopened.append("m", "{}");
+    final EventJournal again = new EventJournal(directory, 1024, 64);
+    assertEquals("m {}", next(again));
+    assertNull(next(again));
+  }
+
+  @Test
+  public void oldestSegmentsAreDroppedPastTheSizeCap() throws Exception {
+    // Each record takes 12 + 1 + 22 bytes, two per segment, four segments at most.
+    final EventJournal journal = new EventJournal(mFolder.newFolder(), 320, 80);
+    for (int i = 0; i < 10; i++) {
+      journal.append("m", "{\"padding\":\"0123456" + i + "\"}");
+    }
+
+    assertEquals(2, journal.getDroppedEvents());
+    assertEquals("m {\"padding\":\"01234562\"}", next(journal));
+  }
+
+  @Test
+  public void eventsLargerThanASegmentAreDropped() throws Exception {
+    final EventJournal journal = new EventJournal(mFolder.newFolder(), 320, 80);
+    final StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 80; i++) {
+      large.append('x');
+    }
+    journal.append("m", large.toString());
+
+    assertEquals(1, journal.getDroppedEvents());
+    assertTrue(journal.isEmpty());
+  }
+
+  @Test
+  public void onlyTheLatestEventPerKeyIsReplayed() throws Exception {
+    final File directory = mFolder.newFolder();
+    final EventJournal journal = new EventJournal(directory, 1024, 64);
+    journal.append("change", "{\"v\":1}", "a");
+    journal.append("change", "{\"v\":1}", "b");
+    journal.append("other", "{}");
+    journal.append("change", "{\"v\":2}", "a");
+
+    final EventJournal reopened = new EventJournal(directory, 1024, 64);
+    assertEquals("change {\"v\":1}", next(reopened));
+    assertEquals("other {}", next(reopened));
+    final EventJournal.Record peeked = reopened.peek();
+    // Appended while the previous one is being sent, so both are.
+    reopened.append("change", "{\"v\":3}", "a");
+    reopened.remove(peeked);
+    assertEquals("change {\"v\":2}", peeked.method + " " + peeked.params);
+    assertEquals("change {\"v\":3}", next(reopened));
+    assertNull(next(reopened));
+    assertEquals(1, reopened.getCoalescedEvents());
+  }
+}
@@ -49,4 +49,21 @@ public class MainThreadFlipperReceiverTest {
     Assert.assertTrue(
         error.getString("stacktrace").contains(MainThreadFlipperReceiver.class.getCanonicalName()));
   }
+
+  @Test
+  public void cancelledRequestIsNotHandled() throws Exception {
+    MainThreadFlipperReceiver receiver =
+        new MainThreadFlipperReceiver() {
+          public void onReceiveOnMainThread(FlipperObject params, FlipperResponder responder)
+              throws Exception {
+            responder.success();
+          }
+        };
+
+    responder.cancellationToken.cancel();
+    receiver.onReceive(new FlipperObject.Builder().build(), responder);
+
+    Assert.assertEquals(0, responder.successes.size());
+    Assert.assertEquals(0, responder.errors.size());
+  }
 }
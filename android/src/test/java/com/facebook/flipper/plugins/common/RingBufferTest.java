@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.plugins.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class RingBufferTest {
+
+  @Test
+  public void oldestItemsAreDroppedToStayWithinTheSizeBudget() throws Exception {
+    final RingBuffer<String> buffer = new RingBuffer<>(10, 100);
+    buffer.enqueue("a", 40);
+    buffer.enqueue("b", 40);
+    buffer.enqueue("c", 40);
+
+    assertEquals(2, buffer.getCount());
+    assertEquals(80, buffer.getSize());
+    assertEquals(1, buffer.getDroppedItems());
+    assertEquals(40, buffer.getDroppedSize());
+    assertEquals("b", buffer.peek().item);
+  }
+
+  @Test
+  public void oldestItemsAreDroppedToStayWithinTheCount() throws Exception {
+    final RingBuffer<String> buffer = new RingBuffer<>(2, 100);
+    buffer.enqueue("a", 1);
+    buffer.enqueue("b", 1);
+    buffer.enqueue("c", 1);
+
+    assertEquals(2, buffer.getCount());
+    assertEquals(1, buffer.getDroppedItems());
+    assertEquals("b", buffer.peek().item);
+  }
+
+  @Test
+  public void itemsLargerThanTheBudgetAreDroppedRightAway() throws Exception {
+    final RingBuffer<String> buffer = new RingBuffer<>(10, 100);
+    buffer.enqueue("a", 40);
+    buffer.enqueue("huge", 1000);
+
+    assertEquals(1, buffer.getCount());
+    assertEquals(1000, buffer.getDroppedSize());
+    assertEquals("a", buffer.peek().item);
+  }
+
+  @Test
+  public void itemsWithTheSameKeyReplaceEachOther() throws Exception {
+    final RingBuffer<String> buffer = new RingBuffer<>(10, 100);
+    buffer.enqueue("a1", 10, "a");
+    buffer.enqueue("b1", 10, "b");
+    buffer.enqueue("c", 10);
+    buffer.enqueue("a2", 20, "a");
+
+    assertEquals(3, buffer.getCount());
+    assertEquals(40, buffer.getSize());
+    assertEquals(1, buffer.getCoalescedItems());
+    assertEquals(0, buffer.getDroppedItems());
+
+    final RingBuffer.Entry<String> entry = buffer.peek();
+    assertEquals("b1", entry.item);
+    buffer.remove(entry);
+    assertEquals("c", buffer.peek().item);
+    buffer.remove(buffer.peek());
+    assertEquals("a2", buffer.peek().item);
+  }
+
+  @Test
+  public void itemsStayUntilRemoved() throws Exception {
+    final RingBuffer<String> buffer = new RingBuffer<>(10, 100);
+    buffer.enqueue("a", 10);
+    buffer.enqueue("b", 10);
+
+    final RingBuffer.Entry<String> entry = buffer.peek();
+    assertEquals("a", entry.item);
+    assertEquals("a", buffer.peek().item);
+    buffer.remove(entry);
+    // Removing twice, as when the entry was dropped meanwhile, is harmless.
+    buffer.remove(entry);
+
+    assertEquals(1, buffer.getCount());
+    assertEquals(10, buffer.getSize());
+    buffer.clear();
+    assertTrue(buffer.isEmpty());
+    assertNull(buffer.peek());
+    assertEquals(0, buffer.getSize());
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.plugins.databases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.facebook.flipper.plugins.databases.DatabasesManager.DatabaseDescriptorHolder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class DatabaseSchemaCacheTest {
+
+  private static class Descriptor implements DatabaseDescriptor {
+    final String mName;
+
+    Descriptor(String name) {
+      mName = name;
+    }
+
+    @Override
+    public String name() {
+      return mName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Descriptor && mName.equals(((Descriptor) o).mName);
+    }
+
+    @Override
+    public int hashCode() {
+      return mName.hashCode();
+    }
+  }
+
+  private static class FakeDriver extends DatabaseDriver<Descriptor> {
+    final List<String> mDatabases = new ArrayList<>();
+    final AtomicInteger mListed = new AtomicInteger();
+    @Nullable volatile String mSchemaVersion;
+
+    FakeDriver(String... databases) {
+      super(null);
+      mDatabases.addAll(Arrays.asList(databases));
+    }
+
+    @Override
+    public List<Descriptor> getDatabases() {
+      final List<Descriptor> descriptors = new ArrayList<>();
+      for (String name : mDatabases) {
+        descriptors.add(new Descriptor(name));
+      }
+      return descriptors;
+    }
+
+    @Override
+    public List<String> getTableNames(Descriptor databaseDescriptor) {
+      mListed.incrementAndGet();
+      return new ArrayList<>(Arrays.asList("b", "a"));
+    }
+
+    @Override
+    public @Nullable String getSchemaVersion(Descriptor databaseDescriptor) {
+      return mSchemaVersion;
+    }
+
+    @Override
+    public DatabaseGetTableDataResponse getTableData(
+        Descriptor databaseDescriptor,
+        String table,
+        String order,
+        boolean reverse,
+        int start,
+        int count) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public DatabaseGetTableStructureResponse getTableStructure(
+        Descriptor databaseDescriptor, String table) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public DatabaseGetTableInfoResponse getTableInfo(Descriptor databaseDescriptor, String table) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public DatabaseExecuteSqlResponse executeSQL(Descriptor databaseDescriptor, String query) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private final DatabaseSchemaCache mCache = new DatabaseSchemaCache();
+
+  @Test
+  public void tablesAreListedAgainOnlyOnceTheSchemaChanges() throws Exception {
+    final FakeDriver driver = new FakeDriver("one.db", "two.db");
+    driver.mSchemaVersion = "1";
+    final List<DatabaseDriver> drivers = Collections.<DatabaseDriver>singletonList(driver);
+
+    final List<DatabaseDescriptorHolder> holders = mCache.list(drivers);
+    assertEquals(Arrays.asList("a", "b"), holders.get(0).tableNames);
+    assertEquals(2, driver.mListed.get());
+
+    mCache.list(drivers);
+    assertEquals(2, driver.mListed.get());
+
+    driver.mSchemaVersion = "2";
+    mCache.list(drivers);
+    assertEquals(4, driver.mListed.get());
+  }
+
+  @Test
+  public void tablesAreListedEveryTimeWithoutASchemaVersion() throws Exception {
+    final FakeDriver driver = new FakeDriver("one.db");
+    final List<DatabaseDriver> drivers = Collections.<DatabaseDriver>singletonList(driver);
+
+    mCache.list(drivers);
+    mCache.list(drivers);
+    assertEquals(2, driver.mListed.get());
+  }
+
+  @Test
+  public void databasesKeepTheirIds() throws Exception {
+    final FakeDriver driver = new FakeDriver("one.db", "two.db");
+    final List<DatabaseDriver> drivers = Collections.<DatabaseDriver>singletonList(driver);
+
+    final int twoId = mCache.list(drivers).get(1).id;
+    driver.mDatabases.add(0, "zero.db");
+    final List<DatabaseDescriptorHolder> holders = mCache.list(drivers);
+    assertEquals(twoId, holders.get(2).id);
+    assertEquals(twoId + 1, holders.get(0).id);
+  }
+
+  @Test
+  public void idsOfDatabasesNoLongerListedAreForgotten() throws Exception {
+    final FakeDriver driver = new FakeDriver("one.db", "two.db");
+    final List<DatabaseDriver> drivers = Collections.<DatabaseDriver>singletonList(driver);
+
+    mCache.list(drivers);
+    driver.mDatabases.remove("two.db");
+    mCache.list(drivers);
+    assertNull(mCache.findId(driver, new Descriptor("two.db")));
+    assertNotNull(mCache.findId(driver, new Descriptor("one.db")));
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.plugins.databases;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.os.SystemClock;
+import com.facebook.flipper.core.FlipperObject;
+import com.facebook.flipper.plugins.databases.DatabaseDriver.DatabaseRowCursor;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class OpenQueriesTest {
+
+  private static class FakeCursor implements DatabaseRowCursor {
+    final int mRows;
+    int mRead;
+    boolean mClosed;
+
+    FakeCursor(int rows) {
+      mRows = rows;
+    }
+
+    @Override
+    public List<String> getColumns() {
+      return Collections.singletonList("value");
+    }
+
+    @Override
+    public List<Object> nextRow() {
+      return mRead < mRows ? Collections.<Object>singletonList((long) mRead++) : null;
+    }
+
+    @Override
+    public void close() {
+      mClosed = true;
+    }
+  }
+
+  private final OpenQueries mQueries = new OpenQueries();
+
+  @Test
+  public void rowsAreSentInBatchesUntilTheLastOne() throws Exception {
+    final FakeCursor cursor = new FakeCursor(OpenQueries.BATCH_ROWS + 1);
+
+    final FlipperObject first = mQueries.start(cursor, true);
+    assertEquals("value", first.getArray("columns").getString(0));
+    assertEquals(OpenQueries.BATCH_ROWS, first.getArray("values").length());
+    assertTrue(first.contains("continuation"));
+    assertFalse(cursor.mClosed);
+
+    final FlipperObject last = mQueries.next(first.getInt("continuation"));
+    assertEquals(1, last.getArray("values").length());
+    assertFalse(last.contains("continuation"));
+    assertFalse(last.getBoolean("truncated"));
+    assertTrue(cursor.mClosed);
+    assertNull(mQueries.next(first.getInt("continuation")));
+  }
+
+  @Test
+  public void rowsAreSentInOneResponseUnlessBatchesAreAskedFor() throws Exception {
+    final FakeCursor cursor = new FakeCursor(OpenQueries.BATCH_ROWS + 1);
+
+    final FlipperObject response = mQueries.start(cursor, false);
+    assertEquals(OpenQueries.BATCH_ROWS + 1, response.getArray("values").length());
+    assertFalse(response.contains("continuation"));
+    assertFalse(response.getBoolean("truncated"));
+    assertTrue(cursor.mClosed);
+    assertEquals(0, mQueries.size());
+  }
+
+  @Test
+  public void rowsPastTheLimitAreNotSent() throws Exception {
+    mQueries.setLimits(10, Long.MAX_VALUE);
+    final FakeCursor cursor = new FakeCursor(11);
+
+    final FlipperObject response = mQueries.start(cursor, true);
+    assertEquals(10, response.getArray("values").length());
+    assertTrue(response.getBoolean("truncated"));
+    assertFalse(response.contains("continuation"));
+    assertTrue(cursor.mClosed);
+
+    // A result exactly at the limit isn't truncated.
+    assertFalse(mQueries.start(new FakeCursor(10), true).getBoolean("truncated"));
+  }
+
+  @Test
+  public void queriesNotContinuedAreClosed() throws Exception {
+    final FakeCursor cursor = new FakeCursor(OpenQueries.BATCH_ROWS * 2);
+    mQueries.start(cursor, true);
+
+    mQueries.closeIdle(SystemClock.uptimeMillis());
+    assertFalse(cursor.mClosed);
+    mQueries.closeIdle(SystemClock.uptimeMillis() + 60 * 1000);
+    assertTrue(cursor.mClosed);
+    assertEquals(0, mQueries.size());
+  }
+
+  @Test
+  public void queriesAreClosedOnDisconnect() throws Exception {
+    final FakeCursor cursor = new FakeCursor(OpenQueries.BATCH_ROWS * 2);
+    mQueries.start(cursor, true);
+    assertEquals(1, mQueries.size());
+
+    mQueries.closeAll();
+    assertTrue(cursor.mClosed);
+    assertEquals(0, mQueries.size());
+  }
+}
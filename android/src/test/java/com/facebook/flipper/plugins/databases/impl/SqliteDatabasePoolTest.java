@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.plugins.databases.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import android.os.SystemClock;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class SqliteDatabasePoolTest {
+
+  @Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+  private final List<SupportSQLiteDatabase> mOpened = new ArrayList<>();
+  private SqliteDatabasePool mPool;
+
+  @Before
+  public void setUp() {
+    mPool =
+        new SqliteDatabasePool(
+            new SqliteDatabaseConnectionProvider() {
+              @Override
+              public SupportSQLiteDatabase openDatabase(File databaseFile) {
+                final SupportSQLiteDatabase database = mock(SupportSQLiteDatabase.class);
+                mOpened.add(database);
+                return database;
+              }
+            },
+            2,
+            1000);
+  }
+
+  @Test
+  public void databasesAreKeptOpenBetweenRequests() throws Exception {
+    final File file = mFolder.newFile("a.db");
+    final SupportSQLiteDatabase first = mPool.acquire(file);
+    final SupportSQLiteDatabase second = mPool.acquire(file);
+    mPool.release(first);
+    mPool.release(second);
+
+    assertSame(first, second);
+    assertSame(first, mPool.acquire(file));
+    assertEquals(1, mOpened.size());
+    verify(first, never()).close();
+  }
+
+  @Test
+  public void leastRecentlyUsedDatabasesAreClosedPastTheLimit() throws Exception {
+    final SupportSQLiteDatabase a = mPool.acquire(mFolder.newFile("a.db"));
+    mPool.release(a);
+    final SupportSQLiteDatabase b = mPool.acquire(mFolder.newFile("b.db"));
+    mPool.release(b);
+    final SupportSQLiteDatabase c = mPool.acquire(mFolder.newFile("c.db"));
+    mPool.release(c);
+
+    verify(a).close();
+    verify(b, never()).close();
+    assertEquals(2, mPool.size());
+  }
+
+  @Test
+  public void databasesAreOpenedAgainOnceTheirFileIsDeleted() throws Exception {
+    final File file = mFolder.newFile("a.db");
+    final SupportSQLiteDatabase before = mPool.acquire(file);
+    mPool.release(before);
+    file.delete();
+
+    final SupportSQLiteDatabase after = mPool.acquire(file);
+    assertNotSame(before, after);
+    verify(before).close();
+  }
+
+  @Test
+  public void databasesInUseAreClosedOnceReleased() throws Exception {
+    final SupportSQLiteDatabase database = mPool.acquire(mFolder.newFile("a.db"));
+    mPool.closeAll();
+    verify(database, never()).close();
+
+    mPool.release(database);
+    verify(database).close();
+    assertEquals(0, mPool.size());
+  }
+
+  @Test
+  public void idleDatabasesAreClosed() throws Exception {
+    final SupportSQLiteDatabase database = mPool.acquire(mFolder.newFile("a.db"));
+    mPool.release(database);
+
+    mPool.evictIdle(SystemClock.uptimeMillis() + 999);
+    verify(database, never()).close();
+    mPool.evictIdle(SystemClock.uptimeMillis() + 1000);
+    verify(database).close();
+  }
+
+  @Test
+  public void openingADatabaseHoldsUpOnlyThoseAcquiringIt() throws Exception {
+    final File slow = mFolder.newFile("slow.db");
+    final CountDownLatch opening = new CountDownLatch(1);
+    final CountDownLatch opened = new CountDownLatch(1);
+    final AtomicInteger slowOpens = new AtomicInteger();
+    final SqliteDatabasePool pool =
+        new SqliteDatabasePool(
+            new SqliteDatabaseConnectionProvider() {
+              @Override
+              public SupportSQLiteDatabase openDatabase(File databaseFile) {
+                if (databaseFile.equals(slow)) {
+                  slowOpens.incrementAndGet();
+                  opening.countDown();
+                  try {
+                    opened.await();
+                  } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                  }
+                }
+                return mock(SupportSQLiteDatabase.class);
+              }
+            });
+    final Callable<SupportSQLiteDatabase> acquireSlow =
+        new Callable<SupportSQLiteDatabase>() {
+          @Override
+          public SupportSQLiteDatabase call() {
+            return pool.acquire(slow);
+          }
+        };
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final Future<SupportSQLiteDatabase> first = executor.submit(acquireSlow);
+      opening.await();
+      final Future<SupportSQLiteDatabase> second = executor.submit(acquireSlow);
+
+      pool.release(pool.acquire(mFolder.newFile("fast.db")));
+      opened.countDown();
+      assertSame(first.get(), second.get());
+      assertEquals(1, slowOpens.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.plugins.databases.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.database.Cursor;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class SqliteDatabaseWatcherTest {
+
+  @Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+  private final SupportSQLiteDatabase mDatabase = mock(SupportSQLiteDatabase.class);
+  private final Cursor mCursor = mock(Cursor.class);
+  private final List<Set<String>> mChanges = new ArrayList<>();
+  private final SqliteDatabasePool mPool =
+      new SqliteDatabasePool(
+          new SqliteDatabaseConnectionProvider() {
+            @Override
+            public SupportSQLiteDatabase openDatabase(File databaseFile) {
+              return mDatabase;
+            }
+          });
+  private final SqliteDatabaseWatcher mWatcher =
+      new SqliteDatabaseWatcher(
+          mPool,
+          new SqliteDatabaseWatcher.Listener() {
+            @Override
+            public void onTablesChanged(File databaseFile, Set<String> tables) {
+              mChanges.add(tables);
+            }
+          });
+  private File mFile;
+
+  @Before
+  public void setUp() throws Exception {
+    mFile = mFolder.newFile("a.db");
+    when(mDatabase.query("PRAGMA data_version")).thenReturn(mCursor);
+    when(mCursor.moveToFirst()).thenReturn(true);
+    when(mCursor.getLong(0)).thenReturn(1L);
+    mWatcher.start();
+  }
+
+  @After
+  public void tearDown() {
+    mWatcher.stop();
+  }
+
+  @Test
+  public void changesAreCoalescedUntilFlushed() throws Exception {
+    mWatcher.onTableRead(mFile, "a");
+    mWatcher.onTableRead(mFile, "b");
+
+    // Without knowing which tables changed, those read are.
+    mWatcher.notifyChanged(mFile, null);
+    mWatcher.notifyChanged(mFile, Collections.singletonList("c"));
+    mWatcher.flush();
+
+    assertEquals(1, mChanges.size());
+    assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), mChanges.get(0));
+    mWatcher.flush();
+    assertEquals(1, mChanges.size());
+  }
+
+  @Test
+  public void nothingIsToldForDatabasesWithoutTablesRead() throws Exception {
+    mWatcher.notifyChanged(mFile, null);
+    mWatcher.flush();
+
+    assertEquals(0, mChanges.size());
+  }
+
+  @Test
+  public void fileChangesAreToldOnceTheDataVersionChanges() throws Exception {
+    mWatcher.watch(mFile);
+    mWatcher.onTableRead(mFile, "a");
+
+    // Such as a checkpoint.
+    mWatcher.onFileChanged(mFolder.getRoot(), "a.db-wal");
+    mWatcher.flush();
+    assertEquals(0, mChanges.size());
+
+    when(mCursor.getLong(0)).thenReturn(2L);
+    mWatcher.onFileChanged(mFolder.getRoot(), "a.db-wal");
+    mWatcher.flush();
+    assertEquals(Collections.singletonList(Collections.singleton("a")), mChanges);
+  }
+
+  @Test
+  public void connectionsAreKeptUntilStopped() throws Exception {
+    mWatcher.onTableRead(mFile, "a");
+
+    mPool.closeAll();
+    verify(mDatabase, never()).close();
+    mWatcher.stop();
+    verify(mDatabase).close();
+  }
+}
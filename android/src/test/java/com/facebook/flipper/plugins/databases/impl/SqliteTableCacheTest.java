@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) Meta Platforms, Inc. and affiliates.
+ *
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ */
+
+package com.facebook.flipper.plugins.databases.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import java.io.File;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class SqliteTableCacheTest {
+
+  private final SqliteTableCache mCache = new SqliteTableCache();
+  private final SupportSQLiteDatabase mDatabase = mock(SupportSQLiteDatabase.class);
+  private final File mFile = new File("a.db");
+
+  @Test
+  public void entriesLastUntilTheDatabaseIsWrittenTo() throws Exception {
+    final SqliteTableCache.Entry entry = mCache.get(mDatabase, mFile, "t", 1);
+    entry.count = 10;
+
+    assertSame(entry, mCache.get(mDatabase, mFile, "t", 1));
+    assertNotSame(entry, mCache.get(mDatabase, mFile, "other", 1));
+    // Written to through another connection.
+    assertEquals(-1, mCache.get(mDatabase, mFile, "t", 2).count);
+  }
+
+  @Test
+  public void entriesAreForgottenWhenTheDatabaseIsOpenedAgainOrInvalidated() throws Exception {
+    final SqliteTableCache.Entry entry = mCache.get(mDatabase, mFile, "t", 1);
+
+    assertNotSame(entry, mCache.get(mock(SupportSQLiteDatabase.class), mFile, "t", 1));
+    final SqliteTableCache.Entry reopened = mCache.get(mDatabase, mFile, "t", 1);
+    mCache.invalidate(new File("b.db"));
+    assertSame(reopened, mCache.get(mDatabase, mFile, "t", 1));
+    mCache.invalidate(mFile);
+    assertNotSame(reopened, mCache.get(mDatabase, mFile, "t", 1));
+  }
+}